@@ -1,32 +1,34 @@
 package lib;
 
-import lib.data.Units;
+import lib.ai.MctsOpponent;
+import lib.data.Openings;
 import lib.engine.Battle;
 import lib.engine.Player;
+import lib.net.GameClient;
 
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 
 public class BipoleI {
 
-    public static void main(String[] args) {
-        GameFrame frame = new GameFrame();
-        Player player = new Player(Colors.ALLY);
-        Player enemy = new Player(Colors.ENEMY);
-        Battle battle = new Battle(player, enemy);
-
-        battle.claimAndPlaceUnit(player, Units.CASTLE, 7, 0);
-        battle.claim(player, 7, 1);
-        battle.claimAndPlaceUnit(player, Units.FARMER, 6, 0);
-        battle.claimAndPlaceUnit(player, Units.SOLDIER, 6, 1);
+    /** Usage: BipoleI to play against the AI, or BipoleI host port room seat to join a room of a lib.net.GameServer. **/
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 4) {
+            GameClient client = GameClient.connect(new InetSocketAddress(args[0], Integer.parseInt(args[1])),
+                    Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            new GameFrame().loadBattle(client.getBattle(), client.getPlayer(), client::sync);
+            return;
+        }
 
-        battle.claimAndPlaceUnit(enemy, Units.CASTLE, 0, 7);
-        battle.claim(enemy, 0, 6);
-        battle.claimAndPlaceUnit(enemy, Units.FARMER, 1, 7);
-        battle.claimAndPlaceUnit(enemy, Units.SOLDIER, 1, 6);
+        GameFrame frame = new GameFrame();
+        Player player = new Player(Colors.ALLY.getRGB());
+        Player enemy = new Player(Colors.ENEMY.getRGB());
+        Battle battle = Openings.standard(new Battle(player, enemy));
 
-        player.addPoints(5);
+        // The enemy is played by the AI
+        new MctsOpponent(battle, enemy).start();
 
         frame.loadBattle(battle, player);
     }
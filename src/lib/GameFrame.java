@@ -17,4 +17,10 @@ public class GameFrame extends JFrame {
         setContentPane(new GamePanel(battle, player));
         setVisible(true);
     }
+
+    /** Show a battle stepped by the given task instead of its own update(). **/
+    public void loadBattle(Battle battle, Player player, Runnable step){
+        setContentPane(new GamePanel(battle, player, step));
+        setVisible(true);
+    }
 }
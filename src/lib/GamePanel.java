@@ -7,6 +7,9 @@ import lib.elementboxes.ShopItemElement;
 import lib.engine.*;
 import lib.geometry.Shape;
 import lib.timing.AnimatedValue;
+import lib.timing.FrameClock;
+import lib.timing.GameClock;
+import lib.timing.ScaledClock;
 
 import javax.swing.*;
 import java.awt.*;
@@ -19,6 +22,10 @@ public class GamePanel extends ElementPanel {
     protected Battle battle;
     /** The player in this client of the battle. **/
     protected Player player;
+    /** Screen-side state of each tile in the battle, by row and column. **/
+    protected TileView[][] views;
+    /** Clock the battle runs on when the panel steps it, so it can be paused. **/
+    protected final ScaledClock battleClock = new ScaledClock(GameClock.SYSTEM);
 
     // ==== CURSOR
     /** Internal row position of cursor. **/
@@ -63,15 +70,35 @@ public class GamePanel extends ElementPanel {
 
     // ======== CONSTRUCTOR
     public GamePanel(Battle battle, Player player) {
+        this(battle, player, battle::update);
+        // The panel steps the battle itself, so run it on a clock the panel can pause
+        battle.setClock(battleClock);
+    }
+
+    /** Show a battle that is stepped by the given task before each frame instead of by its own update(),
+     * such as a battle mirrored from a server. See lib.net.GameClient. **/
+    public GamePanel(Battle battle, Player player, Runnable step) {
         super(new RootElement(){
 
         });
         this.battle = battle;
         this.player = player;
+        views = new TileView[battle.numRows()][battle.numCols()];
+        for (int r=0; r<battle.numRows(); r++) {
+            for (int c=0; c<battle.numCols(); c++) {
+                views[r][c] = new TileView(battle.getTile(r, c));
+            }
+        }
         setBackground(new Color(64,64,64));
 
-        // Initialize screen refresh timer
-        ActionListener updateScreen = evt -> super.repaint();
+        // Start publishing render snapshots before the battle's first update, so every frame has one to draw from
+        battle.getRenderBuffer();
+
+        // Initialize screen refresh timer, which also steps the battle's scheduler so game logic runs on the same thread as drawing
+        ActionListener updateScreen = evt -> {
+            step.run();
+            super.repaint();
+        };
         Timer screenRefreshTimer = new Timer(20, updateScreen);
         screenRefreshTimer.setCoalesce(false);
         screenRefreshTimer.start();
@@ -104,6 +131,7 @@ public class GamePanel extends ElementPanel {
 
         super.getInputMap().put(KeyStroke.getKeyStroke("Z"), "interact");
         super.getInputMap().put(KeyStroke.getKeyStroke("X"), "cancel");
+        super.getInputMap().put(KeyStroke.getKeyStroke("P"), "pause");
 
 
         // Action mapping
@@ -114,10 +142,16 @@ public class GamePanel extends ElementPanel {
 
         super.getActionMap().put("interact", new CursorInteract());
         super.getActionMap().put("cancel", new CursorCancel());
+        super.getActionMap().put("pause", new TogglePause());
 
         super.getActionMap().put("rotateLeft", new RotateLeft());
         super.getActionMap().put("rotateRight", new RotateRight());
 
+        // Keep the cursor on the ground if the tile under it changes shape
+        battle.addTerrainListener((row, col) -> {
+            if (row == cursorRow && col == cursorCol) cursorCorners.set(cursorTile().getBase());
+        });
+
         // Find the castle and move the cursor there
         mode = ControlMode.SELECT;
         cursorToCastle();
@@ -132,11 +166,18 @@ public class GamePanel extends ElementPanel {
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
 
+        // Read the time once for the whole frame; animations and animated drawing all use it
+        FrameClock.UI.sample();
         Camera.refresh();
 
+        // Draw the whole frame from the battle's latest published snapshot, so it is consistent even while the battle ticks
+        RenderSnapshot frame = battle.getRenderBuffer().acquire();
+
         // Draw all tiles' bases and unit meshes
-        for (Tile tile : battle){
-            tile.drawBase(g, getScreenPos(tile.row, tile.col));
+        for (Iterator<Tile> it = battle.drawOrder(Camera.reverseRows, Camera.reverseCols); it.hasNext(); ) {
+            Tile tile = it.next();
+            TileView view = view(tile);
+            view.drawBase(g, frame, getScreenPos(tile.row, tile.col));
 
             // Draw cursor if under the selected tile or the tile the animated cursor is coming from
             if ((tile.row == cursorRow && tile.col == cursorCol) ||
@@ -145,21 +186,21 @@ public class GamePanel extends ElementPanel {
                 DrawUtils.drawInsetTile(g, getScreenPos(showCursorRow.doubleValue(), showCursorCol.doubleValue()), cursorCorners, 0.1);
             }
 
-            tile.drawUnit(g);
+            view.drawUnit(g, frame);
         }
 
         // draw blueprint for unit being placed
         if (cursorDragItem != null) {
-            boolean showInvalid = buyRow != -1 && (buyBlueprintTile().getOwner() != player || buyBlueprintTile().hasUnit());
-            Color lineColor = showInvalid ? Colors.INVALID : player.colorPlace;
-            Color faceColor = showInvalid ? Colors.INVALID_FACE : player.faceColorPlace;
+            boolean showInvalid = buyRow != -1 && (frame.getOwner(buyRow, buyCol) != player || frame.hasUnit(buyRow, buyCol));
+            Color lineColor = showInvalid ? Colors.INVALID : Palette.of(player).colorPlace;
+            Color faceColor = showInvalid ? Colors.INVALID_FACE : Palette.of(player).faceColorPlace;
 
             cursorDragItem.item.getMesh().draw(g, buyPolygon, Corners.FLAT, lineColor, faceColor, Camera.zoom);
         }
 
         // Draw all units' UI after bases and units drawn, even if it would be obscured by a tile in front of it
-        for (Tile tile : battle) {
-            tile.drawUI(g);
+        for (Iterator<Tile> it = battle.drawOrder(Camera.reverseRows, Camera.reverseCols); it.hasNext(); ) {
+            view(it.next()).drawUI(g, frame);
         }
 
         // Update and draw screen elements
@@ -206,9 +247,9 @@ public class GamePanel extends ElementPanel {
     public Point getGridPos(int x, int y){
         // Iterate over the map in reverse order, so tiles covered up by other tiles aren't selected in place of the one that is actually clicked on the screen.
         // A tile located before another tile in row-major order will never overlap it
-        for (Iterator<Tile> it = battle.reverseDrawOrder(); it.hasNext(); ) {
+        for (Iterator<Tile> it = battle.drawOrder(!Camera.reverseRows, !Camera.reverseCols); it.hasNext(); ) {
             Tile tile = it.next();
-            if (tile.containsPoint(x, y)) {
+            if (view(tile).containsPoint(x, y)) {
                 return new Point(tile.row, tile.col);
             }
         }
@@ -276,12 +317,12 @@ public class GamePanel extends ElementPanel {
         else {
             if (cursorDragItem != null && !shop.rect.contains(e.getPoint())) {
                 // TODO: check if mouse intersects a tile, draw a virtual unit there with valid/invalid if so, otherwise draw dimmed
-                if (!blueprintMapDisplayed() || !buyBlueprintTile().containsPoint(e.getX(), e.getY())) {
+                if (!blueprintMapDisplayed() || !view(buyBlueprintTile()).containsPoint(e.getX(), e.getY())) {
                     Point gridPos = getGridPos(e.getX(), e.getY());
                     if (gridPos != null) {
                         buyRow = gridPos.x;
                         buyCol = gridPos.y;
-                        buyPolygon = battle.getTile(gridPos.x, gridPos.y).getPolygon();
+                        buyPolygon = views[gridPos.x][gridPos.y].getPolygon();
                     } else {
                         buyRow = -1;
                         buyCol = -1;
@@ -300,6 +341,11 @@ public class GamePanel extends ElementPanel {
         return battle.getTile(buyRow, buyCol);
     }
 
+    /** The screen-side view of a tile on this panel's battle. **/
+    public TileView view(Tile tile) {
+        return views[tile.row][tile.col];
+    }
+
     public Tile cursorTile() {
         return battle.getTile(cursorRow, cursorCol);
     }
@@ -347,7 +393,7 @@ public class GamePanel extends ElementPanel {
      * Moves the cursor to the closest point where it will be inside these margins, if it is not already. **/
     public void moveCameraToCursor(){
         if (GuiConstants.CAMERA_FOLLOW_CURSOR) {
-            Point cursorPos = getScreenPos(cursorRow+0.5, cursorCol+0.5, battle.getTile(cursorRow, cursorCol).depth);
+            Point cursorPos = getScreenPos(cursorRow+0.5, cursorCol+0.5, battle.getTile(cursorRow, cursorCol).getDepth());
 
             int x = Camera.cameraX.intValue();
             int y = Camera.cameraY.intValue();
@@ -386,7 +432,7 @@ public class GamePanel extends ElementPanel {
     // ==== CURSOR
     public void setCursor(int row, int col){
         if (row < 0 || row >= battle.numRows() || col < 0 || col >= battle.numCols()) return;
-        battle.getTile(cursorRow, cursorCol).onCursorUnhover();
+        views[cursorRow][cursorCol].onCursorUnhover();
 
         if (!cursorAnimator.isAnimating()) {
             fromCursorRow = cursorRow;
@@ -408,7 +454,7 @@ public class GamePanel extends ElementPanel {
             cursorCorners.set(hoveredTile.getBase());
         }
 
-        hoveredTile.onCursorHover();
+        view(hoveredTile).onCursorHover();
         info.setTile(hoveredTile);
         moveCameraToCursor();
     }
@@ -466,18 +512,16 @@ public class GamePanel extends ElementPanel {
 
         // If not claimed, try to contest it
         else {
-            tile.contest(player);
+            battle.submit(new Command.ContestTile(player, row, col));
         }
     }
 
-    /** Buy an item for the given tile. **/
+    /** Buy an item for the given tile. The purchase is made by the battle on its next tick. **/
     public void buyItem(Buyable item, Tile tile) {
-        if (player.subtractPoints(item.buyCost())) {
-            if (item instanceof UnitData) {
-                tile.placeUnit((UnitData) item);
-                focusElement(root);
-                selectElement(root);
-            }
+        if (player.canBuy(item) && item instanceof UnitData) {
+            battle.submit(new Command.Buy(player, item, tile.row, tile.col));
+            focusElement(root);
+            selectElement(root);
         }
     }
 
@@ -520,17 +564,25 @@ public class GamePanel extends ElementPanel {
         }
     }
 
+    @SuppressWarnings("serial")
+    public class TogglePause extends AbstractAction {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            battleClock.setPaused(!battleClock.isPaused());
+        }
+    }
+
     public class RotateLeft extends AbstractAction {
         @Override
         public void actionPerformed(ActionEvent e) {
-            Camera.rotate(cursorRow+0.5, cursorCol+0.5, cursorTile().depth, Math.toRadians(-90));
+            Camera.rotate(cursorRow+0.5, cursorCol+0.5, cursorTile().getDepth(), Math.toRadians(-90));
         }
     }
 
     public class RotateRight extends AbstractAction {
         @Override
         public void actionPerformed(ActionEvent e) {
-            Camera.rotate(cursorRow+0.5, cursorCol+0.5, cursorTile().depth, Math.toRadians(90));
+            Camera.rotate(cursorRow+0.5, cursorCol+0.5, cursorTile().getDepth(), Math.toRadians(90));
         }
     }
 }
@@ -44,13 +44,13 @@ public class NumberCorners {
 
     public void set(Corners corners) {
         for (int i=0; i<4; i++) {
-            values[i] = corners.values[i];
+            values[i] = corners.get(i);
         }
     }
 
     public void easeTo(Corners corners){
         for (int i=0; i<4; i++) {
-            values[i] = new AnimatedValue(GuiConstants.CURSOR_SPEED, values[i].doubleValue(), corners.values[i]);
+            values[i] = new AnimatedValue(GuiConstants.CURSOR_SPEED, values[i].doubleValue(), corners.get(i));
         }
     }
 }
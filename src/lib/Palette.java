@@ -0,0 +1,39 @@
+package lib;
+
+import lib.engine.Player;
+
+import java.awt.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Display colors derived from a player's base color. Kept out of Player so the engine has no AWT dependency. **/
+public class Palette {
+    /** The color to draw this player's units. **/
+    public final Color color;
+    /** Unit placement color version of color. **/
+    public final Color colorPlace;
+    /** The color to draw this player's land. **/
+    public final Color landColor;
+    /** Color to draw faces for this player's units. **/
+    public final Color faceColor;
+    /** Unit placement color version of faceColor. **/
+    public final Color faceColorPlace;
+
+    /** Palettes already made, by RGB value. **/
+    private static final Map<Integer, Palette> palettes = new ConcurrentHashMap<>();
+
+    public Palette(Color color) {
+        this.color = color;
+
+        landColor = Colors.blendColors(Color.BLACK, color, 0.25);
+        faceColor = Colors.blendColors(Color.BLACK, color, 0.05);
+
+        colorPlace = Colors.blendColors(color, Colors.PLACEMENT_FADE,0.5);
+        faceColorPlace = new Color(faceColor.getRed(), faceColor.getGreen(), faceColor.getBlue(), 175);
+    }
+
+    /** Get the palette for a player's color. **/
+    public static Palette of(Player player) {
+        return palettes.computeIfAbsent(player.rgb, rgb -> new Palette(new Color(rgb)));
+    }
+}
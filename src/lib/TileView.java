@@ -0,0 +1,294 @@
+package lib;
+
+import lib.elementboxes.TextElement;
+import lib.engine.*;
+import lib.timing.AnimatedValue;
+import lib.timing.FrameClock;
+
+import java.awt.*;
+
+/** Screen-side state and drawing for one tile of a battle.
+ * Holds the polygons the tile was last drawn with (used for mouse picking) and its hover brightness,
+ * so the engine's Tile stays free of display code.
+ * Draws from the battle's published RenderSnapshot rather than the live tile, and is only used on the drawing thread. **/
+public class TileView {
+    /** The tile this view draws. **/
+    public final Tile tile;
+    /** Polygon of this tile's borders on the screen. Reset each time this tile is drawn. Used for drawing and mouse click position grid position finding.
+     * Drawing and mouse events both run on the drawing thread, so the polygons need no locking. **/
+    private final Polygon polygon;
+    /** Polygon of the eastern face. Used for mouse positional stuff **/
+    private final Polygon leftFace;
+    /** Polygon of the southern face. Used for mouse positional stuff **/
+    private final Polygon rightFace;
+    /** Center of this tile on the screen. Calculated on redraw. Used for various draws. **/
+    public final Point center;
+
+    /** Current internal target brightness of this unit. **/
+    private double brightness;
+    /** Displayed brightness which animates towards actual brightness. **/
+    private Number displayBrightness = 0;
+
+    public TileView(Tile tile) {
+        this.tile = tile;
+
+        polygon = new Polygon();
+        rightFace = new Polygon();
+        leftFace = new Polygon();
+
+        center = new Point();
+    }
+
+    // ==== DISPLAYING
+    public void drawUnit(Graphics g, RenderSnapshot frame) {
+        final int row = tile.row, col = tile.col;
+        if (frame.hasUnit(row, col)) {
+            frame.getUnit(row, col).getMesh().draw(g, polygon, frame.getBase(row, col), getColor(frame), getFaceColor(frame), Camera.zoom);
+        }
+    }
+
+    /** Draw the borders for the base of this tile as it is in the given frame. See drawBase(Graphics, Point, etc...) for details. **/
+    public void drawBase(Graphics g, RenderSnapshot frame, double x, double y) {
+        // Rotate each set of corners once, then read the back/left/front/right lanes
+        final int shift = Camera.cornerShift, row = tile.row, col = tile.col;
+        final long base = Corners.rotate(frame.packedBase(row, col), shift),
+                around = Corners.rotate(frame.packedAround(row, col), shift),
+                lowest = Corners.rotate(frame.packedLowest(row, col), shift);
+        final int
+                baseBack = Corners.lane(base, Corners.BACK), baseLeft = Corners.lane(base, Corners.LEFT),
+                baseFront = Corners.lane(base, Corners.FRONT), baseRight = Corners.lane(base, Corners.RIGHT),
+                aroundLeft = Corners.lane(around, Corners.LEFT), aroundFront = Corners.lane(around, Corners.FRONT),
+                aroundRight = Corners.lane(around, Corners.RIGHT),
+                lowestLeft = Corners.lane(lowest, Corners.LEFT), lowestFront = Corners.lane(lowest, Corners.FRONT),
+                lowestRight = Corners.lane(lowest, Corners.RIGHT);
+        final Player contestor = frame.getContestor(row, col);
+
+        // Screen coordinates for corners
+        final int
+                bx = (int)x,
+                lx = (int)(x + Camera.zoom * Camera.rowXOffset),
+                rx = (int)(x + Camera.zoom * Camera.colXOffset),
+                fx = (int)(x + Camera.zoom * (Camera.rowXOffset + Camera.colXOffset)),
+
+                by = (int)(y - Camera.zoom * Camera.DEPTH_Y_OFFSET*baseBack),
+                ly = (int)(y + Camera.zoom * (Camera.rowYOffset - Camera.DEPTH_Y_OFFSET*baseLeft)),
+                ry = (int)(y + Camera.zoom * (Camera.colYOffset - Camera.DEPTH_Y_OFFSET*baseRight)),
+                fy = (int)(y + Camera.zoom * (Camera.rowYOffset + Camera.colYOffset - Camera.DEPTH_Y_OFFSET*baseFront)),
+
+                lay = (int)(y + Camera.zoom * (Camera.rowYOffset - Camera.DEPTH_Y_OFFSET*aroundLeft)),
+                ray = (int)(y + Camera.zoom * (Camera.colYOffset - Camera.DEPTH_Y_OFFSET*aroundRight)),
+                fay = (int)(y + Camera.zoom * (Camera.rowYOffset + Camera.colYOffset - Camera.DEPTH_Y_OFFSET*aroundFront)),
+
+                lly = (int)(y + Camera.zoom * (Camera.rowYOffset - Camera.DEPTH_Y_OFFSET*lowestLeft)),
+                rly = (int)(y + Camera.zoom * (Camera.colYOffset - Camera.DEPTH_Y_OFFSET*lowestRight)),
+                fly = (int)(y + Camera.zoom * (Camera.rowYOffset + Camera.colYOffset - Camera.DEPTH_Y_OFFSET*lowestFront));
+
+        // Reset polygon and add tile corner points
+        polygon.reset();
+        polygon.addPoint(bx, by);
+        polygon.addPoint(lx, ly);
+        polygon.addPoint(fx, fy);
+        polygon.addPoint(rx, ry);
+
+        leftFace.reset();
+        leftFace.addPoint(lx, ly);
+        leftFace.addPoint(lx, lly);
+        leftFace.addPoint(fx, fly);
+        leftFace.addPoint(fx, fy);
+
+        rightFace.reset();
+        rightFace.addPoint(rx, ry);
+        rightFace.addPoint(rx, rly);
+        rightFace.addPoint(fx, fly);
+        rightFace.addPoint(fx, fy);
+
+        center.move(DrawUtils.lerp(bx, fx, 0.5), DrawUtils.lerp(by, fy, 0.5));
+
+        // Fill base
+        final Color landColor = getLandColor(frame);
+        g.setColor(landColor);
+        g.fillPolygon(polygon);
+
+        if (baseFront > lowestFront || baseLeft > lowestLeft) {
+            g.fillPolygon(leftFace);
+        }
+
+        if (baseFront > lowestFront || baseRight > lowestRight) {
+            g.fillPolygon(rightFace);
+        }
+
+
+        // If being contested, draw moving diagonal lines
+        if (contestor != null) {
+            g.setColor(Palette.of(contestor).color);
+            double cycle = (double)(FrameClock.UI.millis()%GuiConstants.CONTEST_SHIFT_PERIOD)/GuiConstants.CONTEST_SHIFT_PERIOD;
+            for (double i = GuiConstants.CONTESTED_STEP*cycle; i < 1; i += GuiConstants.CONTESTED_STEP) {
+                // NW-NE-SW triangle
+                g.drawLine(DrawUtils.lerp(bx, lx, i), DrawUtils.lerp(by, ly, i), DrawUtils.lerp(bx, rx, i), DrawUtils.lerp(by, ry, i));
+                // SE-NE-SW triangle (Lerp backwards so lines move same direction)
+                g.drawLine(DrawUtils.lerp(lx, fx, i), DrawUtils.lerp(ly, fy, i), DrawUtils.lerp(rx, fx, i), DrawUtils.lerp(ry, fy, i));
+            }
+        }
+
+        // Northern and western border, always drawn
+        g.setColor(getColor(frame));
+        g.drawLine(bx, by, lx, ly); // northern border
+        g.drawLine(bx, by, rx, ry); // western border
+
+        // southern border if both corners not shared on southern side
+        if (baseRight > lowestRight || baseFront > lowestFront) {
+            g.drawLine(rx, ry, fx, fy);
+        }
+        // eastern border if both corners not shared on eastern side
+        if (baseLeft > lowestLeft || baseFront > lowestFront) {
+            g.drawLine(lx, ly, fx, fy);
+        }
+
+        // left depth line if needed
+        if ((baseLeft > aroundLeft && !(GuiConstants.JOIN_SIDE_FACES && aroundLeft == -1)) || baseLeft == aroundLeft && !GuiConstants.JOIN_SIDE_FACES) {
+            g.drawLine(lx, ly, lx, GuiConstants.JOIN_SIDE_FACES ? lay : lly);
+        }
+        // front depth line if needed
+        if ((baseFront > aroundFront && !(GuiConstants.JOIN_SIDE_FACES && aroundFront == -1))) {
+            g.drawLine(fx, fy, fx, fay);
+        }
+        // right height line if needed
+        if ((baseRight > aroundRight && !(GuiConstants.JOIN_SIDE_FACES && aroundRight == -1)) || baseRight == aroundRight && !GuiConstants.JOIN_SIDE_FACES) {
+            g.drawLine(rx, ry, rx, GuiConstants.JOIN_SIDE_FACES ? ray : rly);
+        }
+
+
+        // If this is an edge tile, draw the lower borders (south and east)
+        // southern ground line if needed
+        if (lowestRight == -1 && lowestFront == -1) {
+            g.drawLine(rx, rly, fx, fly);
+        }
+        // eastern ground line if needed
+        if (lowestLeft == -1 && lowestFront == -1) {
+            g.drawLine(lx, lly, fx, fly);
+        }
+    }
+
+    /** Draw the borders for the base of this tile as it is in the given frame.
+     * x and y are the screen coordinates to draw at. **/
+    public void drawBase(Graphics g, RenderSnapshot frame, Point pos){
+        drawBase(g, frame, pos.x, pos.y);
+    }
+
+    /** Draw a tile as it is in the given frame on the given polygon with flat corners and no depth. Used for InfoElement. **/
+    public static void drawOnPolygon(Graphics g, RenderSnapshot frame, int row, int col, Polygon polygon) {
+        // Fill base
+        final Player owner = frame.getOwner(row, col);
+        g.setColor(owner != null ? Palette.of(owner).landColor : Color.BLACK);
+        g.fillPolygon(polygon);
+
+        // If being contested, draw moving diagonal lines
+        if (frame.beingContested(row, col)) {
+            g.setColor(Palette.of(frame.getContestor(row, col)).color);
+            double cycle = (double) (FrameClock.UI.millis() % GuiConstants.CONTEST_SHIFT_PERIOD) / GuiConstants.CONTEST_SHIFT_PERIOD;
+            for (double i = GuiConstants.CONTESTED_STEP * cycle; i < 1; i += GuiConstants.CONTESTED_STEP*1.5) {
+                // NW-NE-SW triangle
+                g.drawLine(
+                        DrawUtils.lerp(polygon.xpoints[0], polygon.xpoints[1], i),
+                        DrawUtils.lerp(polygon.ypoints[0], polygon.ypoints[1], i),
+                        DrawUtils.lerp(polygon.xpoints[0], polygon.xpoints[3], i),
+                        DrawUtils.lerp(polygon.ypoints[0], polygon.ypoints[3], i)
+                );
+                // SE-NE-SW triangle (Lerp backwards so lines move same direction)
+                g.drawLine(
+                        DrawUtils.lerp(polygon.xpoints[1], polygon.xpoints[2], i),
+                        DrawUtils.lerp(polygon.ypoints[1], polygon.ypoints[2], i),
+                        DrawUtils.lerp(polygon.xpoints[3], polygon.xpoints[2], i),
+                        DrawUtils.lerp(polygon.ypoints[3], polygon.ypoints[2], i)
+                );
+            }
+        }
+
+        // Draw border
+        g.setColor(owner != null ? Palette.of(owner).color : Color.WHITE);
+        g.drawPolygon(polygon);
+    }
+
+    /** Determine if a given position on the screen is within this tile on the screen with the given zoom (including side faces). **/
+    public boolean containsPoint(int x, int y) {
+        return polygon.contains(x, y) || leftFace.contains(x, y) || rightFace.contains(x, y);
+    }
+
+    /** Draw UI elements associated with this tile and its unit as they are in the given frame. **/
+    public void drawUI(Graphics g, RenderSnapshot frame) {
+        final int row = tile.row, col = tile.col;
+        if (frame.beingContested(row, col)) {
+            DrawUtils.drawBar(g, center.x, center.y,
+                    frame.contestProgress(row, col), Palette.of(frame.getContestor(row, col)).color);
+
+            DrawUtils.drawCenteredString(g,
+                    new Rectangle(center.x, center.y, 0, 0),
+                    frame.getContestValue(row, col)+"",
+                    Color.WHITE,
+                    TextElement.GAME_FONT_SMALL);
+        } else if (frame.hasUnit(row, col)) {
+            // Readiness bar
+            if (!frame.isReady(row, col)){
+                DrawUtils.drawBar(g, center.x, center.y + Camera.zoom*0.25, frame.readinessPercent(row, col), Colors.READINESS_COLOR);
+            }
+        }
+    }
+
+    // ==== BRIGHTNESS
+    /** Change to the specified brightness in n milliseconds. **/
+    public void changeBrightness(double amount, int speed){
+        brightness += amount;
+        displayBrightness = new AnimatedValue(speed, displayBrightness.doubleValue(), brightness);
+    }
+
+    /** Get the line color of this unit after factoring in brightness. **/
+    public Color getColor(RenderSnapshot frame){
+        final Player owner = frame.getOwner(tile.row, tile.col);
+        return owner != null ? brightenColor(Palette.of(owner).color, 1) : Color.WHITE;
+    }
+
+    /** Get the face color of this unit after factoring in brightness. **/
+    public Color getFaceColor(RenderSnapshot frame){
+        return brightenColor(Palette.of(frame.getOwner(tile.row, tile.col)).faceColor, 0.125);
+    }
+
+    /** Get the face color of this unit after factoring in brightness. **/
+    public static final Color OWNERLESS_LANDCOLOR = new Color(0, 0, 0, 255);
+    public Color getLandColor(RenderSnapshot frame){
+        final Player owner = frame.getOwner(tile.row, tile.col);
+        return brightenColor(owner != null ? Palette.of(owner).landColor : OWNERLESS_LANDCOLOR, 0.25);
+    }
+
+    private Color brightenColor(Color base, double scale) {
+        double brightness = displayBrightness.doubleValue();
+        if (brightness == 0){
+            return base;
+        } else if (brightness > 0){
+            return Colors.blendColors(base, Color.WHITE, displayBrightness.doubleValue()*scale);
+        } else {
+            return Colors.blendColors(base, Color.BLACK, -displayBrightness.doubleValue()*scale);
+        }
+    }
+
+    // ==== HOVERING
+    public void onCursorHover(){
+        changeBrightness(0.2, GuiConstants.CURSOR_SPEED);
+    }
+
+    public void onCursorUnhover(){
+        changeBrightness(-0.2, GuiConstants.CURSOR_SPEED);
+    }
+
+    // ==== ACCESSORS
+    public Polygon getPolygon() {
+        return polygon;
+    }
+
+    public Polygon getLeftFace() {
+        return leftFace;
+    }
+
+    public Polygon getRightFace() {
+        return rightFace;
+    }
+}
@@ -0,0 +1,93 @@
+package lib.ai;
+
+import lib.data.Actions;
+import lib.engine.Action;
+import lib.engine.Command;
+import lib.engine.Player;
+import lib.engine.UnitData;
+
+import java.util.Objects;
+
+/** One move an AI can make on its turn: waiting, contesting a tile, buying a unit, using a unit's action or moving a unit.
+ * Holds no player or battle, so the same decision can be tried on many copies of a battle and then made on the real one. **/
+public final class Decision {
+    /** Kinds of decision. **/
+    public static final int WAIT = 0, CONTEST = 1, BUY = 2, ACT = 3, MOVE = 4;
+
+    /** Doing nothing this turn. **/
+    public static final Decision NONE = new Decision(WAIT, null, null, -1, -1, -1, -1);
+
+    /** Kind of this decision. **/
+    public final int kind;
+    /** Unit type to buy, for BUY. **/
+    public final UnitData unit;
+    /** Action to use, for ACT. **/
+    public final Action action;
+    /** Row and col of the tile this decision is made on, and of the tile to move to for MOVE. **/
+    public final int row, col, targetRow, targetCol;
+
+    private Decision(int kind, UnitData unit, Action action, int row, int col, int targetRow, int targetCol) {
+        this.kind = kind;
+        this.unit = unit;
+        this.action = action;
+        this.row = row;
+        this.col = col;
+        this.targetRow = targetRow;
+        this.targetCol = targetCol;
+    }
+
+    public static Decision contest(int row, int col) {
+        return new Decision(CONTEST, null, null, row, col, -1, -1);
+    }
+
+    public static Decision buy(UnitData unit, int row, int col) {
+        return new Decision(BUY, unit, null, row, col, -1, -1);
+    }
+
+    public static Decision act(Action action, int row, int col) {
+        return new Decision(ACT, null, action, row, col, -1, -1);
+    }
+
+    public static Decision sell(int row, int col) {
+        return act(Actions.SELL, row, col);
+    }
+
+    public static Decision move(int row, int col, int targetRow, int targetCol) {
+        return new Decision(MOVE, null, null, row, col, targetRow, targetCol);
+    }
+
+    /** The command making this decision as the given player, or null for WAIT. **/
+    public Command toCommand(Player player) {
+        switch (kind) {
+            case CONTEST: return new Command.ContestTile(player, row, col);
+            case BUY: return new Command.Buy(player, unit, row, col);
+            case ACT: return new Command.Act(player, action, row, col);
+            case MOVE: return new Command.Move(player, row, col, targetRow, targetCol);
+            default: return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Decision)) return false;
+        Decision other = (Decision) o;
+        return kind == other.kind && unit == other.unit && action == other.action
+                && row == other.row && col == other.col && targetRow == other.targetRow && targetCol == other.targetCol;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, unit, action, row, col, targetRow, targetCol);
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case CONTEST: return "Contest(" + row + ", " + col + ")";
+            case BUY: return "Buy " + unit.displayName() + "(" + row + ", " + col + ")";
+            case ACT: return action.getClass().getSimpleName() + "(" + row + ", " + col + ")";
+            case MOVE: return "Move(" + row + ", " + col + " -> " + targetRow + ", " + targetCol + ")";
+            default: return "Wait";
+        }
+    }
+}
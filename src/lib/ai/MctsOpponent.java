@@ -0,0 +1,93 @@
+package lib.ai;
+
+import lib.engine.Battle;
+import lib.engine.BattleState;
+import lib.engine.Command;
+import lib.engine.Player;
+import lib.engine.StepListener;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Plays a player of a battle with an MctsSearch.
+ * Every decision interval of battle time, takes a snapshot of the battle on the battle's own thread once a step finishes,
+ * searches it on a background thread, and submits the chosen decision as a command, so the battle never waits on the AI.
+ * Waits for each search to finish before taking the next snapshot. **/
+public class MctsOpponent implements StepListener {
+    /** Battle time in milliseconds between decisions by default. **/
+    public static final long DEFAULT_INTERVAL = 1000;
+    /** Time in milliseconds each decision is searched for by default. **/
+    public static final long DEFAULT_BUDGET = 250;
+
+    /** The battle played in. **/
+    private final Battle battle;
+    /** The player this opponent plays as. **/
+    private final Player player;
+    /** Chooses each decision. **/
+    private final MctsSearch search;
+    /** Battle time in milliseconds between decisions. **/
+    private final long interval;
+    /** Runs searches off the battle's thread. **/
+    private final ExecutorService thinker = Executors.newSingleThreadExecutor(MctsSearch.daemonThreads("mcts-opponent"));
+
+    /** Battle time of the next decision. Only used on the battle's thread. **/
+    private long nextDecision;
+    /** Amount of decisions made, also used to seed each search. **/
+    private long decisions;
+    /** Whether a search is running. **/
+    private volatile boolean thinking;
+
+    public MctsOpponent(Battle battle, Player player, MctsSearch search, long interval) {
+        this.battle = battle;
+        this.player = player;
+        this.search = search;
+        this.interval = interval;
+    }
+
+    /** Play searching on every core for DEFAULT_BUDGET each DEFAULT_INTERVAL. **/
+    public MctsOpponent(Battle battle, Player player) {
+        this(battle, player, new MctsSearch(DEFAULT_BUDGET), DEFAULT_INTERVAL);
+    }
+
+    /** Start playing. **/
+    public void start() {
+        nextDecision = battle.time();
+        battle.addStepListener(this);
+    }
+
+    /** Stop playing, and stop the search's threads. **/
+    public void stop() {
+        battle.removeStepListener(this);
+        thinker.shutdownNow();
+        search.close();
+    }
+
+    @Override
+    public void stepFinished(Battle battle) {
+        if (thinking || battle.time() < nextDecision) return;
+        nextDecision = battle.time() + interval;
+
+        ByteBuffer state = BattleState.write(battle);
+        int id = battle.playerId(player);
+        long seed = ++decisions;
+        thinking = true;
+        thinker.execute(() -> {
+            try {
+                Command command = search.search(state, battle.getTerrain(), id, seed).toCommand(player);
+                if (command != null) battle.submit(command);
+            } finally {
+                thinking = false;
+            }
+        });
+    }
+
+    // ======== ACCESSORS
+    public Player getPlayer() {
+        return player;
+    }
+
+    public MctsSearch getSearch() {
+        return search;
+    }
+}
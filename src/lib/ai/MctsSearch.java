@@ -0,0 +1,344 @@
+package lib.ai;
+
+import lib.data.Actions;
+import lib.data.Units;
+import lib.engine.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Monte-Carlo tree search over copies of a battle, choosing a player's next Decision.
+ * The battle to search from is given as a BattleState snapshot; every iteration restores a fresh headless copy from it,
+ * walks down the tree making one decision every DECISION_TICKS ticks while the other players make random ones,
+ * then plays randomly for ROLLOUT_TICKS more and scores how far ahead the player is.
+ * Since the other players' moves are random, tree nodes stand for sequences of the player's own decisions (open loop),
+ * and the legal decisions under a node are taken from the first copy that reaches it.
+ * Iterations run in parallel on every thread until the time budget is spent. Each thread grows its own tree,
+ * all starting from the same root decisions, and their root visit counts are added up to choose, so threads never share nodes. **/
+public class MctsSearch implements AutoCloseable {
+    /** Ticks the battle runs between two decisions of a player. **/
+    public static final int DECISION_TICKS = 50;
+    /** Most decisions in a row the tree looks ahead before the random rollout. **/
+    public static final int MAX_DEPTH = 4;
+    /** Ticks of random play after leaving the tree, before the battle is scored. **/
+    public static final int ROLLOUT_TICKS = 1500;
+    /** UCT exploration constant. Rewards are between 0 and 1. **/
+    public static final double EXPLORATION = 1.4;
+    /** Most decisions of each kind considered on a turn. Keeps branching low on large territories. **/
+    public static final int MAX_PER_KIND = 8;
+    /** Chance that a randomly playing player waits instead of making a random decision on its turn. **/
+    public static final double ROLLOUT_WAIT_CHANCE = 0.5;
+
+    /** Points a claimed tile is worth when scoring a battle. **/
+    private static final double TILE_VALUE = 3;
+    /** Material lead at which a battle scores about 73% for the leading player. **/
+    private static final double SCORE_SCALE = 25;
+
+    /** Amount of threads iterations run on. **/
+    private final int threads;
+    /** Time each search may take, in nanoseconds. **/
+    private final long budget;
+    /** Runs all but one of the threads' searches; the calling thread runs the last. Null when searching on one thread. **/
+    private final ExecutorService pool;
+
+    /** Iterations run by the last search. **/
+    private volatile long iterations;
+
+    /** Search on the given amount of threads, spending the given time in milliseconds on each decision. **/
+    public MctsSearch(int threads, long budgetMillis) {
+        if (threads < 1) throw new IllegalArgumentException("Need at least one thread: " + threads);
+        this.threads = threads;
+        this.budget = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        pool = threads == 1 ? null : Executors.newFixedThreadPool(threads - 1, daemonThreads("mcts"));
+    }
+
+    /** Search on every core, spending the given time in milliseconds on each decision. **/
+    public MctsSearch(long budgetMillis) {
+        this(Runtime.getRuntime().availableProcessors(), budgetMillis);
+    }
+
+    // ==== SEARCH
+    /** Choose the next decision of a player in the snapshot's battle.
+     * @param state snapshot of the battle, from BattleState.write(). Not moved.
+     * @param terrain the battle's terrain generator, or null if the snapshot's battle was generated from a seed
+     * @param playerId id of the player to decide for
+     * @param seed seed of the random play, so a search with the same budget usage can be repeated **/
+    public Decision search(ByteBuffer state, TerrainGenerator terrain, int playerId, long seed) {
+        long deadline = System.nanoTime() + budget;
+        SplittableRandom random = new SplittableRandom(seed);
+
+        Battle root = BattleState.read(state.duplicate(), terrain);
+        List<Decision> decisions = candidates(root, root.getPlayer(playerId), random);
+        if (decisions.size() == 1) {
+            iterations = 0;
+            return decisions.get(0);
+        }
+
+        List<Future<Node>> futures = new ArrayList<>(threads - 1);
+        for (int i = 1; i < threads; i++) {
+            Worker worker = new Worker(state, terrain, playerId, decisions, random.split(), deadline);
+            futures.add(pool.submit(worker));
+        }
+        Node own = new Worker(state, terrain, playerId, decisions, random.split(), deadline).call();
+
+        // Add up every thread's root visits and choose the most visited decision
+        int[] visits = new int[decisions.size()];
+        long total = own.visits;
+        for (int i = 0; i < visits.length; i++) visits[i] += own.children[i].visits;
+        for (Future<Node> future : futures) {
+            Node tree;
+            try {
+                tree = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search thread failed", e.getCause());
+            }
+            total += tree.visits;
+            for (int i = 0; i < visits.length; i++) visits[i] += tree.children[i].visits;
+        }
+        iterations = total;
+
+        int best = 0;
+        for (int i = 1; i < visits.length; i++) {
+            if (visits[i] > visits[best]) best = i;
+        }
+        return decisions.get(best);
+    }
+
+    /** Grows one thread's tree until the deadline. **/
+    private static final class Worker implements Callable<Node> {
+        private final ByteBuffer state;
+        private final TerrainGenerator terrain;
+        private final int playerId;
+        private final SplittableRandom random;
+        private final long deadline;
+        private final Node root;
+
+        Worker(ByteBuffer state, TerrainGenerator terrain, int playerId, List<Decision> decisions, SplittableRandom random, long deadline) {
+            this.state = state;
+            this.terrain = terrain;
+            this.playerId = playerId;
+            this.random = random;
+            this.deadline = deadline;
+            root = new Node(null);
+            root.expand(decisions);
+        }
+
+        @Override
+        public Node call() {
+            Node[] path = new Node[MAX_DEPTH + 1];
+            do {
+                iterate(path);
+            } while (System.nanoTime() < deadline);
+            return root;
+        }
+
+        private void iterate(Node[] path) {
+            Battle battle = BattleState.read(state.duplicate(), terrain);
+            Player player = battle.getPlayer(playerId);
+
+            // Selection and expansion: follow the tree, making its decisions, until reaching a node never visited before
+            Node node = root;
+            path[0] = root;
+            int depth = 0;
+            while (depth < MAX_DEPTH) {
+                if (node.children == null) node.expand(candidates(battle, player, random));
+                Node child = node.select();
+                path[++depth] = child;
+                play(battle, player, child.decision, random);
+                node = child;
+                if (child.visits == 0) break;
+            }
+
+            // Rollout
+            for (int tick = 0; tick < ROLLOUT_TICKS; tick += DECISION_TICKS) {
+                Decision decision = random.nextDouble() < ROLLOUT_WAIT_CHANCE ? Decision.NONE : pick(battle, player, random);
+                play(battle, player, decision, random);
+            }
+
+            double reward = evaluate(battle, playerId);
+            for (int i = 0; i <= depth; i++) {
+                path[i].visits++;
+                path[i].reward += reward;
+            }
+        }
+    }
+
+    /** A sequence of decisions of the searching player, and how well playing it went. **/
+    private static final class Node {
+        final Decision decision;
+        Node[] children;
+        int visits;
+        double reward;
+
+        Node(Decision decision) {
+            this.decision = decision;
+        }
+
+        void expand(List<Decision> decisions) {
+            children = new Node[decisions.size()];
+            for (int i = 0; i < children.length; i++) children[i] = new Node(decisions.get(i));
+        }
+
+        /** The first child never tried, or else the child with the best upper confidence bound. **/
+        Node select() {
+            Node best = null;
+            double bestBound = Double.NEGATIVE_INFINITY, log = Math.log(visits + 1);
+            for (Node child : children) {
+                if (child.visits == 0) return child;
+                double bound = child.reward / child.visits + EXPLORATION * Math.sqrt(log / child.visits);
+                if (bound > bestBound) {
+                    best = child;
+                    bestBound = bound;
+                }
+            }
+            return best;
+        }
+    }
+
+    // ==== PLAYING
+    /** Make the player's decision and a random one for every other player, then run the battle until the next decisions. **/
+    static void play(Battle battle, Player player, Decision decision, SplittableRandom random) {
+        Command command = decision.toCommand(player);
+        if (command != null) battle.submit(command);
+        for (Player other : battle.getPlayers()) {
+            if (other == player || random.nextDouble() < ROLLOUT_WAIT_CHANCE) continue;
+            command = pick(battle, other, random).toCommand(other);
+            if (command != null) battle.submit(command);
+        }
+        for (int i = 0; i < DECISION_TICKS; i++) battle.tick();
+    }
+
+    /** A random decision the player could make right now. **/
+    static Decision pick(Battle battle, Player player, SplittableRandom random) {
+        List<Decision> decisions = candidates(battle, player, random);
+        return decisions.get(random.nextInt(decisions.size()));
+    }
+
+    /** Decisions worth considering for the player right now, always starting with waiting.
+     * At most MAX_PER_KIND of each kind, picked at random when there are more. **/
+    static List<Decision> candidates(Battle battle, Player player, SplittableRandom random) {
+        List<Decision> decisions = new ArrayList<>();
+        decisions.add(Decision.NONE);
+        int id = battle.playerId(player);
+        int points = player.getPoints();
+
+        // Contest unclaimed tiles bordering the player's territory
+        int[] frontier = battle.frontier(player).toArray();
+        int contests = 0;
+        for (int n = frontier.length; n > 0 && contests < MAX_PER_KIND; n--) {
+            int i = random.nextInt(n);
+            Tile tile = battle.getTile(frontier[i]);
+            frontier[i] = frontier[n - 1];
+            if (tile.contestable(player)) {
+                decisions.add(Decision.contest(tile.row, tile.col));
+                contests++;
+            }
+        }
+
+        // Split the player's claimed tiles into empty ones and ones holding their units
+        List<Tile> empty = new ArrayList<>(), occupied = new ArrayList<>();
+        long[] claimed = battle.getTerritory().claimed(id);
+        for (int word = 0; word < claimed.length; word++) {
+            for (long bits = claimed[word]; bits != 0; bits &= bits - 1) {
+                Tile tile = battle.getTile((word << 6) + Long.numberOfTrailingZeros(bits));
+                Unit unit = tile.getUnit();
+                if (unit == null) empty.add(tile);
+                else if (unit.ownedBy(player)) occupied.add(tile);
+            }
+        }
+
+        // Buy units the player can afford on empty tiles
+        if (!empty.isEmpty()) {
+            for (UnitData unit : Units.ALL) {
+                if (unit.buyCost() > points) continue;
+                for (int i = 0; i < Math.min(MAX_PER_KIND, empty.size()); i++) {
+                    Tile tile = empty.get(random.nextInt(empty.size()));
+                    Decision buy = Decision.buy(unit, tile.row, tile.col);
+                    if (!decisions.contains(buy)) decisions.add(buy);
+                }
+            }
+        }
+
+        // Sell, use or move the player's units
+        int acts = 0, moves = 0;
+        for (Tile tile : occupied) {
+            Unit unit = tile.getUnit();
+            UnitData data = unit.getData();
+            if (data.isSellable() && acts < MAX_PER_KIND && Actions.SELL.usable(player, tile)) {
+                decisions.add(Decision.sell(tile.row, tile.col));
+                acts++;
+            }
+            if (data.hasAction() && !unit.isAutoAct() && acts < MAX_PER_KIND && data.getAction().usable(player, tile)) {
+                decisions.add(Decision.act(data.getAction(), tile.row, tile.col));
+                acts++;
+            }
+            if (data.isMovable() && unit.isReady() && !empty.isEmpty() && moves < MAX_PER_KIND) {
+                Tile target = empty.get(random.nextInt(empty.size()));
+                if (battle.pathDistance(player, tile, target) != -1) {
+                    decisions.add(Decision.move(tile.row, tile.col, target.row, target.col));
+                    moves++;
+                }
+            }
+        }
+        return decisions;
+    }
+
+    // ==== SCORING
+    /** How well the battle is going for a player, from 0 (far behind the strongest other player) to 1 (far ahead).
+     * Compares material: claimed tiles, points, and the value of units on the player's own land. **/
+    public static double evaluate(Battle battle, int playerId) {
+        double own = 0, rival = Double.NEGATIVE_INFINITY;
+        for (int id = 1; id <= battle.getPlayers().length; id++) {
+            double material = material(battle, id);
+            if (id == playerId) own = material;
+            else rival = Math.max(rival, material);
+        }
+        if (rival == Double.NEGATIVE_INFINITY) return 1;
+        return 1 / (1 + Math.exp((rival - own) / SCORE_SCALE));
+    }
+
+    private static double material(Battle battle, int id) {
+        Player player = battle.getPlayer(id);
+        double material = battle.getTerritory().count(id) * TILE_VALUE + player.getPoints();
+        long[] claimed = battle.getTerritory().claimed(id);
+        UnitStore units = battle.getUnits();
+        for (int n = 0, size = units.size(); n < size; n++) {
+            int slot = units.live(n), index = units.tile(slot);
+            if (units.owner(slot) == id && (claimed[index >>> 6] & (1L << index)) != 0) material += units.type(slot).value;
+        }
+        return material;
+    }
+
+    // ======== ACCESSORS
+    /** Iterations run by the last search, over all threads. **/
+    public long getIterations() {
+        return iterations;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Stop the search threads. **/
+    @Override
+    public void close() {
+        if (pool != null) pool.shutdownNow();
+    }
+
+    /** Thread factory making daemon threads, so searching never keeps the game running after its window closes. **/
+    static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
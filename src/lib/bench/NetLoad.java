@@ -0,0 +1,161 @@
+package lib.bench;
+
+import lib.engine.Command;
+import lib.net.GameClient;
+import lib.net.GameServer;
+import lib.net.Protocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/** Loads a GameServer over loopback with many clients and reports its command throughput and broadcast latency.
+ * Clients fill the rooms' two seats first, and spectate once every seat is taken. Players send contest commands on random
+ * tiles at the given rate, all from one selector thread here; a GameClient spectating the first room checks the clients stay
+ * in step with the server throughout.
+ * Latency is from the server sending a step to a client here reading it, and covers every step sent to every client.
+ * Usage: NetLoad [clients] [rooms] [seconds] [rate]
+ *   rooms: defaults to one for every two clients, so every client plays
+ *   rate: commands each player sends per second, or 0 to send as fast as the server reads them **/
+public class NetLoad {
+    /** Seconds run before measuring, so connecting and compiling aren't measured. **/
+    private static final int WARM_UP = 2;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int rooms = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(1, clients / 2);
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        double rate = args.length > 3 ? Double.parseDouble(args[3]) : 5;
+
+        GameServer server = new GameServer(new InetSocketAddress("127.0.0.1", 0));
+        Thread serverThread = new Thread(server, "game-server");
+        serverThread.start();
+        InetSocketAddress address = server.getAddress();
+
+        Selector selector = Selector.open();
+        List<Client> all = new ArrayList<>(clients), players = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            int seat = i / rooms < 2 ? i / rooms + 1 : 0;
+            Client client = new Client(SocketChannel.open(address), i % rooms, seat);
+            client.channel.register(selector, SelectionKey.OP_READ, client);
+            all.add(client);
+            if (seat != 0) players.add(client);
+        }
+        GameClient mirror = GameClient.connect(address, 0, 0);
+
+        SplittableRandom random = new SplittableRandom(1);
+        SelfPlay.Histogram latency = new SelfPlay.Histogram();
+        long start = System.nanoTime(), measureStart = start + WARM_UP * 1_000_000_000L, end = measureStart + seconds * 1_000_000_000L;
+        long sent = 0, steps = 0, commandsAtStart = -1, mirrored = 0;
+        int next = 0;
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= end) break;
+            boolean measuring = now >= measureStart;
+            if (measuring && commandsAtStart < 0) commandsAtStart = server.getCommands();
+
+            // Send every command due by now, going round the players, but at most one per player before reading again
+            int playing = players.size();
+            long due = rate > 0 ? Math.min((long) ((now - start) / 1e9 * rate * playing), sent + playing) : sent + playing;
+            for (; sent < due; sent++) {
+                players.get(next).send(random.nextInt(8), random.nextInt(8));
+                next = (next + 1) % playing;
+            }
+
+            selector.select(1);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                steps += ((Client) key.attachment()).read(measuring ? latency : null);
+            }
+            mirrored += mirror.sync();
+        }
+        long commands = server.getCommands() - commandsAtStart;
+        long closed = all.stream().filter(client -> !client.channel.isOpen()).count();
+
+        System.out.printf("%d clients (%d playing) in %d rooms, %s: %.0f commands/s applied, %.0f steps/s received, %d clients dropped%n",
+                clients, players.size(), rooms, rate > 0 ? rate + " commands/s per player" : "flooding",
+                commands / (double) seconds, steps / (double) (seconds + WARM_UP), closed);
+        System.out.printf("broadcast latency: p50 %s, p90 %s, p99 %s, p99.9 %s, max %s%n",
+                micros(latency.percentile(0.5)), micros(latency.percentile(0.9)), micros(latency.percentile(0.99)),
+                micros(latency.percentile(0.999)), micros(latency.max()));
+        System.out.printf("mirror of room 0 stayed in step for %d ticks (%s)%n", mirrored,
+                mirror.isConnected() ? "connected" : mirror.getClosedReason());
+
+        mirror.close();
+        for (Client client : all) client.channel.close();
+        server.close();
+        serverThread.join();
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.2f ms", nanos / 1e6);
+    }
+
+    /** A connection to the server that only sends commands and reads frames, without mirroring the battle. **/
+    private static final class Client {
+        final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(1 << 16);
+        private final ByteBuffer out = ByteBuffer.allocate(1 << 12);
+
+        Client(SocketChannel channel, int room, int seat) throws IOException {
+            this.channel = channel;
+            Protocol.write(channel, Protocol.join(room, seat));
+            channel.configureBlocking(false);
+        }
+
+        /** Send a contest command, dropping it if the socket is backed up. **/
+        void send(int row, int col) {
+            if (!channel.isOpen() || out.remaining() < 4 + 1 + Protocol.COMMAND_BYTES) return;
+            out.put(Protocol.command(new Command.ContestTile(null, row, col), null));
+            try {
+                out.flip();
+                channel.write(out);
+                out.compact();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /** Read whatever frames arrived, recording the latency of each step. Returns the amount of steps read. **/
+        int read(SelfPlay.Histogram latency) {
+            int steps = 0;
+            try {
+                if (channel.read(in) < 0) {
+                    close();
+                    return 0;
+                }
+            } catch (IOException e) {
+                close();
+                return 0;
+            }
+            in.flip();
+            long now = System.nanoTime();
+            while (in.remaining() >= 5) {
+                int length = in.getInt(in.position());
+                if (in.remaining() < 4 + length) break;
+                if (in.get(in.position() + 4) == Protocol.STEP) {
+                    if (latency != null) latency.record(now - in.getLong(in.position() + 4 + Protocol.STEP_SENT));
+                    steps++;
+                }
+                in.position(in.position() + 4 + length);
+            }
+            in.compact();
+            return steps;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package lib.bench;
+
+import lib.engine.Battle;
+import lib.engine.Player;
+import lib.engine.TileStore;
+import lib.engine.path.Pathfinder;
+
+import java.util.SplittableRandom;
+
+/** Times random path queries for a player who owns nearly all of a large map,
+ * first with cold cluster caches and then warm, with an occasional ownership change invalidating clusters in between,
+ * and finally distance-only queries that skip building the tile path.
+ * Usage: PathQueries [size] [queries] [seed] **/
+public class PathQueries {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+        Player player = new Player(0), enemy = new Player(0);
+        Battle battle = new Battle(size, size, seed, player, enemy);
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                battle.claim(random.nextInt(10) == 0 ? enemy : player, r, c);
+            }
+        }
+
+        TileStore store = battle.getStore();
+        Pathfinder pathfinder = battle.getPathfinder();
+        int id = battle.playerId(player);
+        for (int pass = 0; pass < 3; pass++) {
+            int found = 0;
+            long steps = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                if (pass >= 1 && i % 100 == 0) battle.claim(player, random.nextInt(size), random.nextInt(size));
+                int from = store.index(random.nextInt(size), random.nextInt(size)), to = store.index(random.nextInt(size), random.nextInt(size));
+                int length;
+                if (pass < 2) {
+                    int[] path = pathfinder.findPath(id, from, to);
+                    length = path == null ? -1 : path.length - 1;
+                } else {
+                    length = pathfinder.distance(id, from, to);
+                }
+                if (length != -1) {
+                    found++;
+                    steps += length;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%s: %d queries on %dx%d, %d found, avg %.1f steps, %.1f us per query%n",
+                    pass == 0 ? "cold" : pass == 1 ? "warm" : "distance", queries, size, size, found, found == 0 ? 0 : (double) steps / found, elapsed / 1e3 / queries);
+        }
+    }
+}
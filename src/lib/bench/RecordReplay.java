@@ -0,0 +1,101 @@
+package lib.bench;
+
+import lib.data.Actions;
+import lib.data.Units;
+import lib.engine.*;
+import lib.engine.log.ActionLog;
+import lib.engine.log.Keyframes;
+import lib.engine.log.Replay;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/** Records a headless battle where both players contest, buy and sell at random into a battle log with keyframes,
+ * then replays the log into a fresh battle as fast as possible, and checks the replay matches the recording.
+ * Finally seeks to random ticks with the keyframes, checking each seek lands on the same state as replaying from the start.
+ * Usage: RecordReplay [size] [ticks] [seed] [keyframeInterval] [seeks] **/
+public class RecordReplay {
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        int interval = args.length > 3 ? Integer.parseInt(args[3]) : Keyframes.DEFAULT_INTERVAL;
+        int seeks = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+
+        Path file = Files.createTempFile("battle", ".log");
+        Path keyframeFile = Files.createTempFile("battle", ".keys");
+        Player player = new Player(0x4884EA);
+        Player enemy = new Player(0xE74B51);
+        Battle battle = new Battle(size, size, seed, player, enemy);
+        ActionLog log = ActionLog.record(battle, file);
+        log.recordKeyframes(Keyframes.create(keyframeFile), interval);
+        TickThroughput.populate(battle, size, player, enemy);
+        player.addPoints(20);
+        enemy.addPoints(20);
+
+        SplittableRandom rng = new SplittableRandom(seed);
+        long start = System.nanoTime();
+        for (int i = 0; i < ticks; i++) {
+            if (rng.nextInt(4) == 0) play(battle, rng.nextBoolean() ? player : enemy, rng);
+            battle.tick();
+        }
+        long recordTime = System.nanoTime() - start;
+        log.close();
+        long bytes = Files.size(file);
+
+        start = System.nanoTime();
+        long replayed;
+        long records;
+        try (Replay replay = Replay.open(file)) {
+            replayed = replay.run();
+            records = replay.getRecords();
+        }
+        long replayTime = System.nanoTime() - start;
+        long mismatch = Replay.verify(file);
+
+        System.out.printf("recorded %d ticks in %.1f ms: %d bytes, %d records, %.2f bytes/record, %d bytes of keyframes%n",
+                ticks, recordTime / 1e6, bytes, records, bytes / (double) records, Files.size(keyframeFile));
+        System.out.printf("replayed %d ticks in %.1f ms (%.0fx real time)%n",
+                replayed, replayTime / 1e6, (replayed * (double) GameConstants.TICK_TIME) / (replayTime / 1e6));
+        System.out.println(mismatch < 0 ? "replay matches recording" : "replay DIVERGED at byte " + mismatch);
+
+        // Seek around at random, comparing against replaying from the start to the same tick
+        long seekTime = 0;
+        int wrong = 0;
+        try (Replay seeking = Replay.open(file)) {
+            seeking.setKeyframes(Keyframes.open(keyframeFile));
+            for (int i = 0; i < seeks; i++) {
+                long tick = rng.nextLong(replayed + 1);
+                start = System.nanoTime();
+                seeking.seek(tick);
+                seekTime += System.nanoTime() - start;
+
+                try (Replay linear = Replay.open(file)) {
+                    linear.seek(tick);
+                    if (!BattleState.write(linear.getBattle()).equals(BattleState.write(seeking.getBattle()))) wrong++;
+                }
+            }
+        }
+        System.out.printf("%d seeks averaged %.2f ms, %d landed on a different state than replaying from the start%n",
+                seeks, seekTime / 1e6 / Math.max(seeks, 1), wrong);
+        Files.delete(file);
+        Files.delete(keyframeFile);
+    }
+
+    /** Submit a random command for a player: contest part of its frontier, buy a farmer on its land, or sell a unit. **/
+    private static void play(Battle battle, Player player, SplittableRandom rng) {
+        int row = rng.nextInt(battle.numRows()), col = rng.nextInt(battle.numCols());
+        Tile tile = battle.getTile(row, col);
+        if (!battle.frontier(player).isEmpty() && rng.nextBoolean()) {
+            int[] frontier = battle.frontier(player).toArray();
+            Tile target = battle.getTile(frontier[rng.nextInt(frontier.length)]);
+            battle.submit(new Command.ContestTile(player, target.row, target.col));
+        } else if (tile.ownedBy(player) && !tile.hasUnit()) {
+            battle.submit(new Command.Buy(player, Units.FARMER, row, col));
+        } else if (tile.ownedBy(player) && tile.hasUnit()) {
+            battle.submit(new Command.Act(player, Actions.SELL, row, col));
+        }
+    }
+}
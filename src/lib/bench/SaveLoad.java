@@ -0,0 +1,59 @@
+package lib.bench;
+
+import lib.engine.Battle;
+import lib.engine.BattleSave;
+import lib.engine.BattleState;
+import lib.engine.Player;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/** Times saving and loading a battle whose map is split between two players and full of units,
+ * and checks the loaded battle is in exactly the same state as the saved one.
+ * Usage: SaveLoad [size] [units] [runs] **/
+public class SaveLoad {
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int units = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Player player = new Player(0x4884EA);
+        Player enemy = new Player(0xE74B51);
+        Battle battle = new Battle(size, size, 1, player, enemy);
+        // Each player owns half of the map, with a ragged border
+        for (int r = 0; r < size; r++) {
+            int border = size / 2 + (int) (Math.sin(r * 0.05) * size / 8);
+            for (int c = 0; c < size; c++) battle.claim(c < border ? player : enemy, r, c);
+        }
+        TickThroughput.populate(battle, units, player, enemy);
+        player.addPoints(1234);
+        for (int i = 0; i < 100; i++) battle.tick();
+
+        Path file = Files.createTempFile("battle", ".save");
+        byte[] expected = array(battle);
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            BattleSave.save(battle, file);
+            long saveTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Battle loaded = BattleSave.load(file);
+            long loadTime = System.nanoTime() - start;
+
+            boolean same = Arrays.equals(expected, array(loaded));
+            System.out.printf("%dx%d map, %d units: %d bytes, saved in %.1f ms, loaded in %.1f ms%s%n",
+                    size, size, units, Files.size(file), saveTime / 1e6, loadTime / 1e6, same ? "" : " MISMATCH");
+        }
+        Files.delete(file);
+    }
+
+    private static byte[] array(Battle battle) {
+        ByteBuffer snapshot = BattleState.write(battle);
+        byte[] bytes = new byte[snapshot.remaining()];
+        snapshot.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,237 @@
+package lib.bench;
+
+import lib.ai.Decision;
+import lib.ai.MctsSearch;
+import lib.data.Openings;
+import lib.data.Units;
+import lib.engine.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Runs many headless self-play matches at once and reports engine throughput, to regression-test it.
+ * Each match is a battle on the standard opening between two players, each deciding once every MctsSearch.DECISION_TICKS ticks,
+ * and runs on its own virtual thread where the runtime has them (on a pool of platform threads otherwise).
+ * Matches run on the battle's own tick clock, as fast as they can or compressed from real time by the speedup.
+ * Which player decides first is picked at random at each decision, since a later contest of the same tile takes it over.
+ * Reports matches per second, percentiles of the time taken by each tick, the heap held by each live match,
+ * and how many matches each player won on material at the end, or drew.
+ * Usage: SelfPlay [matches] [ticks] [ai] [speedup] [budget]
+ *   ai: "scripted" for two scripted players, "mcts" to play the first player with a single-threaded MctsSearch
+ *   speedup: game time per real time, or 0 to run unpaced
+ *   budget: milliseconds each MCTS decision is searched for **/
+public class SelfPlay {
+    public static void main(String[] args) throws Exception {
+        int matches = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 15000;
+        boolean mcts = args.length > 2 && args[2].equals("mcts");
+        double speedup = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+        long budget = args.length > 4 ? Long.parseLong(args[4]) : 5;
+
+        // Build every match up front, so the heap they hold can be measured before any of them runs
+        long baseline = usedHeap();
+        List<Match> all = new ArrayList<>(matches);
+        for (int i = 0; i < matches; i++) all.add(new Match(i, ticks, speedup, mcts ? new MctsSearch(1, budget) : null));
+        long heapPerMatch = (usedHeap() - baseline) / matches;
+
+        Histogram latency = new Histogram();
+        // Matches won by the first player, won by the second, and drawn
+        AtomicLongArray results = new AtomicLongArray(3);
+        // Paced matches mostly sleep, so without virtual threads each gets a platform thread of its own
+        ExecutorService executor = virtualThreads();
+        String threads = "virtual threads";
+        if (executor == null) {
+            int count = speedup > 0 ? matches : Runtime.getRuntime().availableProcessors();
+            executor = Executors.newFixedThreadPool(count);
+            threads = "a pool of " + count + " threads";
+        }
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>(matches);
+        for (Match match : all) {
+            futures.add(executor.submit(() -> {
+                Histogram own = match.play();
+                latency.add(own);
+                results.incrementAndGet(match.result());
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) future.get();
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        System.out.printf("%d matches of %d ticks (%s, %s) on %s: %.1f s, %.1f matches/s, %.0f ticks/s%n",
+                matches, ticks, mcts ? "mcts vs scripted" : "scripted vs scripted",
+                speedup > 0 ? speedup + "x real time" : "unpaced", threads,
+                elapsed / 1e9, matches / (elapsed / 1e9), (double) matches * ticks / (elapsed / 1e9));
+        System.out.printf("tick latency: p50 %s, p90 %s, p99 %s, p99.9 %s, max %s%n",
+                micros(latency.percentile(0.5)), micros(latency.percentile(0.9)), micros(latency.percentile(0.99)),
+                micros(latency.percentile(0.999)), micros(latency.max()));
+        System.out.printf("heap per match: %.1f KB; of %d matches, first player won %d, second won %d, %d drawn%n",
+                heapPerMatch / 1024.0, matches, results.get(0), results.get(1), results.get(2));
+        for (Match match : all) match.close();
+    }
+
+    /** An executor starting a virtual thread per task, or null if the runtime has no virtual threads (before Java 21). **/
+    private static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.2f us", nanos / 1e3);
+    }
+
+    // ==== MATCHES
+    /** A battle between two players on the standard opening (see Openings), and the players' brains. **/
+    private static final class Match {
+        private final Battle battle;
+        private final Player first, second;
+        private final int ticks;
+        /** Real nanoseconds per tick, or 0 to run unpaced. **/
+        private final long tickNanos;
+        /** Plays the first player, or null if it is scripted. **/
+        private final MctsSearch search;
+        private final SplittableRandom random;
+
+        Match(int index, int ticks, double speedup, MctsSearch search) {
+            battle = Openings.standard(index);
+            first = battle.getPlayer(1);
+            second = battle.getPlayer(2);
+            this.ticks = ticks;
+            this.tickNanos = speedup > 0 ? (long) (TimeUnit.MILLISECONDS.toNanos(GameConstants.TICK_TIME) / speedup) : 0;
+            this.search = search;
+            random = new SplittableRandom(index);
+        }
+
+        /** Play the match to the end on the calling thread, returning how long each tick took. **/
+        Histogram play() throws InterruptedException {
+            Histogram latency = new Histogram();
+            long start = System.nanoTime();
+            for (int tick = 0; tick < ticks; tick++) {
+                if (tick % MctsSearch.DECISION_TICKS == 0) {
+                    if (random.nextBoolean()) {
+                        decide(first, search);
+                        decide(second, null);
+                    } else {
+                        decide(second, null);
+                        decide(first, search);
+                    }
+                }
+                long before = System.nanoTime();
+                battle.tick();
+                latency.record(System.nanoTime() - before);
+
+                if (tickNanos > 0) {
+                    long wait = start + (tick + 1) * tickNanos - System.nanoTime();
+                    if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+            return latency;
+        }
+
+        private void decide(Player player, MctsSearch search) {
+            Decision decision = search != null
+                    ? search.search(BattleState.write(battle), battle.getTerrain(), battle.playerId(player), random.nextLong())
+                    : scripted(battle, player, random);
+            Command command = decision.toCommand(player);
+            if (command != null) battle.submit(command);
+        }
+
+        /** 0 if the first player ended ahead on material, 1 if the second did, or 2 if they ended level. **/
+        int result() {
+            double score = MctsSearch.evaluate(battle, battle.playerId(first));
+            return score > 0.5 ? 0 : score < 0.5 ? 1 : 2;
+        }
+
+        void close() {
+            if (search != null) search.close();
+        }
+    }
+
+    /** Scripted play: contest the cheapest tile on the frontier, keeping enough points to buy a farmer now and then.
+     * Ties, and the tile to buy on, are picked evenly at random, so the order tiles are visited in doesn't favour either side of the map. **/
+    static Decision scripted(Battle battle, Player player, SplittableRandom random) {
+        Tile cheapest = null;
+        int ties = 0;
+        for (int index : battle.frontier(player).toArray()) {
+            Tile tile = battle.getTile(index);
+            if (!tile.contestable(player)) continue;
+            if (cheapest == null || tile.contestCost() < cheapest.contestCost()) {
+                cheapest = tile;
+                ties = 1;
+            } else if (tile.contestCost() == cheapest.contestCost() && random.nextInt(++ties) == 0) {
+                cheapest = tile;
+            }
+        }
+        if (player.getPoints() >= Units.FARMER.buyCost() * 2 && random.nextInt(4) == 0) {
+            Tile empty = null;
+            int seen = 0;
+            for (Tile tile : battle) {
+                if (tile.ownedBy(player) && !tile.hasUnit() && random.nextInt(++seen) == 0) empty = tile;
+            }
+            if (empty != null) return Decision.buy(Units.FARMER, empty.row, empty.col);
+        }
+        return cheapest == null ? Decision.NONE : Decision.contest(cheapest.row, cheapest.col);
+    }
+
+    // ==== LATENCY
+    /** Log-linear histogram of durations in nanoseconds: 16 buckets per power of two, so percentiles are within about 6%. **/
+    static final class Histogram {
+        private final long[] counts = new long[61 << 4];
+        private long total, max;
+
+        void record(long nanos) {
+            counts[bucket(Math.max(nanos, 0))]++;
+            total++;
+            max = Math.max(max, nanos);
+        }
+
+        synchronized void add(Histogram other) {
+            for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+            total += other.total;
+            max = Math.max(max, other.max);
+        }
+
+        /** Lower bound of the bucket holding the given fraction of recorded durations. **/
+        synchronized long percentile(double fraction) {
+            long rank = (long) Math.ceil(fraction * total), seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] != 0) return lowerBound(i);
+            }
+            return max;
+        }
+
+        synchronized long max() {
+            return max;
+        }
+
+        private static int bucket(long nanos) {
+            if (nanos < 16) return (int) nanos;
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            return ((exponent - 3) << 4) | (int) ((nanos >>> (exponent - 4)) & 15);
+        }
+
+        private static long lowerBound(int bucket) {
+            if (bucket < 16) return bucket;
+            int exponent = (bucket >>> 4) + 3;
+            return (16L | (bucket & 15)) << (exponent - 4);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package lib.bench;
+
+import lib.engine.Battle;
+import lib.engine.Player;
+import lib.engine.TileStore;
+
+import java.util.concurrent.ForkJoinPool;
+
+/** Times seeded terrain generation of a whole map at increasing thread counts,
+ * and checks every run produces the same map as the first.
+ * Usage: TerrainGeneration [size] [seed] [maxThreads] **/
+public class TerrainGeneration {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        long expected = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Battle battle = new Battle(size, size, seed, new Player(0));
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long start = System.nanoTime();
+            battle.getStore().generateAll(pool);
+            long elapsed = System.nanoTime() - start;
+            pool.shutdown();
+
+            long checksum = checksum(battle.getStore());
+            if (threads == 1) expected = checksum;
+            System.out.printf("%d threads: %dx%d in %.1f ms, checksum %016x %s%n",
+                    threads, size, size, elapsed / 1e6, checksum, checksum == expected ? "" : "MISMATCH");
+        }
+    }
+
+    /** Hash of every tile's terrain and corners, in row-major order. **/
+    public static long checksum(TileStore store) {
+        long hash = 17;
+        for (int r = 0; r < store.rows; r++) {
+            for (int c = 0; c < store.cols; c++) {
+                int index = store.index(r, c);
+                hash = hash * 31 + store.depth(index);
+                hash = hash * 31 + store.type(index);
+                hash = hash * 31 + store.around(index);
+                hash = hash * 31 + store.lowest(index);
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,51 @@
+package lib.bench;
+
+import lib.data.Units;
+import lib.engine.Battle;
+import lib.engine.Player;
+
+/** Headless throughput harness. Builds a battle of the given size, fills it with auto-acting units,
+ * then runs the scheduler as fast as possible and reports simulated ticks per second.
+ * Usage: TickThroughput [rows] [cols] [units] [ticks] **/
+public class TickThroughput {
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int cols = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int units = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        int ticks = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+
+        long buildStart = System.nanoTime();
+        Player player = new Player(0x4884EA);
+        Player enemy = new Player(0xE74B51);
+        Battle battle = new Battle(rows, cols, player, enemy);
+        populate(battle, units, player, enemy);
+        long buildTime = System.nanoTime() - buildStart;
+
+        // Warm up, so the timed run measures compiled code
+        for (int i = 0; i < Math.min(ticks, 2000); i++) battle.tick();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ticks; i++) battle.tick();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("map %dx%d, %d units: built in %.1f ms, %d bytes of tile state per tile, %d of unit state per unit%n",
+                rows, cols, units, buildTime / 1e6, lib.engine.TileStore.bytesPerTile(), lib.engine.UnitStore.bytesPerUnit());
+        System.out.printf("%d ticks in %.1f ms = %.0f ticks/s (%.0fx real time), %d tasks pending%n",
+                ticks, elapsed / 1e6, ticks / (elapsed / 1e9),
+                (ticks * (double) lib.engine.GameConstants.TICK_TIME) / (elapsed / 1e6),
+                battle.getScheduler().pending());
+        System.out.printf("points: player=%d enemy=%d%n", player.getPoints(), enemy.getPoints());
+    }
+
+    /** Claim tiles across the map alternating between players and place a castle per player then farmers on the rest. **/
+    public static void populate(Battle battle, int units, Player player, Player enemy) {
+        int tiles = battle.numRows() * battle.numCols();
+        int stride = Math.max(1, tiles / Math.max(1, units));
+        int placed = 0;
+        for (int i = 0; i < tiles && placed < units; i += stride, placed++) {
+            int row = i / battle.numCols(), col = i % battle.numCols();
+            Player owner = placed % 2 == 0 ? player : enemy;
+            battle.claimAndPlaceUnit(owner, placed < 2 ? Units.CASTLE : Units.FARMER, row, col);
+        }
+    }
+}
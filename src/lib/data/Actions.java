@@ -10,4 +10,8 @@ public class Actions {
         CONTEST = new Contest(),
         SELL = new Sell(),
         MOVE = new Move();
+
+    /** Every shared action, by the id battle logs refer to it with. Only ever append, so old logs keep their meaning.
+     * Actions belonging to a single unit type are logged as that unit's action instead. **/
+    public static final Action[] ALL = {CONTEST, SELL, MOVE};
 }
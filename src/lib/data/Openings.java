@@ -0,0 +1,36 @@
+package lib.data;
+
+import lib.engine.Battle;
+import lib.engine.Player;
+
+/** Starting positions for two player battles, shared by the game, the server and the self-play harness. **/
+public class Openings {
+    /** Colors of the first and second player in battles made here. The same as Colors.ALLY and Colors.ENEMY. **/
+    public static final int FIRST_COLOR = 0x4884EA, SECOND_COLOR = 0xE74B51;
+    /** Points each player starts with. **/
+    public static final int STARTING_POINTS = 5;
+
+    /** The standard opening on an 8x8 map generated from the seed, between two new players. **/
+    public static Battle standard(long seed) {
+        return standard(new Battle(8, 8, seed, new Player(FIRST_COLOR), new Player(SECOND_COLOR)));
+    }
+
+    /** Set up the standard opening on an 8x8 battle between two players: each gets a castle, a farmer and a soldier
+     * in opposite corners, one more claimed tile, and the starting points. Returns the battle. **/
+    public static Battle standard(Battle battle) {
+        Player first = battle.getPlayer(1), second = battle.getPlayer(2);
+        battle.claimAndPlaceUnit(first, Units.CASTLE, 7, 0);
+        battle.claim(first, 7, 1);
+        battle.claimAndPlaceUnit(first, Units.FARMER, 6, 0);
+        battle.claimAndPlaceUnit(first, Units.SOLDIER, 6, 1);
+
+        battle.claimAndPlaceUnit(second, Units.CASTLE, 0, 7);
+        battle.claim(second, 0, 6);
+        battle.claimAndPlaceUnit(second, Units.FARMER, 1, 7);
+        battle.claimAndPlaceUnit(second, Units.SOLDIER, 1, 6);
+
+        first.addPoints(STARTING_POINTS);
+        second.addPoints(STARTING_POINTS);
+        return battle;
+    }
+}
@@ -12,4 +12,7 @@ public class Units {
         FARMER = new Farmer(),
         SOLDIER = new Soldier(),
         TRACTOR = new Tractor();
+
+    /** Every unit type, by the id battle logs refer to it with. Only ever append, so old logs keep their meaning. **/
+    public static final UnitData[] ALL = {CASTLE, FARMER, SOLDIER, TRACTOR};
 }
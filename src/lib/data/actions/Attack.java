@@ -3,19 +3,54 @@ package lib.data.actions;
 import lib.engine.Action;
 import lib.engine.Player;
 import lib.engine.Tile;
+import lib.engine.Unit;
+import lib.engine.UnitIndex;
 
-/** An action to generate a point for the player. (Name can differ between GeneratePoint instances) **/
+/** An action to deal damage to an enemy unit within range.
+ * Attacks the unit's selected target if it is still valid, otherwise the nearest enemy unit in range. **/
 public class Attack extends Action {
     /** The amount of damage to deal. **/
     private final int damage;
+    /** How far away, in tiles, a target can be. **/
+    private final double range;
 
-    public Attack(String name, int damage) {
+    public Attack(String name, int damage, double range) {
         super(name, true);
         this.damage = damage;
+        this.range = range;
+    }
+
+    public Attack(String name, int damage) {
+        this(name, damage, 1);
+    }
+
+    @Override
+    public boolean usable(Player player, Tile tile) {
+        return super.usable(player, tile) && findTarget(tile) != null;
     }
 
     @Override
     public void act(Player player, Tile tile) {
+        Unit unit = tile.getUnit();
+        Tile target = findTarget(tile);
+        if (target == null) return;
+        unit.setTarget(target);
+        unit.dealDamage(damage);
+    }
+
+    /** The tile this unit should attack, or null if no enemy is in range. **/
+    private Tile findTarget(Tile tile) {
+        Unit unit = tile.getUnit();
+        Tile target = unit.getTarget();
+        if (target != null && target.hasUnit() && !target.getUnit().ownedBy(unit.getOwner()) && inRange(tile, target)) {
+            return target;
+        }
+        Unit nearest = tile.getBattle().getUnitIndex().nearest(tile.row, tile.col, range, unit.getOwner(), UnitIndex.ENEMY);
+        return nearest == null ? null : nearest.getTile();
+    }
 
+    private boolean inRange(Tile from, Tile to) {
+        int dr = from.row - to.row, dc = from.col - to.col;
+        return dr*dr + dc*dc <= range*range;
     }
 }
@@ -5,9 +5,11 @@ import lib.engine.Player;
 import lib.engine.Tile;
 import lib.engine.Unit;
 
+/** An action to walk a unit to its target tile over its owner's land, one tile each time the unit becomes ready.
+ * The unit keeps walking on its own until it arrives, or stops if the way is blocked. See Battle.findPath() and Unit.isWalking(). **/
 public class Move extends Action {
     public Move() {
-        super("Move");
+        super("Move", true);
     }
 
     @Override
@@ -17,11 +19,25 @@ public class Move extends Action {
 
     @Override
     public boolean usable(Player player, Tile tile) {
-        return super.usable(player, tile);
+        if (!super.usable(player, tile) || !tile.getUnit().getData().isMovable()) return false;
+        Tile target = tile.getUnit().getTarget();
+        return target != null && !target.hasUnit() && tile.getBattle().pathDistance(player, tile, target) != -1;
     }
 
+    /** Take one step along the path to the target. Placing the unit on the next tile restarts its cooldown. **/
     @Override
     public void act(Player player, Tile tile) {
-        // TODO: implement movement
+        Unit unit = tile.getUnit();
+        Tile target = unit.getTarget();
+        Tile[] path = target == null || target.hasUnit() ? null : tile.getBattle().findPath(player, tile, target);
+        if (path == null) {
+            unit.setWalking(false);
+            return;
+        }
+        tile.removeUnit();
+        path[1].setUnit(unit);
+        boolean arrived = path[1].equals(target);
+        unit.setWalking(!arrived);
+        if (arrived) unit.setTarget(null);
     }
 }
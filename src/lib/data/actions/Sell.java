@@ -17,7 +17,8 @@ public class Sell extends Action {
 
     @Override
     public boolean usable(Player player, Tile tile) {
-        return tile.hasUnit() && (tile.getUnit().isReady() || tile.getUnit().getData().isMustAutoAct());
+        if (!visible(player, tile)) return false;
+        return tile.getUnit().isReady() || tile.getUnit().getData().isMustAutoAct();
     }
 
     @Override
@@ -22,6 +22,7 @@ public class Castle extends UnitData {
         setMustAutoAct(true);
         setSellable(false);
         setMovable(false);
+        setCastle(true);
         setAction(new GeneratePoint("Mine", 1));
 
         // Base
@@ -1,5 +1,6 @@
 package lib.data.units;
 
+import lib.data.actions.Attack;
 import lib.engine.Buyable;
 import lib.engine.UnitData;
 import lib.geometry.Shape;
@@ -7,6 +8,8 @@ import lib.geometry.Shape;
 public class Soldier extends UnitData {
     public Soldier() {
         super("Soldier", 3, 5, 3, 10000);
+        setDefaultAutoAct(true);
+        setAction(new Attack("Attack", 3, 2));
         addShape(Shape.rectangularPrism(0.4, 0.4, 0.4));
     }
 }
@@ -1,6 +1,7 @@
 package lib.elementboxes;
 
 import lib.engine.Action;
+import lib.engine.Command;
 import lib.engine.Player;
 import lib.engine.Tile;
 
@@ -44,9 +45,8 @@ public class ActionElement extends TextElement {
 
     @Override
     public void onInteract() {
-        tile.act(player, action);
-        if (!action.usable(player, tile)) {
-            unselect();
-        }
+        // Acting uses up the unit's readiness, so the button is done with either way
+        if (action.usable(player, tile)) tile.getBattle().submit(new Command.Act(player, action, tile.row, tile.col));
+        unselect();
     }
 }
@@ -1,5 +1,6 @@
 package lib.elementboxes;
 
+import lib.Palette;
 import lib.engine.Buyable;
 import lib.engine.Corners;
 import lib.engine.Player;
@@ -51,8 +52,8 @@ public class ShopItemElement extends ElementBox {
         item.getMesh().draw(g,
                 unitDrawPoly,
                 Corners.FLAT,
-                canBuy ? player.color : Color.GRAY,
-                canBuy ? player.faceColor : Color.BLACK,
+                canBuy ? Palette.of(player).color : Color.GRAY,
+                canBuy ? Palette.of(player).faceColor : Color.BLACK,
                 SHAPE_ZOOM);
         costText.draw(g);
     }
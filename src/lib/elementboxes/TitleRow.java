@@ -1,5 +1,7 @@
 package lib.elementboxes;
 
+import lib.Palette;
+import lib.TileView;
 import lib.engine.Corners;
 import lib.engine.Tile;
 import lib.geometry.Shape;
@@ -49,9 +51,9 @@ public class TitleRow extends ElementBox {
     public void draw(Graphics g) {
         super.draw(g);
         if (tile.hasUnit()) {
-            tile.getUnit().getData().getMesh().draw(g, polygon, Corners.flatCorners(), tile.getOwner().color, tile.getOwner().faceColor, UNIT_ZOOM);
+            tile.getUnit().getData().getMesh().draw(g, polygon, Corners.flatCorners(), Palette.of(tile.getOwner()).color, Palette.of(tile.getOwner()).faceColor, UNIT_ZOOM);
         } else {
-            tile.drawOnPolygon(g, polygon);
+            TileView.drawOnPolygon(g, tile.getBattle().getRenderBuffer().current(), tile.row, tile.col, polygon);
         }
     }
 
@@ -59,7 +61,7 @@ public class TitleRow extends ElementBox {
         this.tile = tile;
         polygon = Shape.tilePolygon(rect.x + 40, rect.y + 20, tile.hasUnit() ? UNIT_ZOOM : TILE_ZOOM);
         title.setText(tile.displayName());
-        position.setText(String.format("X=%d Y=%d Z=%d", tile.row, tile.col, tile.depth));
+        position.setText(String.format("X=%d Y=%d Z=%d", tile.row, tile.col, tile.getDepth()));
     }
 
     @Override
@@ -1,100 +1,101 @@
 package lib.engine;
 
-import lib.Camera;
+import lib.engine.path.FlowField;
+import lib.engine.path.FlowFieldCache;
+import lib.engine.path.Pathfinder;
+import lib.timing.GameClock;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.function.Consumer;
+import java.util.List;
 
 /** Represents a battle.
- * Is iterable. When iterated over, iterates over objet in screen draw order. **/
+ * Is iterable. When iterated over, iterates over tiles in row-major order.
+ * Has no display dependencies, so it can run headless: call update() to follow real time, or tick() to simulate as fast as possible. **/
 public class Battle implements Iterable<Tile> {
-    /** All players engaging in this battle. **/
+    /** All players engaging in this battle. A player's id is its index in this array + 1; id 0 is no player. **/
     protected Player[] players;
 
-    /** All tiles in the map of this battle. **/
-    protected Tile[][] map;
+    /** State of every tile in the map of this battle. **/
+    protected final TileStore store;
+    /** Tiles claimed by each player and the frontier each player can expand into. **/
+    private final Territory territory;
+    /** Which pieces each player's territory is in and whether they reach a castle. **/
+    private final Connectivity connectivity;
+    /** Finds paths for units to move along, caching the map's traversal graph per player. **/
+    private final Pathfinder pathfinder;
+    /** Most recently used flow fields, for moving many units toward the same goals. **/
+    private final FlowFieldCache flowFields;
+    /** State of the units on the map in columns, by the slot tiles refer to them with. **/
+    private final UnitStore units;
+    /** Units on the map by position, for range and nearest-unit queries. **/
+    private final UnitIndex unitIndex;
+    /** Contests running on the map, by the slot tiles refer to them with. **/
+    private final SlotTable<Contest> contests;
 
-    public Battle(Player... players) {
-        this.players = players;
-        // Initialize with empty tiles
-        map = new Tile[8][8];
-        for (int r=0; r<map.length; r++){
-            for (int c=0; c<map[0].length; c++){
-                map[r][c] = new Tile(this, r, c);
-            }
-        }
+    /** Indexes of tiles whose terrain was changed after being generated. **/
+    private final IntSet terrainEdits = new IntSet();
 
-        // Calculate the corners around each tile based on surrounding tiles' corners
-        for (int r=0; r<map.length; r++) {
-            for (int c=0; c<map[0].length; c++) {
-                Tile tile = map[r][c];
-                Corners
-                        base = tile.getBase(),
-                        around = tile.getAround(),
-                        lowest = tile.getLowest(),
-                        north = getBase(r, c-1),
-                        northwest = getBase(r-1, c-1),
-                        west = getBase(r-1, c),
-                        southwest = getBase(r-1, c+1),
-                        south = getBase(r, c+1),
-                        southeast = getBase(r+1, c+1),
-                        east = getBase(r+1, c),
-                        northeast = getBase(r+1, c-1);
-
-                around.setNw(nextLowestCorner(base.nw(), north.ne(), northwest.se(), west.sw()));
-                around.setSw(nextLowestCorner(base.sw(), west.se(), southwest.ne(), south.nw()));
-                around.setSe(nextLowestCorner(base.se(), south.ne(), southeast.nw(), east.sw()));
-                around.setNe(nextLowestCorner(base.ne(), east.nw(), northeast.sw(), north.se()));
-
-                lowest.setNw(lowestCorner(base.nw(), north.ne(), northwest.se(), west.sw()));
-                lowest.setSw(lowestCorner(base.sw(), west.se(), southwest.ne(), south.nw()));
-                lowest.setSe(lowestCorner(base.se(), south.ne(), southeast.nw(), east.sw()));
-                lowest.setNe(lowestCorner(base.ne(), east.nw(), northeast.sw(), north.se()));
-            }
-        }
-    }
+    /** Listeners notified of tiles whose terrain changed. **/
+    private final List<TerrainListener> terrainListeners = new ArrayList<>();
+    /** Listeners notified after each update() and tick(). **/
+    private final List<StepListener> stepListeners = new ArrayList<>();
+
+    /** Commands submitted by input and UI threads, applied at the start of each tick. **/
+    private final CommandQueue commands = new CommandQueue();
+    /** Takes submitted commands instead of the queue, or null to apply them here. **/
+    private volatile CommandSink commandSink;
+    /** Told about every change to this battle so it can be replayed, or null if not recording. **/
+    private BattleRecorder recorder;
+    /** Snapshots of this battle published for drawing at the end of each tick, or null until first asked for. **/
+    private RenderBuffer renderBuffer;
+
+    /** Generates this battle's terrain. **/
+    private final TerrainGenerator terrain;
+    /** Drives every timed event in this battle. **/
+    private final Scheduler scheduler;
+    /** Clock update() keeps the scheduler in step with: real time unless set otherwise. **/
+    private GameClock clock = GameClock.SYSTEM;
+    /** Time of the clock in milliseconds when this battle's time was 0. **/
+    private long startTime;
 
-    /** out of bounds corners, all -1 **/
-    private static final Corners OOB = new Corners();
-    private Corners getBase(int row, int col) {
-        return withinBounds(row, col) ? map[row][col].getBase() : OOB;
+    public Battle(Player... players) {
+        this(8, 8, players);
     }
 
-    /** Return the next lowest connected corner from the base. (Highest number that is not above base) **/
-    private int nextLowestCorner(int base, int... corners) {
-        int highest = -1;
-        for (int corner : corners) {
-            if (corner > highest && corner <= base) {
-                highest = corner;
-            }
-        }
-        return highest;
+    public Battle(int rows, int cols, Player... players) {
+        this(rows, cols, new SlopeTerrain(), players);
     }
 
-    /** Return the lowest connected corner of the four. **/
-    private int lowestCorner(int base, int c1, int c2, int c3) {
-        return Math.min(Math.min(base, c1), Math.min(c2, c3));
+    /** Create a battle with terrain generated from a seed. The same seed always gives the same map. **/
+    public Battle(int rows, int cols, long seed, Player... players) {
+        this(rows, cols, new SlopeTerrain(seed), players);
     }
 
-    /** Return the lowest connected corner of the four. **/
-    private int lowestUngroundedCorner(int base, int... corners) {
-        int lowest = base;
-        for (int corner : corners) {
-            if (corner < lowest && corner != -1) {
-                lowest = corner;
-            }
-        }
-        return lowest;
+    /** Create a battle whose terrain is filled in by the given generator as each chunk of the map is first used. **/
+    public Battle(int rows, int cols, TerrainGenerator terrain, Player... players) {
+        this.players = players;
+        this.terrain = terrain;
+        scheduler = new Scheduler();
+        startTime = clock.millis();
+        store = new TileStore(rows, cols, terrain);
+        territory = new Territory(store, players.length);
+        connectivity = new Connectivity(store, territory, players.length);
+        pathfinder = new Pathfinder(store, territory, players.length);
+        flowFields = new FlowFieldCache(store, territory, pathfinder, GameConstants.FLOW_FIELD_CACHE_SIZE);
+        units = new UnitStore(players);
+        unitIndex = new UnitIndex(units, rows, cols);
+        contests = new SlotTable<>();
     }
 
-    /** Iterate over the tiles in current draw order. (Depends on rotation) **/
+    /** Iterate over the tiles in row-major order. **/
     public Iterator<Tile> iterator() {
-        return new DrawOrder();
+        return new DrawOrder(false, false);
     }
 
-    public Iterator<Tile> reverseDrawOrder() {
-        return new DrawOrder(!Camera.reverseRows, !Camera.reverseCols);
+    /** Iterate over the tiles in draw order for a rotation, with rows and/or columns reversed. **/
+    public Iterator<Tile> drawOrder(boolean reverseRows, boolean reverseCols) {
+        return new DrawOrder(reverseRows, reverseCols);
     }
 
     public class DrawOrder implements Iterator<Tile> {
@@ -111,10 +112,6 @@ public class Battle implements Iterable<Tile> {
             if (reverseCols) c = numCols()-1;
         }
 
-        public DrawOrder() {
-            this(Camera.reverseRows, Camera.reverseCols);
-        }
-
         @Override
         public boolean hasNext() {
             return reverseRows ? r >= 0 : r < numRows();
@@ -122,7 +119,7 @@ public class Battle implements Iterable<Tile> {
 
         @Override
         public Tile next() {
-            Tile next = map[r][c];
+            Tile next = getTile(r, c);
 
             if (reverseCols) { c--; } else { c++; }
 
@@ -140,12 +137,14 @@ public class Battle implements Iterable<Tile> {
 
     /** Claim a tile by a player. **/
     public void claim(Player player, int x, int y){
-        map[x][y].setOwner(player);
+        if (recorder != null) recorder.claimed(x, y, player);
+        getTile(x, y).setOwner(player);
     }
 
     /** Place a unit on the given tile. **/
     public void placeUnit(Player player, UnitData unitType, int x, int y) {
-        map[x][y].setUnit(new Unit(unitType, this, player));
+        if (recorder != null) recorder.unitPlaced(x, y, player, unitType);
+        getTile(x, y).setUnit(new Unit(unitType, this, player));
     }
 
     /** Claim a tile and place a new unit of the given type. **/
@@ -154,35 +153,290 @@ public class Battle implements Iterable<Tile> {
         placeUnit(player, unitType, x, y);
     }
 
+    /** Change the depth and type of a tile at runtime.
+     * Only the corners of the tile and its 8 neighbours are recalculated, and listeners are told about each of those whose corners changed. **/
+    public void setTerrain(int row, int col, int depth, int type) {
+        if (type < 0 || type >= TileStore.TYPE_CORNERS.length) throw new IllegalArgumentException("Invalid tile type: " + type);
+        if (depth < 0 || depth > Short.MAX_VALUE - 1) throw new IllegalArgumentException("Invalid tile depth: " + depth);
+
+        // Remember the neighbourhood's corners before the change, to only report tiles that actually changed
+        long[] before = new long[27];
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dc = -1; dc <= 1; dc++) {
+                if (!withinBounds(row+dr, col+dc)) continue;
+                int n = (dr+1)*3 + dc+1, index = store.index(row+dr, col+dc);
+                before[n*3] = store.base(index);
+                before[n*3+1] = store.around(index);
+                before[n*3+2] = store.lowest(index);
+            }
+        }
+
+        if (recorder != null) recorder.terrainSet(row, col, depth, type);
+        int index = store.index(row, col);
+        terrainEdits.add(index);
+        store.setDepth(index, depth);
+        store.setType(index, type);
+        pathfinder.terrainChanged(index);
+        flowFields.tileChanged(index);
+
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dc = -1; dc <= 1; dc++) {
+                if (!withinBounds(row+dr, col+dc)) continue;
+                store.updateCorners(row+dr, col+dc);
+            }
+        }
+
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dc = -1; dc <= 1; dc++) {
+                if (!withinBounds(row+dr, col+dc)) continue;
+                int n = (dr+1)*3 + dc+1, neighbour = store.index(row+dr, col+dc);
+                if (before[n*3] != store.base(neighbour) || before[n*3+1] != store.around(neighbour) || before[n*3+2] != store.lowest(neighbour)) {
+                    if (renderBuffer != null) renderBuffer.tileChanged(neighbour);
+                    for (TerrainListener listener : terrainListeners) {
+                        listener.terrainChanged(row+dr, col+dc);
+                    }
+                }
+            }
+        }
+    }
+
+    public void addTerrainListener(TerrainListener listener) {
+        terrainListeners.add(listener);
+    }
+
+    public void removeTerrainListener(TerrainListener listener) {
+        terrainListeners.remove(listener);
+    }
+
+    public void addStepListener(StepListener listener) {
+        stepListeners.add(listener);
+    }
+
+    public void removeStepListener(StepListener listener) {
+        stepListeners.remove(listener);
+    }
+
     /** Returns true if there is a tile adjacent to the passed coordinated owned by the player. **/
     public boolean isAdjacentClaimedTile(Player owner, int row, int col){
-        return isOwnedByPlayer(owner, row-1, col)
-                || isOwnedByPlayer(owner, row+1, col)
-                || isOwnedByPlayer(owner, row, col-1)
-                || isOwnedByPlayer(owner, row, col+1);
+        return territory.isAdjacent(playerId(owner), row, col);
     }
     /** Returns true if the tile at the given index is owned by the passed player. **/
     public boolean isOwnedByPlayer(Player owner, int row, int col){
-        return withinBounds(row, col) && map[row][col].getOwner() == owner;
+        return withinBounds(row, col) && territory.owns(playerId(owner), store.index(row, col));
     }
+
+    /** Indexes of the unclaimed tiles next to the player's claimed tiles, which are the tiles it can contest. Do not modify. **/
+    public IntSet frontier(Player player) {
+        return territory.frontier(playerId(player));
+    }
+
+    /** Change the owner of the tile at an index, keeping every player's territory and frontier up to date. **/
+    void setOwner(int index, Player owner) {
+        int id = playerId(owner), oldId = store.owner(index);
+        territory.ownerChanged(index, oldId, id);
+        store.setOwner(index, id);
+        connectivity.ownerChanged(index, oldId, id);
+        pathfinder.ownerChanged(index, oldId, id);
+        flowFields.ownerChanged(index, oldId, id);
+        if (renderBuffer != null) renderBuffer.tileChanged(index);
+    }
+    /** Claim every tile set in each player's bitboard at once, indexed by player index, for loading a saved battle.
+     * Much faster than claiming tile by tile on large maps. Only for battles where no tile is claimed yet. **/
+    void loadOwners(long[][] boards) {
+        if (territory.count(0) != 0) throw new IllegalStateException("Owners can only be loaded into a battle with no claimed tiles");
+        for (int i = 0; i < boards.length; i++) {
+            long[] board = boards[i];
+            territory.load(i + 1, board);
+            store.loadOwners(board, i + 1);
+        }
+        territory.rebuildFrontiers();
+        connectivity.invalidate();
+        if (renderBuffer != null) renderBuffer.invalidate();
+    }
+
     /** Returns true if the passed coordinate is within the bounds of the map. **/
     public boolean withinBounds(int row, int col){
-        return row >= 0 && row < map.length && col >= 0 && col < map[0].length;
+        return store.withinBounds(row, col);
+    }
+
+    /** Tiles a unit of the player could walk along from one tile to another, including both, or null if it can't get there.
+     * Units can only walk on their owner's land. See Pathfinder. **/
+    public Tile[] findPath(Player player, Tile from, Tile to) {
+        int[] path = pathfinder.findPath(playerId(player), from.index, to.index);
+        if (path == null) return null;
+        Tile[] tiles = new Tile[path.length];
+        for (int i = 0; i < path.length; i++) tiles[i] = getTile(path[i]);
+        return tiles;
+    }
+
+    /** Amount of steps a unit of the player would take to walk from one tile to another, or -1 if it can't get there.
+     * Cheaper than findPath(), since the path isn't built. **/
+    public int pathDistance(Player player, Tile from, Tile to) {
+        return pathfinder.distance(playerId(player), from.index, to.index);
+    }
+
+    /** Flow field leading the player's units to stand on or next to the nearest of the goal tiles. See FlowField.
+     * Fields are cached by player and goals, so get the field again each tick instead of keeping it. **/
+    public FlowField flowField(Player player, Tile... goals) {
+        int[] indexes = new int[goals.length];
+        for (int i = 0; i < goals.length; i++) indexes[i] = goals[i].index;
+        return flowFields.get(playerId(player), indexes);
+    }
+
+    /** Queue a player's command to be applied at the start of the next tick. Safe to call from any thread. See Command. **/
+    public void submit(Command command) {
+        CommandSink sink = commandSink;
+        if (sink != null) sink.submit(command);
+        else commands.submit(command);
+    }
+
+    /** Apply a command drained from the queue, telling the recorder first. **/
+    void apply(Command command) {
+        if (recorder != null) recorder.commandApplied(command);
+        command.apply(this);
+    }
+
+    /** Apply all submitted commands, then run all scheduler ticks that are due at the clock's current time. **/
+    public void update() {
+        if (recorder != null) recorder.stepStarted();
+        commands.drain(this);
+        // A fast-forwarded clock needs proportionally more ticks per update to keep up
+        scheduler.advanceTo(clock.millis() - startTime, (int) Math.ceil(GameConstants.MAX_CATCH_UP_TICKS * Math.max(clock.rate(), 1)));
+        store.trim();
+        if (renderBuffer != null) renderBuffer.publish(this);
+        if (recorder != null) recorder.stepFinished();
+        for (int i = 0; i < stepListeners.size(); i++) stepListeners.get(i).stepFinished(this);
+    }
+
+    /** Apply all submitted commands, then run a single scheduler tick, regardless of real time.
+     * Used to simulate headless battles faster than real time. **/
+    public void tick() {
+        if (recorder != null) recorder.stepStarted();
+        commands.drain(this);
+        finishTick();
+    }
+
+    /** Apply the given commands in order instead of the submitted ones, then run a single scheduler tick.
+     * Used to run a battle in lockstep with one run elsewhere, such as on a server, which applied the same commands on the same tick. **/
+    public void tick(List<Command> applied) {
+        if (recorder != null) recorder.stepStarted();
+        for (int i = 0; i < applied.size(); i++) apply(applied.get(i));
+        finishTick();
+    }
+
+    private void finishTick() {
+        scheduler.tick();
+        store.trim();
+        if (renderBuffer != null) renderBuffer.publish(this);
+        if (recorder != null) recorder.stepFinished();
+        for (int i = 0; i < stepListeners.size(); i++) stepListeners.get(i).stepFinished(this);
+    }
+
+    /** Copy this battle's full state into a new headless battle that carries on exactly as this one would.
+     * The copy has its own players, in the same order; listeners, the recorder and queued commands are not copied.
+     * Made through a BattleState snapshot, so only call it from the thread running this battle. **/
+    public Battle copy() {
+        return BattleState.read(BattleState.write(this), terrain);
+    }
+
+    /** Current battle time in milliseconds, advanced by the scheduler one tick at a time. **/
+    public long time() {
+        return scheduler.time();
     }
 
     /** Retreive a tile by row and column index. **/
     public Tile getTile(int row, int col){
-        return map[row][col];
+        return new Tile(this, row, col);
+    }
+
+    /** Retreive a tile by its index in the TileStore. **/
+    public Tile getTile(int index){
+        return new Tile(this, store.row(index), store.col(index));
+    }
+
+    /** The id tiles store for a player: its index in players + 1, or 0 for no player. **/
+    public int playerId(Player player) {
+        if (player == null) return 0;
+        for (int i = 0; i < players.length; i++) {
+            if (players[i] == player) return i + 1;
+        }
+        throw new IllegalArgumentException("Player is not in this battle");
+    }
+
+    /** The player with the given id, or null for id 0. **/
+    public Player getPlayer(int id) {
+        return id == 0 ? null : players[id - 1];
     }
 
     // ======== ACCESSORS
-    public Tile[][] getMap() {
-        return map;
+    public TileStore getStore() {
+        return store;
+    }
+    public Territory getTerritory() {
+        return territory;
+    }
+    public Connectivity getConnectivity() {
+        return connectivity;
+    }
+    public Pathfinder getPathfinder() {
+        return pathfinder;
+    }
+    public FlowFieldCache getFlowFields() {
+        return flowFields;
+    }
+    public Player[] getPlayers() {
+        return players;
+    }
+    public UnitStore getUnits() {
+        return units;
+    }
+    public UnitIndex getUnitIndex() {
+        return unitIndex;
+    }
+    SlotTable<Contest> getContests() {
+        return contests;
+    }
+    public GameClock getClock() {
+        return clock;
+    }
+    /** Run update() on another clock, such as a ScaledClock to pause or fast-forward the battle, or a VirtualClock in tests.
+     * The battle carries on from its current time. **/
+    public void setClock(GameClock clock) {
+        this.clock = clock;
+        startTime = clock.millis() - time();
+    }
+    /** Send commands submitted to this battle to a sink instead of applying them, or null to apply them again.
+     * Used by battles that mirror one run elsewhere; see tick(List). **/
+    public void setCommandSink(CommandSink sink) {
+        this.commandSink = sink;
+    }
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+    /** Indexes of tiles whose terrain was changed by setTerrain(). Do not modify. **/
+    public IntSet getTerrainEdits() {
+        return terrainEdits;
+    }
+    public TerrainGenerator getTerrain() {
+        return terrain;
+    }
+    public BattleRecorder getRecorder() {
+        return recorder;
+    }
+    /** Start telling the recorder about every change to this battle, or stop recording if null. **/
+    public void setRecorder(BattleRecorder recorder) {
+        this.recorder = recorder;
+    }
+    /** Snapshots of this battle for drawing it from another thread, published at the end of every update() and tick().
+     * Publishing starts with the first call, so headless battles never pay for it; call it from the thread running the battle. **/
+    public RenderBuffer getRenderBuffer() {
+        if (renderBuffer == null) renderBuffer = new RenderBuffer(this);
+        return renderBuffer;
     }
     public int numRows(){
-        return map.length;
+        return store.rows;
     }
     public int numCols(){
-        return map[0].length;
+        return store.cols;
     }
 }
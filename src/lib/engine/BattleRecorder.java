@@ -0,0 +1,30 @@
+package lib.engine;
+
+/** Told about everything that changes a battle, in the order it happens, so the battle can be recorded and replayed.
+ * Setup changes and applied commands are the battle's inputs; acts and captures are the events they lead to.
+ * See lib.engine.log.ActionLog. **/
+public interface BattleRecorder {
+    /** A tile was claimed by Battle.claim(). **/
+    void claimed(int row, int col, Player player);
+
+    /** A unit was placed by Battle.placeUnit(). **/
+    void unitPlaced(int row, int col, Player player, UnitData unitType);
+
+    /** A tile's terrain was changed by Battle.setTerrain(). **/
+    void terrainSet(int row, int col, int depth, int type);
+
+    /** A submitted command is about to be applied. **/
+    void commandApplied(Command command);
+
+    /** A player used an action on a tile, either by a command or by a unit auto acting. **/
+    void acted(Player player, Action action, Tile tile);
+
+    /** A contest finished and the player claimed the tile. **/
+    void captured(Tile tile, Player player);
+
+    /** The battle is about to apply commands and tick. **/
+    void stepStarted();
+
+    /** The battle finished ticking. **/
+    void stepFinished();
+}
@@ -0,0 +1,112 @@
+package lib.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/** Saves battles to files and loads them back.
+ *
+ * A save file starts with a header: the magic int, the file VERSION, a CRC32 of everything after the header,
+ * the amount of saved chunks and the length of the snapshot. Damaged or foreign files are refused instead of loading a broken battle.
+ * Then come the ids of the chunks that had been generated, and each of those chunks' tile types and depths as raw primitive columns,
+ * followed by a BattleState snapshot of everything else.
+ *
+ * Loading maps the file into memory, restores the snapshot straight from the mapped bytes, and hands the columns to the
+ * battle as SavedTerrain, which copies each chunk out of the mapping when the store first uses it.
+ * No terrain is generated and no objects are deserialized per tile. **/
+public final class BattleSave {
+    /** First bytes of every save file, "BPS" and a format byte. **/
+    public static final int MAGIC = 0x42505301;
+    /** Version of the save file layout. Independent of BattleState.VERSION, which the snapshot checks itself. **/
+    public static final int VERSION = 1;
+    /** Bytes in a save file's header. **/
+    private static final int HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES;
+
+    private BattleSave() {}
+
+    /** Save a battle to a file, replacing it if it exists. **/
+    public static void save(Battle battle, Path file) throws IOException {
+        TileStore store = battle.getStore();
+        int[] ids = new int[store.chunkCount()];
+        int saved = 0;
+        for (int id = 0; id < ids.length; id++) {
+            if (store.isGenerated(id)) ids[saved++] = id;
+        }
+
+        ByteBuffer chunks = ByteBuffer.allocate(saved * (Integer.BYTES + SavedTerrain.CHUNK_BYTES));
+        for (int i = 0; i < saved; i++) chunks.putInt(ids[i]);
+        for (int i = 0; i < saved; i++) store.writeTerrain(ids[i], chunks);
+        chunks.flip();
+        ByteBuffer snapshot = BattleState.write(battle);
+
+        CRC32 crc = new CRC32();
+        crc.update(chunks.duplicate());
+        crc.update(snapshot.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt((int) crc.getValue()).putInt(saved).putLong(snapshot.remaining());
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] buffers = {header, chunks, snapshot};
+            while (snapshot.hasRemaining()) channel.write(buffers);
+        }
+    }
+
+    /** Load a battle saved with save(). **/
+    public static Battle load(Path file) throws IOException {
+        return load(file, null);
+    }
+
+    /** Load a battle saved with save().
+     * @param terrain generator of the battle's terrain, only used if the saved battle was not generated from a seed **/
+    public static Battle load(Path file, TerrainGenerator terrain) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) throw new IOException("Not a battle save: " + file);
+            // The mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapped.getInt() != MAGIC) throw new IOException("Not a battle save: " + file);
+        int version = mapped.getInt();
+        if (version != VERSION) throw new IOException("Unsupported battle save version " + version + ": " + file);
+        int checksum = mapped.getInt();
+        int saved = mapped.getInt();
+        long length = mapped.getLong();
+        long expected = HEADER_BYTES + (long) saved * (Integer.BYTES + SavedTerrain.CHUNK_BYTES) + length;
+        if (saved < 0 || length < 0 || expected != mapped.capacity()) throw new IOException("Battle save is truncated: " + file);
+
+        CRC32 crc = new CRC32();
+        crc.update(mapped.duplicate());
+        if ((int) crc.getValue() != checksum) throw new IOException("Battle save is corrupted: " + file);
+
+        try {
+            int columnsStart = HEADER_BYTES + saved * Integer.BYTES;
+            ByteBuffer snapshot = mapped.duplicate();
+            snapshot.position(columnsStart + saved * SavedTerrain.CHUNK_BYTES);
+
+            TerrainGenerator source = BattleState.seededTerrain(snapshot);
+            if (source == null) source = terrain;
+            if (source == null) throw new IllegalArgumentException("Saved battle was not seeded, so its terrain generator must be given");
+
+            int[] positions = new int[0];
+            for (int i = 0; i < saved; i++) {
+                int id = mapped.getInt();
+                if (id >= positions.length) {
+                    int old = positions.length;
+                    positions = Arrays.copyOf(positions, Math.max(id + 1, old * 2));
+                    Arrays.fill(positions, old, positions.length, -1);
+                }
+                positions[id] = columnsStart + i * SavedTerrain.CHUNK_BYTES;
+            }
+            return BattleState.read(snapshot, new SavedTerrain(source, mapped, positions));
+        } catch (RuntimeException e) {
+            throw new IOException("Could not read battle save: " + file, e);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package lib.engine;
+
+import lib.data.Units;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Writes the full state of a battle into a compact byte snapshot, and restores battles from them.
+ * Terrain is not stored tile by tile: a snapshot holds the terrain seed and only the tiles changed by setTerrain() since.
+ * Ownership is stored as runs of claimed tile indexes per player, so a map of large territories takes a few bytes per run.
+ * Units with their effects, contests and every task waiting in the scheduler follow, the tasks in the exact slots and order of the timing wheel,
+ * so a restored battle carries on exactly as the original would have, tick for tick.
+ * Snapshots are canonical: two battles in the same state give the same bytes, whatever order they got there in.
+ * Numbers are unsigned LEB128 varints, with signed values zigzag encoded first.
+ * Snapshots start with the format VERSION; bump it whenever the layout changes. **/
+public final class BattleState {
+    /** Version of the snapshot layout. **/
+    public static final int VERSION = 2;
+
+    /** Kinds of scheduled task a snapshot can hold. **/
+    private static final int UNIT_READY = 0, CONTEST = 1, EFFECT_END = 2;
+
+    private BattleState() {}
+
+    // ==== WRITING
+    /** Write a snapshot of a battle. The returned buffer is ready to read from. **/
+    public static ByteBuffer write(Battle battle) {
+        Output out = new Output(1024);
+        TileStore store = battle.getStore();
+        Player[] players = battle.getPlayers();
+
+        // Map
+        out.putVarint(VERSION);
+        out.putVarint(store.rows);
+        out.putVarint(store.cols);
+        TerrainGenerator terrain = battle.getTerrain();
+        if (terrain instanceof SavedTerrain) terrain = ((SavedTerrain) terrain).getSource();
+        out.put(terrain instanceof SlopeTerrain ? 1 : 0);
+        out.putLong(terrain instanceof SlopeTerrain ? ((SlopeTerrain) terrain).getSeed() : 0);
+
+        // Players
+        out.putVarint(players.length);
+        for (Player player : players) {
+            out.putVarint(player.rgb & 0xFFFFFFFFL);
+            out.putSigned(player.getLedger().balance());
+        }
+        out.putVarint(battle.getScheduler().getTick());
+
+        // Terrain edits, by ascending index
+        int[] edits = battle.getTerrainEdits().toArray();
+        Arrays.sort(edits);
+        out.putVarint(edits.length);
+        int previous = 0;
+        for (int index : edits) {
+            out.putVarint(index - previous);
+            out.putVarint(store.depth(index));
+            out.putVarint(store.type(index));
+            previous = index;
+        }
+
+        // Ownership, as runs of set bits in each player's claimed board
+        for (int id = 1; id <= players.length; id++) {
+            writeRuns(out, battle.getTerritory().claimed(id));
+        }
+
+        // Units, by ascending tile index
+        UnitStore units = battle.getUnits();
+        // Sort slots by tile index, packed as (tile index << 32 | slot) so a primitive sort does it
+        long[] placed = new long[units.size()];
+        for (int n = 0; n < placed.length; n++) {
+            int slot = units.live(n);
+            placed[n] = (long) units.tile(slot) << 32 | slot;
+        }
+        Arrays.sort(placed);
+        Map<ScheduledTask, Integer> readyTasks = new IdentityHashMap<>();
+        out.putVarint(placed.length);
+        previous = 0;
+        for (long packed : placed) {
+            int slot = (int) packed, index = (int) (packed >>> 32);
+            Unit unit = units.get(slot);
+            readyTasks.put(unit.getReadyTask(), index);
+            out.putVarint(index - previous);
+            out.putVarint(unitId(units.type(slot)));
+            out.putVarint(units.owner(slot));
+            out.putSigned(units.hp(slot));
+            out.putSigned(units.atk(slot));
+            out.putLong(Double.doubleToLongBits(units.speed(slot)));
+            out.put(units.flags(slot));
+            out.putSigned(units.actionStart(slot));
+            out.putVarint(units.target(slot));
+            writeEffects(out, unit);
+            previous = index;
+        }
+
+        // Contests, by ascending tile index
+        SlotTable<Contest> contests = battle.getContests();
+        List<Contest> running = new ArrayList<>(contests.size());
+        for (int slot = 0; slot < contests.end(); slot++) {
+            Contest contest = contests.get(slot);
+            if (contest != null) running.add(contest);
+        }
+        running.sort((a, b) -> Integer.compare(a.tileIndex, b.tileIndex));
+        out.putVarint(running.size());
+        previous = 0;
+        for (Contest contest : running) {
+            out.putVarint(contest.tileIndex - previous);
+            out.putVarint(battle.playerId(contest.contestor));
+            out.putSigned(contest.value);
+            out.putSigned(contest.startTime);
+            previous = contest.tileIndex;
+        }
+
+        // Scheduled tasks, slot by slot in firing order
+        TimingWheel wheel = battle.getScheduler().getWheel();
+        out.putVarint(wheel.size());
+        for (int slot = 0; slot < TimingWheel.LEVELS * TimingWheel.SLOTS; slot++) {
+            for (ScheduledTask task = wheel.head(slot); task != null; task = task.next) {
+                out.putVarint(slot);
+                out.putVarint(task.deadline);
+                if (task instanceof Contest) {
+                    out.put(CONTEST);
+                    out.putVarint(((Contest) task).tileIndex);
+                } else if (readyTasks.containsKey(task)) {
+                    out.put(UNIT_READY);
+                    out.putVarint(readyTasks.get(task));
+                } else if (task instanceof Unit.AppliedEffect) {
+                    Unit unit = ((Unit.AppliedEffect) task).unit;
+                    out.put(EFFECT_END);
+                    out.putVarint(battle.getUnits().tile(unit.slot));
+                    out.putVarint(((Unit.AppliedEffect) task).position);
+                } else {
+                    throw new IllegalStateException("Scheduled task cannot be saved: " + task);
+                }
+            }
+        }
+
+        return out.buffer.flip();
+    }
+
+    /** Write the effects on a unit in the order the unit holds them. Sources other than tiles are not kept. **/
+    private static void writeEffects(Output out, Unit unit) {
+        List<Unit.AppliedEffect> effects = unit.getAppliedEffects();
+        out.putVarint(effects == null ? 0 : effects.size());
+        if (effects == null) return;
+        for (Unit.AppliedEffect applied : effects) {
+            Effect effect = applied.effect;
+            out.putString(effect.name);
+            out.putVarint(effect.source instanceof Tile ? ((Tile) effect.source).index + 1 : 0);
+            out.putVarint(effect.duration);
+            out.putSigned(effect.hp);
+            out.putSigned(effect.atk);
+            out.putLong(Double.doubleToLongBits(effect.speed));
+        }
+    }
+
+    /** Write the runs of set bits in a bitboard as their amount, then each run's gap from the last run's end and its length. **/
+    private static void writeRuns(Output out, long[] board) {
+        int countAt = out.buffer.position();
+        int runs = 0, end = 0;
+        out.putInt(0);
+        int bit = nextSet(board, 0);
+        while (bit != -1) {
+            int clear = nextClear(board, bit);
+            out.putVarint(bit - end);
+            out.putVarint(clear - bit);
+            end = clear;
+            runs++;
+            bit = nextSet(board, clear);
+        }
+        out.buffer.putInt(countAt, runs);
+    }
+
+    /** Set the bits from start up to but not including end. **/
+    private static void fill(long[] board, int start, int end) {
+        if (start >= end) return;
+        int first = start >>> 6, last = (end - 1) >>> 6;
+        long firstMask = -1L << start, lastMask = -1L >>> -end;
+        if (first == last) {
+            board[first] |= firstMask & lastMask;
+            return;
+        }
+        board[first] |= firstMask;
+        for (int word = first + 1; word < last; word++) board[word] = -1L;
+        board[last] |= lastMask;
+    }
+
+    private static int nextSet(long[] board, int from) {
+        int word = from >>> 6;
+        if (word >= board.length) return -1;
+        long bits = board[word] & (-1L << from);
+        while (bits == 0) {
+            if (++word == board.length) return -1;
+            bits = board[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    private static int nextClear(long[] board, int from) {
+        int word = from >>> 6;
+        if (word >= board.length) return from;
+        long bits = ~board[word] & (-1L << from);
+        while (bits == 0) {
+            if (++word == board.length) return board.length << 6;
+            bits = ~board[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    // ==== READING
+    /** Restore a battle from a snapshot, reading from the buffer's position.
+     * @param terrain generator of the battle's terrain, or null to generate it from the snapshot's seed.
+     *                Must be given if the snapshot's battle was not generated from a seed. **/
+    public static Battle read(ByteBuffer in, TerrainGenerator terrain) {
+        int version = (int) getVarint(in);
+        if (version != VERSION) throw new IllegalArgumentException("Unsupported snapshot version: " + version);
+        int rows = (int) getVarint(in), cols = (int) getVarint(in);
+        boolean seeded = in.get() != 0;
+        long seed = in.getLong();
+        if (terrain == null && seeded) {
+            terrain = new SlopeTerrain(seed);
+        } else if (terrain == null) {
+            throw new IllegalArgumentException("Snapshot's battle was not seeded, so its terrain generator must be given");
+        }
+
+        Player[] players = new Player[(int) getVarint(in)];
+        long[] points = new long[players.length];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new Player((int) getVarint(in));
+            points[i] = getSigned(in);
+        }
+        Battle battle = new Battle(rows, cols, terrain, players);
+        for (int i = 0; i < players.length; i++) players[i].getLedger().set(points[i]);
+        Scheduler scheduler = battle.getScheduler();
+        scheduler.getWheel().setNow(getVarint(in));
+        TileStore store = battle.getStore();
+
+        int index = 0;
+        for (int i = (int) getVarint(in); i > 0; i--) {
+            index += (int) getVarint(in);
+            int depth = (int) getVarint(in), type = (int) getVarint(in);
+            battle.setTerrain(store.row(index), store.col(index), depth, type);
+        }
+
+        long[][] boards = new long[players.length][(store.capacity() + 63) >>> 6];
+        for (long[] board : boards) {
+            int end = 0;
+            for (int runs = in.getInt(); runs > 0; runs--) {
+                int start = end + (int) getVarint(in);
+                end = start + (int) getVarint(in);
+                fill(board, start, end);
+            }
+        }
+        battle.loadOwners(boards);
+
+        int[] unitTiles = new int[(int) getVarint(in)];
+        index = 0;
+        for (int i = 0; i < unitTiles.length; i++) {
+            index += (int) getVarint(in);
+            unitTiles[i] = index;
+            Unit unit = new Unit(unitType((int) getVarint(in)), battle, battle.getPlayer((int) getVarint(in)));
+            Tile tile = battle.getTile(index);
+            tile.setUnit(unit);
+            scheduler.cancel(unit.getReadyTask());
+            int hp = (int) getSigned(in), atk = (int) getSigned(in);
+            double speed = Double.longBitsToDouble(in.getLong());
+            int flags = in.get();
+            long actionStartTime = getSigned(in);
+            int target = (int) getVarint(in);
+            unit.restore(hp, atk, speed, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0, actionStartTime,
+                    target == 0 ? null : battle.getTile(target - 1));
+            for (int effects = (int) getVarint(in); effects > 0; effects--) {
+                String name = getString(in);
+                int source = (int) getVarint(in);
+                long duration = getVarint(in);
+                int effectHp = (int) getSigned(in), effectAtk = (int) getSigned(in);
+                double effectSpeed = Double.longBitsToDouble(in.getLong());
+                unit.restoreEffect(new Effect(name, source == 0 ? null : battle.getTile(source - 1), duration, effectHp, effectAtk, effectSpeed));
+            }
+        }
+
+        index = 0;
+        for (int i = (int) getVarint(in); i > 0; i--) {
+            index += (int) getVarint(in);
+            Contest contest = new Contest(battle, index);
+            contest.contestor = battle.getPlayer((int) getVarint(in));
+            contest.value = (int) getSigned(in);
+            contest.startTime = getSigned(in);
+            store.setContest(index, battle.getContests().add(contest) + 1);
+        }
+
+        TimingWheel wheel = scheduler.getWheel();
+        for (int i = (int) getVarint(in); i > 0; i--) {
+            int slot = (int) getVarint(in);
+            long deadline = getVarint(in);
+            int kind = in.get();
+            int tile = (int) getVarint(in);
+            ScheduledTask task;
+            if (kind == CONTEST) {
+                task = battle.getContests().get(store.contest(tile) - 1);
+            } else if (kind == UNIT_READY) {
+                task = battle.getUnits().get(store.unit(tile) - 1).getReadyTask();
+            } else if (kind == EFFECT_END) {
+                task = battle.getUnits().get(store.unit(tile) - 1).getAppliedEffects().get((int) getVarint(in));
+            } else {
+                throw new IllegalArgumentException("Unknown scheduled task kind in snapshot: " + kind);
+            }
+            task.deadline = deadline;
+            task.scheduled = true;
+            wheel.restore(task, slot);
+        }
+        return battle;
+    }
+
+    /** The seeded terrain a snapshot's battle was generated with, or null if it was not seeded. Does not move the buffer. **/
+    public static TerrainGenerator seededTerrain(ByteBuffer snapshot) {
+        ByteBuffer in = snapshot.duplicate();
+        int version = (int) getVarint(in);
+        if (version != VERSION) throw new IllegalArgumentException("Unsupported snapshot version: " + version);
+        getVarint(in);
+        getVarint(in);
+        boolean seeded = in.get() != 0;
+        long seed = in.getLong();
+        return seeded ? new SlopeTerrain(seed) : null;
+    }
+
+    // ==== ENCODING
+    private static int unitId(UnitData unitType) {
+        for (int i = 0; i < Units.ALL.length; i++) {
+            if (Units.ALL[i] == unitType) return i;
+        }
+        throw new IllegalArgumentException("Unit type cannot be saved: " + unitType);
+    }
+
+    private static UnitData unitType(int id) {
+        if (id < 0 || id >= Units.ALL.length) throw new IllegalArgumentException("Unknown unit type id in snapshot: " + id);
+        return Units.ALL[id];
+    }
+
+    static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Malformed varint in snapshot");
+    }
+
+    static long getSigned(ByteBuffer in) {
+        long value = getVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[(int) getVarint(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Growable buffer snapshots are written into. **/
+    static final class Output {
+        ByteBuffer buffer;
+
+        Output(int capacity) {
+            buffer = ByteBuffer.allocate(capacity);
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() >= bytes) return;
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+
+        void put(int b) {
+            ensure(1);
+            buffer.put((byte) b);
+        }
+
+        void putInt(int value) {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void putSigned(long value) {
+            putVarint((value << 1) ^ (value >> 63));
+        }
+
+        /** Write a string as its UTF-8 length, then its UTF-8 bytes. **/
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarint(bytes.length);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+}
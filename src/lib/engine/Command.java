@@ -0,0 +1,97 @@
+package lib.engine;
+
+import lib.data.Actions;
+
+/** An immutable player intent, such as contesting a tile or buying a unit.
+ * Input and UI threads never change a battle themselves; they submit commands with Battle.submit(),
+ * and the battle applies them in submission order at the start of its next tick, so the simulation has a single writer.
+ * A command is checked again when it is applied, since the battle may have changed since it was submitted. **/
+public abstract class Command {
+    /** The player this command is issued by. **/
+    public final Player player;
+    /** Row and col of the tile this command is issued on. **/
+    public final int row, col;
+
+    protected Command(Player player, int row, int col) {
+        this.player = player;
+        this.row = row;
+        this.col = col;
+    }
+
+    /** Carry out this command on the battle. Only called on the simulation's thread. **/
+    protected abstract void apply(Battle battle);
+
+    // ==== COMMANDS
+
+    /** Contest an unclaimed tile. See Tile.contest(). **/
+    public static class ContestTile extends Command {
+        public ContestTile(Player player, int row, int col) {
+            super(player, row, col);
+        }
+
+        @Override
+        protected void apply(Battle battle) {
+            battle.getTile(row, col).contest(player);
+        }
+    }
+
+    /** Buy an item for one of the player's empty tiles. Points are only spent if the item can be placed. **/
+    public static class Buy extends Command {
+        /** The item to buy. **/
+        public final Buyable item;
+
+        public Buy(Player player, Buyable item, int row, int col) {
+            super(player, row, col);
+            this.item = item;
+        }
+
+        @Override
+        protected void apply(Battle battle) {
+            Tile tile = battle.getTile(row, col);
+            if (!(item instanceof UnitData) || !tile.ownedBy(player) || tile.hasUnit()) return;
+            if (player.subtractPoints(item.buyCost())) tile.placeUnit((UnitData) item);
+        }
+    }
+
+    /** Use an action on a tile, such as selling its unit. Only actions visible to the player can be used. See Tile.act(). **/
+    public static class Act extends Command {
+        /** The action to use. **/
+        public final Action action;
+
+        public Act(Player player, Action action, int row, int col) {
+            super(player, row, col);
+            this.action = action;
+        }
+
+        @Override
+        protected void apply(Battle battle) {
+            Tile tile = battle.getTile(row, col);
+            if (!action.visible(player, tile)) return;
+            tile.act(player, action);
+        }
+    }
+
+    /** Move the unit on a tile to a target tile. The unit's target only changes if it can move. See lib.data.actions.Move. **/
+    public static class Move extends Command {
+        /** Row and col of the tile to move to. **/
+        public final int targetRow, targetCol;
+
+        public Move(Player player, int row, int col, int targetRow, int targetCol) {
+            super(player, row, col);
+            this.targetRow = targetRow;
+            this.targetCol = targetCol;
+        }
+
+        @Override
+        protected void apply(Battle battle) {
+            if (!battle.withinBounds(targetRow, targetCol)) return;
+            Tile tile = battle.getTile(row, col);
+            Unit unit = tile.getUnit();
+            if (unit == null || unit.getOwner() != player) return;
+            // Move reads its destination from the unit's target, so set it for the action and put it back if the unit can't move
+            Tile previous = unit.getTarget();
+            unit.setTarget(battle.getTile(targetRow, targetCol));
+            if (!tile.act(player, Actions.MOVE)) unit.setTarget(previous);
+        }
+    }
+}
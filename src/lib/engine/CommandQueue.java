@@ -0,0 +1,61 @@
+package lib.engine;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Lock-free queue of commands, written by any amount of threads and drained by the battle's simulation thread alone.
+ * Commands are linked into a list whose last node producers claim with a single atomic swap, so submitting never blocks
+ * and never waits on the simulation. The consumer walks the list from a stub node without any atomic operations. **/
+public class CommandQueue {
+    /** A link in the queue. The stub node the consumer reads from holds no command. **/
+    private static final class Node {
+        Command command;
+        volatile Node next;
+
+        Node(Command command) {
+            this.command = command;
+        }
+    }
+
+    /** Last node submitted. Swapped by producers. **/
+    private final AtomicReference<Node> last;
+    /** Node before the next command to apply. Only touched by the consumer. **/
+    private Node stub;
+
+    public CommandQueue() {
+        stub = new Node(null);
+        last = new AtomicReference<>(stub);
+    }
+
+    /** Add a command to the end of the queue. Safe to call from any thread. **/
+    public void submit(Command command) {
+        if (command == null) throw new NullPointerException("command");
+        Node node = new Node(command);
+        // Between the swap and the link, the consumer sees the queue end at the previous node and picks this one up on its next drain
+        last.getAndSet(node).next = node;
+    }
+
+    /** Apply every command submitted before this call, in submission order.
+     * Commands submitted while draining, including by the commands themselves, wait for the next drain.
+     * Only call from the battle's simulation thread.
+     * @return the amount of commands applied **/
+    public int drain(Battle battle) {
+        Node end = last.get();
+        int applied = 0;
+        while (stub != end) {
+            Node next = stub.next;
+            // A producer has swapped in a node but not linked it yet; leave the rest for the next drain
+            if (next == null) break;
+            Command command = next.command;
+            next.command = null;
+            stub = next;
+            battle.apply(command);
+            applied++;
+        }
+        return applied;
+    }
+
+    /** If there are no commands waiting. Only exact on the consumer's thread. **/
+    public boolean isEmpty() {
+        return stub.next == null;
+    }
+}
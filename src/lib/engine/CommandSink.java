@@ -0,0 +1,8 @@
+package lib.engine;
+
+/** Takes the commands submitted to a battle in place of its own queue, such as to send them to the server
+ * running the battle this one mirrors. See Battle.setCommandSink(). **/
+public interface CommandSink {
+    /** Called with each command submitted to the battle, on the submitting thread. **/
+    void submit(Command command);
+}
@@ -0,0 +1,182 @@
+package lib.engine;
+
+import java.util.Arrays;
+
+/** Connected components of each player's territory, kept with a union-find over tile indexes.
+ * Claiming a tile joins it to its same-owner neighbours as it happens. Losing a tile can split a component,
+ * which union-find cannot undo, so the player is marked dirty instead and their components are rebuilt from their
+ * Territory bitboard the next time they are queried; claims by a dirty player are left for that rebuild.
+ * Each component root also counts the castles on it, so whether land is connected to a castle is a find and a lookup. **/
+public class Connectivity {
+    private final TileStore store;
+    private final Territory territory;
+
+    /** Parent of each claimed tile in its component's tree. A root is its own parent. **/
+    private final int[] parent;
+    /** Amount of tiles in each root's component. **/
+    private final int[] size;
+    /** Amount of castle tiles in each root's component. **/
+    private final int[] castles;
+    /** Tiles with a castle on them, one bit per tile index. **/
+    private final long[] castleTiles;
+    /** Amount of components of each player id. **/
+    private final int[] components;
+    /** Player ids whose components must be rebuilt before they are next queried. **/
+    private final boolean[] dirty;
+
+    public Connectivity(TileStore store, Territory territory, int players) {
+        this.store = store;
+        this.territory = territory;
+        parent = new int[store.capacity()];
+        size = new int[store.capacity()];
+        castles = new int[store.capacity()];
+        castleTiles = new long[(store.capacity() + 63) >>> 6];
+        components = new int[players + 1];
+        dirty = new boolean[players + 1];
+    }
+
+    /** Update after the tile at index changed from owner oldId to newId. The Territory must already be updated. **/
+    public void ownerChanged(int index, int oldId, int newId) {
+        if (oldId == newId) return;
+
+        // A tile with no same-owner neighbours was a component by itself, so removing it cannot split anything
+        if (oldId != 0 && !dirty[oldId]) {
+            if (sameOwnerNeighbours(index, oldId) == 0) {
+                components[oldId]--;
+            } else {
+                dirty[oldId] = true;
+            }
+        }
+
+        if (newId != 0 && !dirty[newId]) {
+            makeSet(index, newId);
+            int row = store.row(index), col = store.col(index);
+            if (row > 0) join(index, store.index(row-1, col), newId);
+            if (row < store.rows-1) join(index, store.index(row+1, col), newId);
+            if (col > 0) join(index, store.index(row, col-1), newId);
+            if (col < store.cols-1) join(index, store.index(row, col+1), newId);
+        }
+    }
+
+    /** Rebuild every player's components the next time they are queried, such as after loading a saved battle's territory at once. **/
+    public void invalidate() {
+        Arrays.fill(dirty, true);
+    }
+
+    /** Update after a castle was placed on or removed from the tile at index, which is owned by id. **/
+    public void castleChanged(int index, int id, boolean placed) {
+        if (placed == hasCastle(index)) return;
+        if (placed) {
+            castleTiles[index >>> 6] |= 1L << index;
+        } else {
+            castleTiles[index >>> 6] &= ~(1L << index);
+        }
+        if (id != 0 && !dirty[id]) castles[find(index)] += placed ? 1 : -1;
+    }
+
+    /** If the tile at index is claimed and its owner's land connects it to a tile with a castle. **/
+    public boolean connectedToCastle(int index) {
+        int id = owner(index);
+        if (id == 0) return false;
+        clean(id);
+        return castles[find(index)] > 0;
+    }
+
+    /** Amount of tiles in the component containing the tile at index, or 0 if it is unclaimed. **/
+    public int componentSize(int index) {
+        int id = owner(index);
+        if (id == 0) return 0;
+        clean(id);
+        return size[find(index)];
+    }
+
+    /** Index of the root of the component containing the tile at index, the same for every tile of that component,
+     * or -1 if it is unclaimed. Only stable until the owner next loses a tile. **/
+    public int component(int index) {
+        int id = owner(index);
+        if (id == 0) return -1;
+        clean(id);
+        return find(index);
+    }
+
+    /** Amount of separate pieces the player id's territory is in. **/
+    public int componentCount(int id) {
+        clean(id);
+        return components[id];
+    }
+
+    public boolean hasCastle(int index) {
+        return (castleTiles[index >>> 6] & 1L << index) != 0;
+    }
+
+    private int owner(int index) {
+        for (int id = 1; id < dirty.length; id++) {
+            if (territory.owns(id, index)) return id;
+        }
+        return 0;
+    }
+
+    private int sameOwnerNeighbours(int index, int id) {
+        int row = store.row(index), col = store.col(index), n = 0;
+        if (row > 0 && territory.owns(id, store.index(row-1, col))) n++;
+        if (row < store.rows-1 && territory.owns(id, store.index(row+1, col))) n++;
+        if (col > 0 && territory.owns(id, store.index(row, col-1))) n++;
+        if (col < store.cols-1 && territory.owns(id, store.index(row, col+1))) n++;
+        return n;
+    }
+
+    /** Rebuild the player's components from their bitboard if a lost tile may have split one. **/
+    private void clean(int id) {
+        if (!dirty[id]) return;
+        dirty[id] = false;
+        components[id] = 0;
+
+        long[] claimed = territory.claimed(id);
+        for (int word = 0; word < claimed.length; word++) {
+            for (long bits = claimed[word]; bits != 0; bits &= bits - 1) {
+                makeSet(word << 6 | Long.numberOfTrailingZeros(bits), id);
+            }
+        }
+        // Joining each tile to its south and east neighbours covers every adjacent pair once
+        for (int word = 0; word < claimed.length; word++) {
+            for (long bits = claimed[word]; bits != 0; bits &= bits - 1) {
+                int index = word << 6 | Long.numberOfTrailingZeros(bits);
+                int row = store.row(index), col = store.col(index);
+                if (row < store.rows-1) join(index, store.index(row+1, col), id);
+                if (col < store.cols-1) join(index, store.index(row, col+1), id);
+            }
+        }
+    }
+
+    private void makeSet(int index, int id) {
+        parent[index] = index;
+        size[index] = 1;
+        castles[index] = hasCastle(index) ? 1 : 0;
+        components[id]++;
+    }
+
+    /** Join the components of two tiles if the second is also owned by id. Smaller trees go under larger ones. **/
+    private void join(int a, int b, int id) {
+        if (!territory.owns(id, b)) return;
+        int ra = find(a), rb = find(b);
+        if (ra == rb) return;
+        if (size[ra] < size[rb]) {
+            int swap = ra;
+            ra = rb;
+            rb = swap;
+        }
+        parent[rb] = ra;
+        size[ra] += size[rb];
+        castles[ra] += castles[rb];
+        components[id]--;
+    }
+
+    /** Root of a tile's component, halving the path to it on the way. **/
+    private int find(int index) {
+        while (parent[index] != index) {
+            parent[index] = parent[parent[index]];
+            index = parent[index];
+        }
+        return index;
+    }
+}
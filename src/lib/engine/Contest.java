@@ -0,0 +1,26 @@
+package lib.engine;
+
+/** State of a tile that is currently being contested. Only exists while a contest is running,
+ * and doubles as the scheduler task that claims the tile when the contest delay is over. **/
+public class Contest extends ScheduledTask {
+    /** The battle the contested tile is in. **/
+    private final Battle battle;
+    /** Index of the contested tile in the battle's TileStore. **/
+    final int tileIndex;
+    /** The player contesting the tile. **/
+    Player contestor;
+    /** The point value accumulated with the tile during contesting. **/
+    int value;
+    /** Battle time in milliseconds when the tile began to be contested. **/
+    long startTime;
+
+    Contest(Battle battle, int tileIndex) {
+        this.battle = battle;
+        this.tileIndex = tileIndex;
+    }
+
+    @Override
+    public void run() {
+        battle.getTile(tileIndex).onCapture();
+    }
+}
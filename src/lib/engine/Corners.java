@@ -1,46 +1,102 @@
 package lib.engine;
 
-import lib.Camera;
-
-/** Data format to store the heights of corners of a tile or around a tile. **/
+/** Immutable value storing the heights of corners of a tile or around a tile.
+ * All four heights are packed into one long, 16 bits each, in the order [NW, NE, SE, SW]
+ * (lanes 0-3, matching the nw()/ne()/se()/sw() accessors), so corners can be kept in primitive arrays and passed around without allocating.
+ * Rotating the view for drawing is a single bit rotation of the packed long; see rotate(). **/
 public class Corners {
-    /** All four diangonal cardinal direction corners. [NW, SW, SE, NE] **/
-    public int[] values;
+    /** Lane of the back corner in a rotated packed long. (NW when facing 45 degrees.) **/
+    public static final int BACK = 0;
+    /** Lane of the left corner in a rotated packed long. (NE when facing 45 degrees.) **/
+    public static final int LEFT = 1;
+    /** Lane of the front corner in a rotated packed long. (SE when facing 45 degrees.) **/
+    public static final int FRONT = 2;
+    /** Lane of the right corner in a rotated packed long. (SW when facing 45 degrees.) **/
+    public static final int RIGHT = 3;
+
+    /** All four corner heights, packed. See pack(). **/
+    public final long packed;
 
-    public Corners(int nw, int sw, int se, int ne) {
-        values = new int[]{nw, sw, se, ne};
+    public Corners(long packed) {
+        this.packed = packed;
+    }
+
+    /** Corners with heights given in lane order; see the constructor of earlier versions, which filled lanes in this order. **/
+    public Corners(int lane0, int lane1, int lane2, int lane3) {
+        this(pack(lane0, lane1, lane2, lane3));
     }
 
     public Corners(Corners other){
-        this.values = other.values;
+        this(other.packed);
     }
 
     public Corners() {
        this(-1, -1, -1, -1);
     }
 
-    private int indexedCorner(int index) {
-        return values[(index + Camera.cornerShift) % 4];
+    /** Return the back corner according to the given rotation. (NW when facing 45 degrees.) **/
+    public int back(int shift) { return lane(rotate(packed, shift), BACK); }
+    /** Return the left corner according to the given rotation. (NE when facing 45 degrees.) **/
+    public int left(int shift) { return lane(rotate(packed, shift), LEFT); }
+    /** Return the front corner according to the given rotation. (SE when facing 45 degrees.) **/
+    public int front(int shift) { return lane(rotate(packed, shift), FRONT); }
+    /** Return the right corner according to the given rotation. (SW when facing 45 degrees.) **/
+    public int right(int shift) { return lane(rotate(packed, shift), RIGHT); }
+
+    public int nw() { return lane(packed, 0); }
+    public int ne() { return lane(packed, 1); }
+    public int se() { return lane(packed, 2); }
+    public int sw() { return lane(packed, 3); }
+
+    /** Height in the given lane (0-3). **/
+    public int get(int lane) { return lane(packed, lane); }
+
+    public Corners withNw(int value) { return new Corners(withLane(packed, 0, value)); }
+    public Corners withNe(int value) { return new Corners(withLane(packed, 1, value)); }
+    public Corners withSe(int value) { return new Corners(withLane(packed, 2, value)); }
+    public Corners withSw(int value) { return new Corners(withLane(packed, 3, value)); }
+
+    /** Pack four corner heights into one long, 16 bits each, in lane order [NW, NE, SE, SW]. **/
+    public static long pack(int nw, int ne, int se, int sw) {
+        return (nw & 0xFFFFL) | (ne & 0xFFFFL) << 16 | (se & 0xFFFFL) << 32 | (sw & 0xFFFFL) << 48;
     }
 
-    /** Return the back corner according to current rotation. (NW when facing 45 degrees.) **/
-    public int back() { return indexedCorner(0); }
-    /** Return the left corner according to current rotation. (NE when facing 45 degrees.) **/
-    public int left() { return indexedCorner(1); }
-    /** Return the back corner according to current rotation. (SE when facing 45 degrees.) **/
-    public int front() { return indexedCorner(2); }
-    /** Return the right corner according to current rotation. (SW when facing 45 degrees.) **/
-    public int right() { return indexedCorner(3); }
+    /** Get one corner height out of a packed long, by lane. **/
+    public static int lane(long packed, int lane) {
+        return (short) (packed >>> (lane << 4));
+    }
 
-    public int nw() { return values[0]; }
-    public int ne() { return values[1]; }
-    public int se() { return values[2]; }
-    public int sw() { return values[3]; }
+    /** Replace one corner height in a packed long. **/
+    public static long withLane(long packed, int lane, int value) {
+        int bits = lane << 4;
+        return (packed & ~(0xFFFFL << bits)) | (value & 0xFFFFL) << bits;
+    }
 
-    public void setNw(int value) { values[0] = value; }
-    public void setNe(int value) { values[1] = value; }
-    public void setSe(int value) { values[2] = value; }
-    public void setSw(int value) { values[3] = value; }
+    /** Rotate packed corners by a camera corner shift (Camera.cornerShift), so lanes BACK, LEFT, FRONT and RIGHT hold the corners
+     * in those screen positions. Rotate once per tile, then read lanes, instead of resolving the rotation on every access. **/
+    public static long rotate(long packed, int shift) {
+        return Long.rotateRight(packed, shift << 4);
+    }
+
+    /** Create a Corners from packed heights. **/
+    public static Corners unpack(long packed) {
+        return new Corners(packed);
+    }
+
+    /** Packed heights of these corners. **/
+    public long pack() {
+        return packed;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Corners && ((Corners) o).packed == packed;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(packed);
+    }
 
     public static final Corners FLAT = new Corners(0, 0, 0, 0);
     public static Corners flatCorners() {return FLAT;}
@@ -1,14 +1,47 @@
 package lib.engine;
 
-/** An effect on a unit. A source can be specified.
+/** A buff or debuff on a unit, changing its stats for a duration or until removed. A source can be specified.
+ * Effects are immutable, so one effect (such as an aura) can be given to any amount of units with Unit.addEffect().
+ * Effects on a unit stack: hp and atk bonuses add up, and speed multipliers multiply.
  * toString is used to generate the text. **/
-public abstract class Effect {
-    /** The object this effect came from. No source means it is sourced from the unit itself. **/
-    public Object source;
+public class Effect {
+    /** Display name of this effect. **/
+    public final String name;
+    /** The object this effect came from. No source means it is sourced from the unit itself.
+     * Only tile sources are kept in battle snapshots; see BattleState. **/
+    public final Object source;
+    /** Milliseconds this effect lasts after it is added to a unit, or 0 if it lasts until removed. **/
+    public final long duration;
 
-    /** The effect to run on a unit when this effect is applied. **/
-    public abstract void apply(Unit unit);
+    /** Hit points added to the unit while this effect lasts. Losing them when it ends never defeats the unit. **/
+    public final int hp;
+    /** Attack added to the unit. **/
+    public final int atk;
+    /** Multiplier of the unit's act speed. **/
+    public final double speed;
 
-    /** The effect to run on the unit when this effect is removed. **/
-    public abstract void remove(Unit unit);
+    public Effect(String name, Object source, long duration, int hp, int atk, double speed) {
+        if (duration < 0) throw new IllegalArgumentException("Negative effect duration: " + duration);
+        if (!(speed > 0)) throw new IllegalArgumentException("Effect speed multiplier must be positive: " + speed);
+        this.name = name;
+        this.source = source;
+        this.duration = duration;
+        this.hp = hp;
+        this.atk = atk;
+        this.speed = speed;
+    }
+
+    /** Whether this effect ends by itself. **/
+    public boolean isTimed() {
+        return duration > 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(name);
+        if (hp != 0) text.append(String.format(" %+d HP", hp));
+        if (atk != 0) text.append(String.format(" %+d ATK", atk));
+        if (speed != 1) text.append(String.format(" x%.2f SPD", speed));
+        return text.toString();
+    }
 }
@@ -5,4 +5,16 @@ package lib.engine;
  */
 public class GameConstants {
     public static final int CAPTURE_TIME = 6000;
+
+    /** Length of one engine tick, in milliseconds. **/
+    public static final int TICK_TIME = 20;
+    /** Most ticks a battle will run in one update when it falls behind real time. **/
+    public static final int MAX_CATCH_UP_TICKS = 50;
+    /** Longest an idle auto-acting unit waits between tries to act, in milliseconds. **/
+    public static final int MAX_AUTO_ACT_RETRY = 640;
+
+    /** Most a unit can climb or drop between the corners on the shared edge of two tiles when moving. **/
+    public static final int MAX_CLIMB = 2;
+    /** Most flow fields a battle keeps cached. Each takes about 5 bytes per tile of the map. **/
+    public static final int FLOW_FIELD_CACHE_SIZE = 8;
 }
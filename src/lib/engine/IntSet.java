@@ -0,0 +1,113 @@
+package lib.engine;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/** Set of non-negative ints, such as tile indexes, stored in one open-addressed int array without boxing.
+ * Removals shift later entries back instead of leaving tombstones, so lookups stay short however often the set changes. **/
+public class IntSet {
+    private static final int EMPTY = -1;
+
+    /** Entries, EMPTY in unused slots. Length is always a power of two. **/
+    private int[] keys;
+    /** Amount of entries in the set. **/
+    private int size;
+
+    public IntSet(int capacity) {
+        keys = new int[Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1) << 1];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public IntSet() {
+        this(16);
+    }
+
+    /** Add a value. Returns false if it was already in the set. **/
+    public boolean add(int value) {
+        int mask = keys.length - 1;
+        int slot = hash(value) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == value) return false;
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = value;
+        if (++size * 2 > keys.length) grow();
+        return true;
+    }
+
+    /** Remove a value. Returns false if it was not in the set. **/
+    public boolean remove(int value) {
+        int mask = keys.length - 1;
+        int slot = hash(value) & mask;
+        while (keys[slot] != value) {
+            if (keys[slot] == EMPTY) return false;
+            slot = (slot + 1) & mask;
+        }
+
+        // Shift back later entries of the probe run that would no longer be reachable past the gap
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                gap = next;
+            }
+        }
+        keys[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    public boolean contains(int value) {
+        int mask = keys.length - 1;
+        for (int slot = hash(value) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == value) return true;
+        }
+        return false;
+    }
+
+    /** Call the action with every value in the set, in no particular order. The set must not be changed meanwhile. **/
+    public void forEach(IntConsumer action) {
+        for (int key : keys) {
+            if (key != EMPTY) action.accept(key);
+        }
+    }
+
+    /** Every value in the set, in no particular order. **/
+    public int[] toArray() {
+        int[] values = new int[size];
+        int n = 0;
+        for (int key : keys) {
+            if (key != EMPTY) values[n++] = key;
+        }
+        return values;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void grow() {
+        int[] old = keys;
+        keys = new int[old.length * 2];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (int key : old) {
+            if (key != EMPTY) add(key);
+        }
+    }
+
+    private static int hash(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,112 @@
+package lib.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A player's points, safe to earn and spend from any amount of threads without locking.
+ * The balance is kept as two running totals: everything ever credited, in a LongAdder so that thousands of farmers
+ * paying out at once each add to their own cell instead of fighting over one value, and everything ever debited,
+ * in an AtomicLong that spending compare-and-sets only if the balance covers it.
+ * Credits only ever grow the balance, so a debit that sees enough points can never overdraw, even while credits race it.
+ * Optionally keeps an append-only record of every transaction for auditing. **/
+public class Ledger {
+    /** Total points ever credited. **/
+    private final LongAdder credited = new LongAdder();
+    /** Total points ever debited. Never more than credited. **/
+    private final AtomicLong debited = new AtomicLong();
+    /** Source of transaction sequence numbers, only used while auditing. **/
+    private final AtomicLong sequence = new AtomicLong();
+    /** Every transaction since auditing started, in the order they were recorded, or null if not auditing. **/
+    private volatile ConcurrentLinkedQueue<Transaction> record;
+
+    /** One change to a ledger's balance. **/
+    public static class Transaction {
+        /** Order this transaction was recorded in, starting at 0. **/
+        public final long sequence;
+        /** Points credited, or negative for points debited. **/
+        public final long amount;
+
+        public Transaction(long sequence, long amount) {
+            this.sequence = sequence;
+            this.amount = amount;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + sequence + (amount >= 0 ? " +" : " ") + amount;
+        }
+    }
+
+    /** Current amount of points. Exact when nothing is being credited at the same time. **/
+    public long balance() {
+        return credited.sum() - debited.get();
+    }
+
+    /** Add points. Never blocks and never fails. **/
+    public void credit(long amount) {
+        if (amount < 0) throw new IllegalArgumentException("Cannot credit a negative amount: " + amount);
+        if (amount == 0) return;
+        credited.add(amount);
+        audit(amount);
+    }
+
+    /** Take points only if there are at least that many. If there are not, take none.
+     * @return true if the points were taken **/
+    public boolean debit(long amount) {
+        if (amount < 0) throw new IllegalArgumentException("Cannot debit a negative amount: " + amount);
+        if (amount == 0) return true;
+        long spent;
+        do {
+            spent = debited.get();
+            if (credited.sum() - spent < amount) return false;
+        } while (!debited.compareAndSet(spent, spent + amount));
+        audit(-amount);
+        return true;
+    }
+
+    /** Change the balance to the given amount of points by crediting or debiting the difference.
+     * The debit is compare-and-set like debit(), so it never takes more than was credited.
+     * Only exact when no other thread changes this ledger at the same time. **/
+    public void set(long amount) {
+        if (amount < 0) throw new IllegalArgumentException("Cannot set a negative balance: " + amount);
+        while (true) {
+            long spent = debited.get(), difference = amount - (credited.sum() - spent);
+            if (difference >= 0) {
+                credit(difference);
+                return;
+            }
+            // Debiting down to a balance of at least 0 keeps debited within credited, which only grows
+            if (debited.compareAndSet(spent, spent - difference)) {
+                audit(difference);
+                return;
+            }
+        }
+    }
+
+    // ==== AUDITING
+    /** Start or stop recording transactions. Stopping discards the record. **/
+    public void setAuditing(boolean auditing) {
+        record = auditing ? new ConcurrentLinkedQueue<>() : null;
+    }
+
+    public boolean isAuditing() {
+        return record != null;
+    }
+
+    /** Copy of the transactions recorded so far, in order. Empty if not auditing. **/
+    public List<Transaction> transactions() {
+        ConcurrentLinkedQueue<Transaction> record = this.record;
+        List<Transaction> copy = record == null ? new ArrayList<>() : new ArrayList<>(record);
+        copy.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+        return copy;
+    }
+
+    /** Record a transaction if auditing. **/
+    private void audit(long amount) {
+        ConcurrentLinkedQueue<Transaction> record = this.record;
+        if (record != null) record.add(new Transaction(sequence.getAndIncrement(), amount));
+    }
+}
@@ -1,54 +1,39 @@
 package lib.engine;
 
-import lib.Colors;
-
-import java.awt.*;
-
 /** A player engaging in a battle. **/
 public class Player {
-    /** The color to draw this player's units. **/
-    public final Color color;
-    /** Unit placement color version of color. **/
-    public final Color colorPlace;
-    /** The color to draw this player's land. **/
-    public final Color landColor;
-    /** Color to draw faces for this player's units. **/
-    public final Color faceColor;
-    /** Unit placement color version of faceColor. **/
-    public final Color faceColorPlace;
-    /** The amount of points this player has. **/
-    private int points;
-
-    public Player(Color color){
-        this.color = color;
-
-        landColor = Colors.blendColors(Color.BLACK, color, 0.25);
-        faceColor = Colors.blendColors(Color.BLACK, color, 0.05);
-
-        colorPlace = Colors.blendColors(color, Colors.PLACEMENT_FADE,0.5);
-        faceColorPlace = new Color(faceColor.getRed(), faceColor.getGreen(), faceColor.getBlue(), 175);
+    /** The RGB color this player is shown with. Display colors are derived from this by lib.Palette. **/
+    public final int rgb;
+    /** The points this player has. Safe to earn and spend from any thread. **/
+    private final Ledger ledger = new Ledger();
+
+    public Player(int rgb){
+        this.rgb = rgb;
     }
 
     public boolean canBuy(Buyable item){
-        return points >= item.buyCost();
+        return getPoints() >= item.buyCost();
     }
 
     public int getPoints() {
-        return points;
+        return (int) Math.min(ledger.balance(), Integer.MAX_VALUE);
     }
 
     public void setPoints(int points) {
-        this.points = points;
+        ledger.set(points);
     }
 
     public void addPoints(int amount){
-        points += amount;
+        ledger.credit(amount);
     }
 
-    /** Subtract points from this player. If they had enough points, return true. If not, do not subtract any points. **/
+    /** Subtract points from this player. If they had enough points, return true. If not, do not subtract any points.
+     * Checking and subtracting happen as one step, so two threads can never both spend the same points. **/
     public boolean subtractPoints(int amount){
-        if (amount > points) return false;
-        points -= amount;
-        return true;
+        return ledger.debit(amount);
+    }
+
+    public Ledger getLedger() {
+        return ledger;
     }
 }
@@ -0,0 +1,90 @@
+package lib.engine;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Triple buffer of render snapshots between the thread running a battle and the thread drawing it.
+ * The battle fills its back snapshot at the end of each tick and swaps it into the middle slot;
+ * the renderer swaps its front snapshot with the middle one when a newer one is there.
+ * Each side only ever touches its own snapshot, so neither waits on the other and a frame is never torn.
+ * Tile owners and corners are only copied for tiles changed since that snapshot was last filled. **/
+public class RenderBuffer {
+    /** Snapshot only the battle's thread writes to. **/
+    private RenderSnapshot back;
+    /** Latest published snapshot not yet taken by the renderer, or an older one it gave back. **/
+    private final AtomicReference<RenderSnapshot> middle;
+    /** Snapshot only the renderer reads from. **/
+    private RenderSnapshot front;
+
+    /** The three snapshots, and the tiles (by store index) changed since each was last filled. **/
+    private final RenderSnapshot[] snapshots = new RenderSnapshot[3];
+    private final IntSet[] dirty = new IntSet[3];
+    /** Whether every tile of each snapshot needs copying. **/
+    private final boolean[] stale = {true, true, true};
+
+    /** Amount of snapshots published. **/
+    private long published;
+
+    RenderBuffer(Battle battle) {
+        for (int i = 0; i < 3; i++) {
+            snapshots[i] = new RenderSnapshot(battle);
+            dirty[i] = new IntSet();
+        }
+        back = snapshots[0];
+        middle = new AtomicReference<>(snapshots[1]);
+        front = snapshots[2];
+        publish(battle);
+        acquire();
+    }
+
+    // ==== BATTLE SIDE
+    /** Mark a tile (by store index) whose owner or corners changed. **/
+    void tileChanged(int index) {
+        for (int i = 0; i < 3; i++) {
+            if (!stale[i]) dirty[i].add(index);
+        }
+    }
+
+    /** Mark every tile as changed, e.g. after owners were loaded in bulk. **/
+    void invalidate() {
+        for (int i = 0; i < 3; i++) {
+            stale[i] = true;
+            dirty[i].clear();
+        }
+    }
+
+    /** Bring the back snapshot up to date with the battle and publish it. **/
+    void publish(Battle battle) {
+        int i = slot(back);
+        TileStore store = battle.getStore();
+        if (stale[i]) {
+            back.copyAllTiles(store);
+            stale[i] = false;
+        } else if (!dirty[i].isEmpty()) {
+            RenderSnapshot snapshot = back;
+            dirty[i].forEach(index -> snapshot.copyTile(store, index));
+            dirty[i].clear();
+        }
+        back.copyPieces(battle, ++published);
+        back = middle.getAndSet(back);
+    }
+
+    private int slot(RenderSnapshot snapshot) {
+        for (int i = 0; i < 3; i++) {
+            if (snapshots[i] == snapshot) return i;
+        }
+        throw new IllegalStateException();
+    }
+
+    // ==== RENDERER SIDE
+    /** Take the latest published snapshot if there is a newer one than the current, and return the current one.
+     * Call once per frame from the drawing thread, and draw the whole frame from the returned snapshot. **/
+    public RenderSnapshot acquire() {
+        if (middle.get().getSequence() > front.getSequence()) front = middle.getAndSet(front);
+        return front;
+    }
+
+    /** The snapshot last returned by acquire(). Only for the drawing thread. **/
+    public RenderSnapshot current() {
+        return front;
+    }
+}
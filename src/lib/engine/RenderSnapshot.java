@@ -0,0 +1,194 @@
+package lib.engine;
+
+import java.util.Arrays;
+
+/** Everything needed to draw a battle's map, copied out of the battle at the end of a tick.
+ * Once published by a RenderBuffer a snapshot is never changed while it is being read,
+ * so the renderer and mouse picking can read a whole consistent frame without locking the battle.
+ * Tiles are addressed by row and column. **/
+public class RenderSnapshot {
+    /** Size of the map. **/
+    public final int rows, cols;
+    /** Players of the battle, by id - 1. **/
+    private final Player[] players;
+
+    /** Owner id of each tile, in row-major order. **/
+    private final byte[] owner;
+    /** Packed corners of each tile's base, next lowest and lowest surrounding corners. See Corners.pack(). **/
+    private final long[] base, around, lowest;
+    /** Type of the unit on each tile, or null if there is none. **/
+    private final UnitData[] unit;
+    /** Whether the unit on each tile is ready. **/
+    private final boolean[] ready;
+    /** Battle time the unit on each tile last acted. **/
+    private final long[] actionStart;
+    /** Milliseconds the unit on each tile takes to become ready, with effects on its speed. See Unit.getDelay(). **/
+    private final int[] delay;
+    /** Id of the player contesting each tile, 0 if not contested. **/
+    private final byte[] contestor;
+    /** Point value of the contest on each tile. **/
+    private final int[] contestValue;
+    /** Battle time the contest on each tile started. **/
+    private final long[] contestStart;
+
+    /** Tiles this snapshot holds a unit or contest on, so they can be cleared before the next fill. **/
+    private int[] occupied = new int[16];
+    private int occupiedCount;
+
+    /** Battle time and publish order of this snapshot. **/
+    private long time, sequence;
+
+    RenderSnapshot(Battle battle) {
+        rows = battle.numRows();
+        cols = battle.numCols();
+        players = battle.getPlayers().clone();
+        int size = rows * cols;
+        owner = new byte[size];
+        base = new long[size];
+        around = new long[size];
+        lowest = new long[size];
+        unit = new UnitData[size];
+        ready = new boolean[size];
+        actionStart = new long[size];
+        delay = new int[size];
+        contestor = new byte[size];
+        contestValue = new int[size];
+        contestStart = new long[size];
+    }
+
+    // ==== FILLING
+    /** Copy a tile's owner and corners from the store. Indexes are the store's. **/
+    void copyTile(TileStore store, int index) {
+        int i = store.row(index) * cols + store.col(index);
+        owner[i] = (byte) store.owner(index);
+        base[i] = store.base(index);
+        around[i] = store.around(index);
+        lowest[i] = store.lowest(index);
+    }
+
+    /** Copy every tile's owner and corners from the store. **/
+    void copyAllTiles(TileStore store) {
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) copyTile(store, store.index(r, c));
+        }
+    }
+
+    /** Replace the units and contests with the battle's current ones, and stamp the snapshot with its time.
+     * Units and contests change nearly every tick, and there are few of them, so they are always copied in full. **/
+    void copyPieces(Battle battle, long sequence) {
+        for (int n = 0; n < occupiedCount; n++) {
+            int i = occupied[n];
+            unit[i] = null;
+            contestor[i] = 0;
+        }
+        occupiedCount = 0;
+
+        TileStore store = battle.getStore();
+        UnitStore units = battle.getUnits();
+        for (int n = 0, size = units.size(); n < size; n++) {
+            int slot = units.live(n), index = units.tile(slot);
+            int i = store.row(index) * cols + store.col(index);
+            unit[i] = units.type(slot);
+            ready[i] = units.ready(slot);
+            actionStart[i] = units.actionStart(slot);
+            delay[i] = units.get(slot).getDelay();
+            occupy(i);
+        }
+
+        SlotTable<Contest> contests = battle.getContests();
+        for (int slot = 0; slot < contests.end(); slot++) {
+            Contest contest = contests.get(slot);
+            if (contest == null) continue;
+            int i = store.row(contest.tileIndex) * cols + store.col(contest.tileIndex);
+            contestor[i] = (byte) battle.playerId(contest.contestor);
+            contestValue[i] = contest.value;
+            contestStart[i] = contest.startTime;
+            occupy(i);
+        }
+
+        time = battle.time();
+        this.sequence = sequence;
+    }
+
+    private void occupy(int i) {
+        if (occupiedCount == occupied.length) occupied = Arrays.copyOf(occupied, occupiedCount * 2);
+        occupied[occupiedCount++] = i;
+    }
+
+    // ==== TILES
+    public Player getOwner(int row, int col) {
+        int id = owner[row * cols + col];
+        return id == 0 ? null : players[id - 1];
+    }
+
+    public boolean isClaimed(int row, int col) {
+        return owner[row * cols + col] != 0;
+    }
+
+    public long packedBase(int row, int col) {
+        return base[row * cols + col];
+    }
+
+    public long packedAround(int row, int col) {
+        return around[row * cols + col];
+    }
+
+    public long packedLowest(int row, int col) {
+        return lowest[row * cols + col];
+    }
+
+    public Corners getBase(int row, int col) {
+        return Corners.unpack(base[row * cols + col]);
+    }
+
+    // ==== UNITS
+    public boolean hasUnit(int row, int col) {
+        return unit[row * cols + col] != null;
+    }
+
+    /** Type of the unit on a tile, or null if there is none. **/
+    public UnitData getUnit(int row, int col) {
+        return unit[row * cols + col];
+    }
+
+    public boolean isReady(int row, int col) {
+        return ready[row * cols + col];
+    }
+
+    /** How ready the unit on a tile is, from 0 to 1. See Unit.readinessPercent(). **/
+    public double readinessPercent(int row, int col) {
+        int i = row * cols + col;
+        return Math.min((double) (time - actionStart[i]) / delay[i], 1.0);
+    }
+
+    // ==== CONTESTS
+    public boolean beingContested(int row, int col) {
+        return contestor[row * cols + col] != 0;
+    }
+
+    /** The player contesting a tile, or null if it is not being contested. **/
+    public Player getContestor(int row, int col) {
+        int id = contestor[row * cols + col];
+        return id == 0 ? null : players[id - 1];
+    }
+
+    public int getContestValue(int row, int col) {
+        return contestValue[row * cols + col];
+    }
+
+    /** How far along the contest on a tile is, from 0 to 1. **/
+    public double contestProgress(int row, int col) {
+        return (double) (time - contestStart[row * cols + col]) / GameConstants.CAPTURE_TIME;
+    }
+
+    // ======== ACCESSORS
+    /** Battle time in milliseconds this snapshot was taken at. **/
+    public long time() {
+        return time;
+    }
+
+    /** Increases by one with each snapshot published, starting at 1. **/
+    public long getSequence() {
+        return sequence;
+    }
+}
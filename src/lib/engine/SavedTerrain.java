@@ -0,0 +1,43 @@
+package lib.engine;
+
+import java.nio.ByteBuffer;
+
+/** Terrain read from the raw tile columns of a save file, for the chunks that were generated when it was saved.
+ * Chunks are copied out of the (usually memory-mapped) buffer as the store first accesses them, so loading a save
+ * does no terrain work up front. Chunks that were not saved are made by the source generator, as they were never changed. **/
+public class SavedTerrain implements TerrainGenerator {
+    /** Bytes of saved columns per chunk: a type byte and a depth short per tile. **/
+    public static final int CHUNK_BYTES = TileChunk.TILES * (Byte.BYTES + Short.BYTES);
+
+    /** The generator the saved battle's terrain originally came from. **/
+    private final TerrainGenerator source;
+    /** The saved columns. **/
+    private final ByteBuffer columns;
+    /** Position of each chunk's columns in the buffer, or -1 if the chunk was not saved. Chunks past the end were not saved. **/
+    private final int[] positions;
+
+    /** @param positions position of each chunk's columns in the buffer by chunk id, or -1 for chunks the source generates **/
+    public SavedTerrain(TerrainGenerator source, ByteBuffer columns, int[] positions) {
+        this.source = source;
+        this.columns = columns;
+        this.positions = positions;
+    }
+
+    @Override
+    public void generate(TileStore store, TileChunk chunk) {
+        int position = chunk.id < positions.length ? positions[chunk.id] : -1;
+        if (position == -1) {
+            source.generate(store, chunk);
+            return;
+        }
+        ByteBuffer buffer = columns.duplicate();
+        buffer.position(position);
+        buffer.get(chunk.type);
+        buffer.asShortBuffer().get(chunk.depth);
+    }
+
+    /** The generator the saved battle's terrain originally came from. **/
+    public TerrainGenerator getSource() {
+        return source;
+    }
+}
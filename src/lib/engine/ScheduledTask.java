@@ -0,0 +1,27 @@
+package lib.engine;
+
+/** An event fired by a battle's Scheduler once the tick it is scheduled for is reached.
+ * Owners keep one instance and reschedule it, rather than creating a new one for every deadline. **/
+public abstract class ScheduledTask {
+    /** Tick this task will fire on. Only meaningful while scheduled. **/
+    long deadline;
+    /** If this task is currently waiting in a scheduler. **/
+    boolean scheduled;
+
+    /** Neighbouring tasks in the timing wheel slot this task is in. **/
+    ScheduledTask prev, next;
+    /** Index of the timing wheel slot this task is in. **/
+    int slot;
+
+    /** Effect to run when this task's deadline is reached. **/
+    public abstract void run();
+
+    public boolean isScheduled() {
+        return scheduled;
+    }
+
+    /** The tick this task will fire on. **/
+    public long getDeadline() {
+        return deadline;
+    }
+}
@@ -0,0 +1,94 @@
+package lib.engine;
+
+/** Fixed-timestep scheduler that drives all timed events in a battle (unit readiness, auto-acting, contest captures).
+ * Time only moves forward in whole ticks of GameConstants.TICK_TIME milliseconds.
+ * Deadlines are held in a hierarchical TimingWheel, so scheduling, cancelling and rescheduling are O(1)
+ * and a tick only costs as much as the tasks that are due on it.
+ * The same sequence of calls always fires tasks in the same order, so a run is deterministic. **/
+public class Scheduler {
+    /** All tasks waiting to fire. **/
+    private final TimingWheel wheel;
+
+    public Scheduler() {
+        wheel = new TimingWheel();
+    }
+
+    /** Schedule a task to fire after the given amount of milliseconds, rounded up to a whole tick.
+     * If the task is already scheduled, it is moved to the new deadline. **/
+    public void schedule(ScheduledTask task, long delay) {
+        scheduleAt(task, getTick() + ticksFor(delay));
+    }
+
+    /** Schedule a task to fire on the given tick. If the task is already scheduled, it is moved to the new deadline. **/
+    public void scheduleAt(ScheduledTask task, long deadline) {
+        if (task.scheduled) wheel.remove(task);
+        task.deadline = Math.max(deadline, getTick() + 1);
+        task.scheduled = true;
+        wheel.add(task);
+    }
+
+    /** Remove a task from this scheduler without firing it. Does nothing if it is not scheduled. **/
+    public void cancel(ScheduledTask task) {
+        if (!task.scheduled) return;
+        wheel.remove(task);
+        task.scheduled = false;
+    }
+
+    /** Advance one tick, firing every task that is due. **/
+    public void tick() {
+        wheel.advance();
+        ScheduledTask task;
+        while ((task = wheel.poll()) != null) {
+            task.scheduled = false;
+            task.run();
+        }
+    }
+
+    /** Run ticks until the given time (in milliseconds since this scheduler started) is reached,
+     * running at most GameConstants.MAX_CATCH_UP_TICKS ticks so a long stall doesn't freeze the game while catching up.
+     * @return the amount of ticks run **/
+    public int advanceTo(long time) {
+        return advanceTo(time, GameConstants.MAX_CATCH_UP_TICKS);
+    }
+
+    /** Run ticks until the given time is reached, running at most the given amount of ticks.
+     * @return the amount of ticks run **/
+    public int advanceTo(long time, int maxTicks) {
+        int ran = 0;
+        while (time() + GameConstants.TICK_TIME <= time && ran < maxTicks) {
+            tick();
+            ran++;
+        }
+        return ran;
+    }
+
+    /** Amount of milliseconds until a task fires, or 0 if it is not scheduled. **/
+    public long remaining(ScheduledTask task) {
+        return task.scheduled ? (task.deadline - getTick()) * GameConstants.TICK_TIME : 0;
+    }
+
+    /** Amount of whole ticks needed to wait at least the given amount of milliseconds. Never less than 1. **/
+    public static long ticksFor(long delay) {
+        return Math.max(1, (delay + GameConstants.TICK_TIME - 1) / GameConstants.TICK_TIME);
+    }
+
+    /** Amount of tasks currently waiting to fire. **/
+    public int pending() {
+        return wheel.size();
+    }
+
+    // ======== ACCESSORS
+    TimingWheel getWheel() {
+        return wheel;
+    }
+
+    /** The current tick. **/
+    public long getTick() {
+        return wheel.getNow();
+    }
+
+    /** The current time in milliseconds since this scheduler started. **/
+    public long time() {
+        return getTick() * GameConstants.TICK_TIME;
+    }
+}
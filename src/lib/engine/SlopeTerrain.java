@@ -0,0 +1,49 @@
+package lib.engine;
+
+import java.util.SplittableRandom;
+
+/** The original map terrain: slopes down towards the far corner, with random slope types and bumps.
+ * Each chunk draws from its own random stream derived from the seed and the chunk's position,
+ * so the same seed always gives the same map no matter which order or which threads generate the chunks. **/
+public class SlopeTerrain implements TerrainGenerator {
+    /** Seed all chunk streams are derived from. **/
+    private final long seed;
+
+    public SlopeTerrain(long seed) {
+        this.seed = seed;
+    }
+
+    public SlopeTerrain() {
+        this(new SplittableRandom().nextLong());
+    }
+
+    @Override
+    public void generate(TileStore store, TileChunk chunk) {
+        SplittableRandom rng = stream(chunk);
+        for (int r = 0; r < TileChunk.SIZE; r++) {
+            for (int c = 0; c < TileChunk.SIZE; c++) {
+                int row = chunk.originRow + r, col = chunk.originCol + c;
+                int local = TileChunk.local(r, c);
+                chunk.type[local] = (byte) (rng.nextDouble() > 0.5 ? rng.nextInt(5) : 0);
+                // Offset by map size so the lowest tile is never below 0
+                chunk.depth[local] = (short) ((store.rows-1 - row) + (store.cols-1 - col)*2 + (rng.nextDouble() > 0.25 ? 1 : 0));
+            }
+        }
+    }
+
+    /** The random stream for a chunk, which only depends on the seed and the chunk's position. **/
+    private SplittableRandom stream(TileChunk chunk) {
+        return new SplittableRandom(mix(seed + mix(((long) chunk.originRow << 32) | chunk.originCol)));
+    }
+
+    /** SplitMix64 finalizer, spreading nearby inputs across the whole range of longs. **/
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+}
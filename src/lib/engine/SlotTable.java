@@ -0,0 +1,70 @@
+package lib.engine;
+
+import java.util.Arrays;
+
+/** Table of objects addressed by int slot, so primitive arrays can refer to them by index instead of by reference.
+ * Removed slots are kept on a free list and reused by later adds. **/
+public class SlotTable<T> {
+    /** Objects by slot. Null for free slots. **/
+    private Object[] items;
+    /** Next free slot after each free slot, forming the free list. **/
+    private int[] nextFree;
+    /** First free slot, or -1 if there are none below capacity. **/
+    private int freeHead = -1;
+    /** One past the highest slot ever used. **/
+    private int end;
+    /** Amount of slots currently in use. **/
+    private int size;
+
+    public SlotTable(int capacity) {
+        items = new Object[Math.max(capacity, 4)];
+        nextFree = new int[items.length];
+    }
+
+    public SlotTable() {
+        this(16);
+    }
+
+    /** Add an object, reusing a free slot if there is one. Returns its slot. **/
+    public int add(T item) {
+        int slot;
+        if (freeHead != -1) {
+            slot = freeHead;
+            freeHead = nextFree[slot];
+        } else {
+            if (end == items.length) {
+                items = Arrays.copyOf(items, end * 2);
+                nextFree = Arrays.copyOf(nextFree, end * 2);
+            }
+            slot = end++;
+        }
+        items[slot] = item;
+        size++;
+        return slot;
+    }
+
+    /** Remove the object in a slot, freeing it for reuse. **/
+    public void remove(int slot) {
+        if (items[slot] == null) return;
+        items[slot] = null;
+        nextFree[slot] = freeHead;
+        freeHead = slot;
+        size--;
+    }
+
+    /** The object in a slot, or null if it is free. **/
+    @SuppressWarnings("unchecked")
+    public T get(int slot) {
+        return (T) items[slot];
+    }
+
+    /** Amount of slots currently in use. **/
+    public int size() {
+        return size;
+    }
+
+    /** One past the highest slot ever used. Iterate slots below this and skip nulls to visit every object. **/
+    public int end() {
+        return end;
+    }
+}
@@ -0,0 +1,8 @@
+package lib.engine;
+
+/** Notified on a battle's own thread after each update() or tick() of the battle,
+ * when its state is consistent, e.g. so an AI can take a snapshot of it to think about on another thread. **/
+public interface StepListener {
+    /** Called after the battle finished a step. Change the battle only by submitting commands. **/
+    void stepFinished(Battle battle);
+}
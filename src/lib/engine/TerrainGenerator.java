@@ -0,0 +1,7 @@
+package lib.engine;
+
+/** Fills in the terrain of a map one chunk at a time, as chunks are first accessed. **/
+public interface TerrainGenerator {
+    /** Set the type and depth of every tile in a chunk of the given store. **/
+    void generate(TileStore store, TileChunk chunk);
+}
@@ -0,0 +1,7 @@
+package lib.engine;
+
+/** Notified when the terrain of tiles in a battle changes, so cached drawing data for those tiles can be refreshed. **/
+public interface TerrainListener {
+    /** Called for each tile whose base, around or lowest corners changed. **/
+    void terrainChanged(int row, int col);
+}
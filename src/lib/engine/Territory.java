@@ -0,0 +1,170 @@
+package lib.engine;
+
+/** Which tiles each player of a battle has claimed, kept as one bitboard per player indexed by TileStore index,
+ * along with each player's frontier: the unclaimed tiles next to one of their claimed tiles, which are the tiles they could contest.
+ * Both are updated incrementally by Battle whenever a tile changes owner, so ownership and adjacency checks are a few bit tests
+ * and frontier queries take time proportional to the frontier instead of the whole map. **/
+public class Territory {
+    private final TileStore store;
+    /** Claimed tiles by player id, one bit per tile index. Id 0 holds every claimed tile regardless of owner. **/
+    private final long[][] claimed;
+    /** Amount of tiles claimed by each player id. Id 0 is the total. **/
+    private final int[] counts;
+    /** Frontier of each player id. Id 0 is unused. **/
+    private final IntSet[] frontiers;
+
+    public Territory(TileStore store, int players) {
+        this.store = store;
+        claimed = new long[players + 1][(store.capacity() + 63) >>> 6];
+        counts = new int[players + 1];
+        frontiers = new IntSet[players + 1];
+        for (int id = 1; id <= players; id++) frontiers[id] = new IntSet();
+    }
+
+    /** Record that the tile at index changed from owner oldId to newId, and update the frontiers around it. **/
+    public void ownerChanged(int index, int oldId, int newId) {
+        if (oldId == newId) return;
+        if (oldId != 0) {
+            clear(claimed[oldId], index);
+            clear(claimed[0], index);
+            counts[oldId]--;
+            counts[0]--;
+        }
+        if (newId != 0) {
+            set(claimed[newId], index);
+            set(claimed[0], index);
+            counts[newId]++;
+            counts[0]++;
+        }
+
+        // This tile joined or left every player's frontier by becoming claimed or unclaimed
+        for (int id = 1; id < frontiers.length; id++) refresh(index, id);
+
+        // Its neighbours only changed adjacency for the old and new owner
+        int row = store.row(index), col = store.col(index);
+        refreshAround(row-1, col, oldId, newId);
+        refreshAround(row+1, col, oldId, newId);
+        refreshAround(row, col-1, oldId, newId);
+        refreshAround(row, col+1, oldId, newId);
+    }
+
+    private void refreshAround(int row, int col, int oldId, int newId) {
+        if (!store.withinBounds(row, col)) return;
+        int index = store.index(row, col);
+        if (oldId != 0) refresh(index, oldId);
+        if (newId != 0) refresh(index, newId);
+    }
+
+    /** Put the tile in or out of a player's frontier. **/
+    private void refresh(int index, int id) {
+        if (!get(claimed[0], index) && isAdjacent(id, store.row(index), store.col(index))) {
+            frontiers[id].add(index);
+        } else {
+            frontiers[id].remove(index);
+        }
+    }
+
+    /** Claim every tile set in a bitboard for the player id at once, for loading a saved battle.
+     * The tiles must not be claimed by anyone yet. Call rebuildFrontiers() after loading every player. **/
+    public void load(int id, long[] board) {
+        long[] bits = claimed[id], all = claimed[0];
+        for (int word = 0; word < board.length; word++) {
+            if (board[word] == 0) continue;
+            if ((all[word] & board[word]) != 0) throw new IllegalStateException("Loaded tiles are already claimed");
+            bits[word] |= board[word];
+            all[word] |= board[word];
+            int count = Long.bitCount(board[word]);
+            counts[id] += count;
+            counts[0] += count;
+        }
+    }
+
+    /** Recompute every player's frontier from the bitboards.
+     * Walks whichever is smaller of the claimed tiles and the unclaimed tiles, so a mostly claimed map is as quick as a mostly empty one. **/
+    public void rebuildFrontiers() {
+        for (int id = 1; id < frontiers.length; id++) frontiers[id].clear();
+        long[] all = claimed[0];
+        boolean fromClaimed = counts[0] <= store.rows * store.cols - counts[0];
+        for (int word = 0; word < all.length; word++) {
+            long set = fromClaimed ? all[word] : ~all[word];
+            for (; set != 0; set &= set - 1) {
+                int index = word << 6 | Long.numberOfTrailingZeros(set);
+                int row = store.row(index), col = store.col(index);
+                if (row >= store.rows || col >= store.cols) continue;
+                if (fromClaimed) {
+                    // Each claimed tile puts its unclaimed neighbours in its owner's frontier
+                    int id = owner(index);
+                    addIfUnclaimed(id, row-1, col);
+                    addIfUnclaimed(id, row+1, col);
+                    addIfUnclaimed(id, row, col-1);
+                    addIfUnclaimed(id, row, col+1);
+                } else {
+                    for (int id = 1; id < frontiers.length; id++) {
+                        if (isAdjacent(id, row, col)) frontiers[id].add(index);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addIfUnclaimed(int id, int row, int col) {
+        if (!store.withinBounds(row, col)) return;
+        int index = store.index(row, col);
+        if (!get(claimed[0], index)) frontiers[id].add(index);
+    }
+
+    /** Id of the player that claimed the tile at index, which must be claimed. **/
+    private int owner(int index) {
+        for (int id = 1; id < claimed.length; id++) {
+            if (get(claimed[id], index)) return id;
+        }
+        return 0;
+    }
+
+    /** If the tile at index is claimed by the player id. **/
+    public boolean owns(int id, int index) {
+        return id != 0 && get(claimed[id], index);
+    }
+
+    /** If the tile at index is claimed by anyone. **/
+    public boolean isClaimed(int index) {
+        return get(claimed[0], index);
+    }
+
+    /** If the player id has claimed a tile orthogonally adjacent to the given position. **/
+    public boolean isAdjacent(int id, int row, int col) {
+        if (id == 0) return false;
+        long[] bits = claimed[id];
+        return row > 0 && get(bits, store.index(row-1, col))
+                || row < store.rows-1 && get(bits, store.index(row+1, col))
+                || col > 0 && get(bits, store.index(row, col-1))
+                || col < store.cols-1 && get(bits, store.index(row, col+1));
+    }
+
+    /** Unclaimed tiles adjacent to a tile claimed by the player id, as tile indexes. Do not modify. **/
+    public IntSet frontier(int id) {
+        return frontiers[id];
+    }
+
+    /** Claimed tiles of the player id as a bitboard indexed by tile index. Do not modify. **/
+    public long[] claimed(int id) {
+        return claimed[id];
+    }
+
+    /** Amount of tiles claimed by the player id, or by anyone for id 0. **/
+    public int count(int id) {
+        return counts[id];
+    }
+
+    private static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & 1L << index) != 0;
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    private static void clear(long[] bits, int index) {
+        bits[index >>> 6] &= ~(1L << index);
+    }
+}
@@ -1,96 +1,26 @@
 package lib.engine;
 
-import lib.Camera;
-import lib.Colors;
-import lib.DrawUtils;
-import lib.GuiConstants;
-import lib.elementboxes.TextElement;
-import lib.timing.AnimatedValue;
-
-import javax.swing.*;
-import java.awt.*;
-import java.util.Random;
-
 /** Any tile on a battle's map.
  * Units may be placed on them,
- * and they can be claimed by a certain team. **/
+ * and they can be claimed by a certain team.
+ * A Tile is only a lightweight view onto its position in the battle's TileStore, which holds all of its state;
+ * views are made on demand, and two views of the same position are equal. **/
 public class Tile {
     /** The battle that this tile is placed in. **/
     private final Battle battle;
+    /** The store that holds this tile's state. **/
+    private final TileStore store;
     /** Row and col position of this tile. **/
     public final int row, col;
-    /** The player that owns this tile (the color that is displayed on the ground). Null is no owner. **/
-    private Player owner;
-    /** The unit that is on this tile. Several units can be on land now owned by the unit's owner. Null is no unit. **/
-    private Unit unit;
-
-    /** Amount corners should be raised by corresponding to each type. (NW, SW, SE, NE) **/
-    private static final int[][] TYPE_CORNERS = {
-            {0, 0, 0, 0},
-            {1, 0, 0, 1},
-            {1, 1, 0, 0},
-            {0, 1, 1, 0},
-            {0, 0, 1, 1}
-    };
-
-    /** The type of tile this is. 0=flat, 1=north slope, 2=west slope, 3=south slope, 4=east slope. **/
-    public final int type;
-    /** Depth of this tile. Base is 0. **/
-    public final int depth;
-    /** Corners of this tile's base (Not the corners surrounding it). Used for gameplay and drawing. **/
-    private final Corners base;
-    /** Corners of the next lowest tiles around this tile when connected to other tiles. **/
-    private final Corners around;
-    /** Corners of the lowest tiles around this tile when connected to other tiles. **/
-    private final Corners lowest;
-    /** Polygon of this tile's borders on the screen. Reset each time this tile is drawn. Used for drawing and mouse click position grid position finding. **/
-    private final Polygon polygon;
-    /** Polygon of the eastern face. Used for mouse positional stuff **/
-    private final Polygon leftFace;
-    /** Polygon of the southern face. Used for mouse positional stuff **/
-    private final Polygon rightFace;
-    /** Center of this tile on the screen. Calculated on redraw. Used for various draws. **/
-    public final Point center;
-
-    private static final Random rng = new Random();
-
-    // Contesting
-    /** The player contesting this tile, if it is unclaimed. **/
-    private Player contestor;
-    /** The point value accumulated with this tile during contesting. **/
-    private int contestValue;
-    /** The timer that controls the delay for contesting and claiming this tile. **/
-    private Timer contestTimer;
-    /** Time in nanoseconds when this tile began to be contested. **/
-    private long contestStartTime;
-
-    // Display
-    /** Current internal target brightness of this unit. **/
-    private double brightness;
-    /** Displayed brightness which animates towards actual brightness. **/
-    private Number displayBrightness = 0;
+    /** Index of this tile in the battle's TileStore. **/
+    public final int index;
 
     protected Tile(Battle battle, int row, int col) {
         this.battle = battle;
+        this.store = battle.getStore();
         this.row = row;
         this.col = col;
-
-        type = rng.nextDouble() > 0.5 ? rng.nextInt(5) : 0;
-
-        depth = 21 - row - col*2 + (rng.nextDouble() > 0.25 ? 1 : 0);
-//        height = rng.nextInt(8);
-
-        int[] tc = TYPE_CORNERS[type];
-        base = new Corners(depth +tc[0], depth +tc[1], depth +tc[2], depth +tc[3]);
-        // These two Corners fields will be updated by the Battle's constructor shortly after this is created
-        around = new Corners();
-        lowest = new Corners();
-
-        polygon = new Polygon();
-        rightFace = new Polygon();
-        leftFace = new Polygon();
-
-        center = new Point();
+        this.index = store.index(row, col);
     }
 
     // ==== CONTESTING
@@ -98,27 +28,27 @@ public class Tile {
     public void contest(Player contestor){
         if (!contestable(contestor)) return;
 
-        // Subtract points from contestor
-        contestor.subtractPoints(contestCost());
+        // Subtract points from contestor, giving up if another thread spent them first
+        if (!contestor.subtractPoints(contestCost())) return;
 
         // Increment value by 1 and set this tile's new contestor, restarting contest timer if already started
-        contestValue += 1;
-        this.contestor = contestor;
-        contestStartTime = System.currentTimeMillis();
-        if (contestTimer == null) {
-            contestTimer = new Timer(GameConstants.CAPTURE_TIME, evt -> onCapture());
-            contestTimer.start();
-        } else {
-            contestTimer.restart();
+        Contest contest = getContest();
+        if (contest == null) {
+            contest = new Contest(battle, index);
+            store.setContest(index, battle.getContests().add(contest) + 1);
         }
+        contest.value += 1;
+        contest.contestor = contestor;
+        contest.startTime = battle.time();
+        battle.getScheduler().schedule(contest, GameConstants.CAPTURE_TIME);
     }
 
     /** If the player can contest this tile. **/
     public boolean contestable(Player player) {
         // If this tile is already claimed, cannot contest it
-        if (owner != null) return false;
+        if (isClaimed()) return false;
         // If the player is already contesting this tile, return false
-        if (contestor == player) return false;
+        if (getContestor() == player) return false;
         // If there is not an adjacent claimed tile in the battle, return false **/
         if (!battle.isAdjacentClaimedTile(player, row, col)) return false;
         // Return true only if the player has enough points
@@ -127,24 +57,31 @@ public class Tile {
 
     /** The current cost to contest this tile. **/
     public int contestCost() {
-        return contestValue+1;
+        return getContestValue()+1;
     }
 
     public void onCapture(){
-        contestTimer.stop();
-        owner = contestor;
-        contestor = null;
-        contestValue = 0;
+        Contest contest = getContest();
+        if (contest == null) return;
+        BattleRecorder recorder = battle.getRecorder();
+        if (recorder != null) recorder.captured(this, contest.contestor);
+        setOwner(contest.contestor);
+        battle.getScheduler().cancel(contest);
+        battle.getContests().remove(store.contest(index) - 1);
+        store.setContest(index, 0);
     }
 
     public void placeUnit(UnitData unitType) {
-        setUnit(new Unit(unitType, battle, owner));
+        setUnit(new Unit(unitType, battle, getOwner()));
     }
 
     /** Use the passed action as the passed player, using this tile. **/
     public boolean act(Player player, Action action) {
         if (action.usable(player, this)) {
+            BattleRecorder recorder = battle.getRecorder();
+            if (recorder != null) recorder.acted(player, action, this);
             action.act(player, this);
+            Unit unit = getUnit();
             if (unit != null) unit.resetCooldown();
             return true;
         } else {
@@ -152,273 +89,70 @@ public class Tile {
         }
     }
 
-    /** Take damage from another unit. If there is a unit here, it takes damage. If not, destroy this tile. **/
+    /** Take damage from another unit. If there is a unit here, it takes damage.
+     * If not, destroy this tile, making it unclaimed. An empty tile is worth no points to the attacker. **/
     public void takeDamage(Tile attacker, int amount) {
-        if (hasUnit()) {
+        Unit unit = getUnit();
+        if (unit != null) {
             unit.takeDamage(attacker, amount);
         } else {
-            attacker.owner.addPoints(unit.defeatValue());
-            owner = null;
+            setOwner(null);
         }
     }
 
-    // ==== DISPLAYING
-    public void drawUnit(Graphics g) {
-        if (hasUnit()) unit.draw(g, this);
-    }
-
-    /** Draw the borders for the base of this tile. See drawBase(Graphics, Point, etc...) for details. **/
-    public void drawBase(Graphics g, double x, double y) {
-        // Screen coordinates for corners
-        final int
-                bx = (int)x,
-                lx = (int)(x + Camera.zoom * Camera.rowXOffset),
-                rx = (int)(x + Camera.zoom * Camera.colXOffset),
-                fx = (int)(x + Camera.zoom * (Camera.rowXOffset + Camera.colXOffset)),
-
-                by = (int)(y - Camera.zoom * Camera.DEPTH_Y_OFFSET*base.back()),
-                ly = (int)(y + Camera.zoom * (Camera.rowYOffset - Camera.DEPTH_Y_OFFSET*base.left())),
-                ry = (int)(y + Camera.zoom * (Camera.colYOffset - Camera.DEPTH_Y_OFFSET*base.right())),
-                fy = (int)(y + Camera.zoom * (Camera.rowYOffset + Camera.colYOffset - Camera.DEPTH_Y_OFFSET*base.front())),
-
-                lay = (int)(y + Camera.zoom * (Camera.rowYOffset - Camera.DEPTH_Y_OFFSET*around.left())),
-                ray = (int)(y + Camera.zoom * (Camera.colYOffset - Camera.DEPTH_Y_OFFSET*around.right())),
-                fay = (int)(y + Camera.zoom * (Camera.rowYOffset + Camera.colYOffset - Camera.DEPTH_Y_OFFSET*around.front())),
-
-                lly = (int)(y + Camera.zoom * (Camera.rowYOffset - Camera.DEPTH_Y_OFFSET*lowest.left())),
-                rly = (int)(y + Camera.zoom * (Camera.colYOffset - Camera.DEPTH_Y_OFFSET*lowest.right())),
-                fly = (int)(y + Camera.zoom * (Camera.rowYOffset + Camera.colYOffset - Camera.DEPTH_Y_OFFSET*lowest.front()));
-
-        // Reset polygon and add tile corner points
-        // Block polygon access during so the mouse/other commands don't access the polygon while it's updating points
-        synchronized (polygon) {
-            polygon.reset();
-            polygon.addPoint(bx, by);
-            polygon.addPoint(lx, ly);
-            polygon.addPoint(fx, fy);
-            polygon.addPoint(rx, ry);
-        }
-        synchronized (leftFace) {
-            leftFace.reset();
-            leftFace.addPoint(lx, ly);
-            leftFace.addPoint(lx, lly);
-            leftFace.addPoint(fx, fly);
-            leftFace.addPoint(fx, fy);
-        }
-        synchronized (rightFace) {
-            rightFace.reset();
-            rightFace.addPoint(rx, ry);
-            rightFace.addPoint(rx, rly);
-            rightFace.addPoint(fx, fly);
-            rightFace.addPoint(fx, fy);
-        }
-        synchronized (center) {
-            center.move(DrawUtils.lerp(bx, fx, 0.5), DrawUtils.lerp(by, fy, 0.5));
-        }
-
-        // Fill base
-        g.setColor(getLandColor());
-        g.fillPolygon(polygon);
-
-        if (base.front() > lowest.front() || base.left() > lowest.left()) {
-            g.setColor(getLandColor());
-            g.fillPolygon(leftFace);
-        }
-
-        if (base.front() > lowest.front() || base.right() > lowest.right()) {
-            g.setColor(getLandColor());
-            g.fillPolygon(rightFace);
-        }
-
-
-        // If being contested, draw moving diagonal lines
-        if (contestor != null) {
-            g.setColor(contestor.color);
-            double cycle = (double)(System.currentTimeMillis()%GuiConstants.CONTEST_SHIFT_PERIOD)/GuiConstants.CONTEST_SHIFT_PERIOD;
-            for (double i = GuiConstants.CONTESTED_STEP*cycle; i < 1; i += GuiConstants.CONTESTED_STEP) {
-                // NW-NE-SW triangle
-                g.drawLine(DrawUtils.lerp(bx, lx, i), DrawUtils.lerp(by, ly, i), DrawUtils.lerp(bx, rx, i), DrawUtils.lerp(by, ry, i));
-                // SE-NE-SW triangle (Lerp backwards so lines move same direction)
-                g.drawLine(DrawUtils.lerp(lx, fx, i), DrawUtils.lerp(ly, fy, i), DrawUtils.lerp(rx, fx, i), DrawUtils.lerp(ry, fy, i));
-            }
-        }
-
-        // Northern and western border, always drawn
-        g.setColor(getColor());
-        g.drawLine(bx, by, lx, ly); // northern border
-        g.drawLine(bx, by, rx, ry); // western border
-
-        // southern border if both corners not shared on southern side
-        if (base.right() > lowest.right() || base.front() > lowest.front()) {
-            g.drawLine(rx, ry, fx, fy);
-        }
-        // eastern border if both corners not shared on eastern side
-        if (base.left() > lowest.left() || base.front() > lowest.front()) {
-            g.drawLine(lx, ly, fx, fy);
-        }
-
-        // left depth line if needed
-        if ((base.left() > around.left() && !(GuiConstants.JOIN_SIDE_FACES && around.left() == -1)) || base.left() == around.left() && !GuiConstants.JOIN_SIDE_FACES) {
-            g.drawLine(lx, ly, lx, GuiConstants.JOIN_SIDE_FACES ? lay : lly);
-        }
-        // front depth line if needed
-        if ((base.front() > around.front() && !(GuiConstants.JOIN_SIDE_FACES && around.front() == -1))) {
-            g.drawLine(fx, fy, fx, fay);
-        }
-        // right height line if needed
-        if ((base.right() > around.right() && !(GuiConstants.JOIN_SIDE_FACES && around.right() == -1)) || base.right() == around.right() && !GuiConstants.JOIN_SIDE_FACES) {
-            g.drawLine(rx, ry, rx, GuiConstants.JOIN_SIDE_FACES ? ray : rly);
-        }
-
-
-        // If this is an edge tile, draw the lower borders (south and east)
-        // southern ground line if needed
-        if (lowest.right() == -1 && lowest.front() == -1) {
-            g.drawLine(rx, rly, fx, fly);
-        }
-        // eastern ground line if needed
-        if (lowest.left() == -1 && lowest.front() == -1) {
-            g.drawLine(lx, lly, fx, fly);
-        }
-
-//        g.setColor(Color.GREEN);
-//        g.fillRect(bx-2, by-2, 4, 4);
-//        g.setColor(Color.CYAN);
-//        g.fillRect(lx-2, ly-2, 4, 4);
-//        g.setColor(Color.MAGENTA);
-//        g.fillRect(rx-2, ry-2, 4, 4);
-//        g.setColor(Color.YELLOW);
-//        g.fillRect(fx-2, fy-2, 4, 4);
-    }
-
-    /** Draw this tile on the given polygon with flat corners and no depth. Used for InfoElement. **/
-    public void drawOnPolygon(Graphics g, Polygon polygon) {
-        // Fill base
-        g.setColor(isClaimed() ? owner.landColor : Color.BLACK);
-        g.fillPolygon(polygon);
-
-        // If being contested, draw moving diagonal lines
-        if (beingContested()) {
-            g.setColor(contestor.color);
-            double cycle = (double) (System.currentTimeMillis() % GuiConstants.CONTEST_SHIFT_PERIOD) / GuiConstants.CONTEST_SHIFT_PERIOD;
-            for (double i = GuiConstants.CONTESTED_STEP * cycle; i < 1; i += GuiConstants.CONTESTED_STEP*1.5) {
-                // NW-NE-SW triangle
-                g.drawLine(
-                        DrawUtils.lerp(polygon.xpoints[0], polygon.xpoints[1], i),
-                        DrawUtils.lerp(polygon.ypoints[0], polygon.ypoints[1], i),
-                        DrawUtils.lerp(polygon.xpoints[0], polygon.xpoints[3], i),
-                        DrawUtils.lerp(polygon.ypoints[0], polygon.ypoints[3], i)
-                );
-                // SE-NE-SW triangle (Lerp backwards so lines move same direction)
-                g.drawLine(
-                        DrawUtils.lerp(polygon.xpoints[1], polygon.xpoints[2], i),
-                        DrawUtils.lerp(polygon.ypoints[1], polygon.ypoints[2], i),
-                        DrawUtils.lerp(polygon.xpoints[3], polygon.xpoints[2], i),
-                        DrawUtils.lerp(polygon.ypoints[3], polygon.ypoints[2], i)
-                );
-            }
-        }
-
-        // Draw border
-        g.setColor(isClaimed() ? owner.color : Color.WHITE);
-        g.drawPolygon(polygon);
-    }
-
-    /** Determine if a given position on the screen is within this tile on the screen with the given zoom (including side faces). **/
-    public boolean containsPoint(int x, int y) {
-        return polygon.contains(x, y) || leftFace.contains(x, y) || rightFace.contains(x, y);
-    }
-
-    /** Draw the borders for the base of this tile.
-     * x and y are the screen coordinates to draw at.
-     * nh, wh, sh and eh are the heights of the northern, western, southern and eastern tiles, respectively. **/
-    public void drawBase(Graphics g, Point pos){
-        drawBase(g, pos.x, pos.y);
-    }
-
-    /** Draw UI elements associated with this tile. **/
-    public void drawUI(Graphics g) {
-        if (beingContested()) {
-            DrawUtils.drawBar(g, center.x, center.y,
-                    (double)(System.currentTimeMillis()-contestStartTime)/GameConstants.CAPTURE_TIME, contestor.color);
-
-            DrawUtils.drawCenteredString(g,
-                    new Rectangle(center.x, center.y, 0, 0),
-                    contestValue+"",
-                    Color.WHITE,
-                    TextElement.GAME_FONT_SMALL);
-        } else if (hasUnit()) {
-            unit.drawUI(g, this);
-        }
-    }
-
-    // ==== BRIGHTNESS
-    /** Change to the specified brightness in n milliseconds. **/
-    public void changeBrightness(double amount, int speed){
-        brightness += amount;
-        displayBrightness = new AnimatedValue(speed, displayBrightness.doubleValue(), brightness);
-    }
-
     public String displayName() {
-        return hasUnit() ? unit.getData().displayName() : "Empty Tile";
+        return hasUnit() ? getUnit().getData().displayName() : "Empty Tile";
     }
 
-    /** Get the line color of this unit after factoring in brightness. **/
-    public Color getColor(){
-        return owner!=null ? brightenColor(owner.color, 1) : Color.WHITE;
+    // ==== INFO
+    public boolean isClaimed(){
+        return battle.getTerritory().isClaimed(index);
     }
 
-    /** Get the face color of this unit after factoring in brightness. **/
-    public Color getFaceColor(){
-        return brightenColor(owner.faceColor, 0.125);
-    }
+    public boolean beingContested() {return store.contest(index) != 0;}
 
-    /** Get the face color of this unit after factoring in brightness. **/
-    public static final Color OWNERLESS_LANDCOLOR = new Color(0, 0, 0, 255);
-    public Color getLandColor(){
-        return brightenColor(owner == null ? OWNERLESS_LANDCOLOR : owner.landColor, 0.25);
+    /** The contest running on this tile, or null if it is not being contested. **/
+    private Contest getContest() {
+        int slot = store.contest(index);
+        return slot == 0 ? null : battle.getContests().get(slot - 1);
     }
 
-    private Color brightenColor(Color base, double scale) {
-        double brightness = displayBrightness.doubleValue();
-        if (brightness == 0){
-            return base;
-        } else if (brightness > 0){
-            return Colors.blendColors(base, Color.WHITE, displayBrightness.doubleValue()*scale);
-        } else {
-            return Colors.blendColors(base, Color.BLACK, -displayBrightness.doubleValue()*scale);
-        }
+    public Player getContestor() {
+        Contest contest = getContest();
+        return contest == null ? null : contest.contestor;
     }
 
-    // ==== HOVERING
-    public void onCursorHover(){
-        changeBrightness(0.2, GuiConstants.CURSOR_SPEED);
+    /** Battle time in milliseconds this tile began to be contested. **/
+    public long getContestStartTime() {
+        Contest contest = getContest();
+        return contest == null ? 0 : contest.startTime;
     }
 
-    public void onCursorUnhover(){
-        changeBrightness(-0.2, GuiConstants.CURSOR_SPEED);
+    /** The point value accumulated with this tile during contesting. **/
+    public int getContestValue() {
+        Contest contest = getContest();
+        return contest == null ? 0 : contest.value;
     }
 
-    // ==== INFO
-    public boolean isClaimed(){
-        return owner != null;
+    /** Get the amount of milliseconds until this tile is contested. **/
+    public int getContestCooldown() {
+        return Math.max((int) (getContestStartTime() + GameConstants.CAPTURE_TIME - battle.time()), 0);
     }
 
-    public boolean beingContested() {return contestor != null;}
+    public boolean hasUnit() {return store.unit(index) != 0;}
 
-    public Player getContestor() {
-        return contestor;
+    public boolean ownedBy(Player player) {
+        return getOwner() == player;
     }
 
-    /** Get the amount of milliseconds until this tile is contested. **/
-    public int getContestCooldown() {
-        return Math.max((int) (contestStartTime + GameConstants.CAPTURE_TIME - System.currentTimeMillis()), 0);
+    /** If this tile is claimed and its owner's land connects it to one of their castles. **/
+    public boolean connectedToCastle() {
+        return battle.getConnectivity().connectedToCastle(index);
     }
 
-    public boolean hasUnit() {return unit != null;}
-
-    public boolean ownedBy(Player player) {
-        return owner == player;
+    /** Amount of tiles in the connected piece of land this tile is part of, or 0 if unclaimed. **/
+    public int territorySize() {
+        return battle.getConnectivity().componentSize(index);
     }
 
     // ==== ACCESSORS
@@ -428,51 +162,102 @@ public class Tile {
     }
 
     public Player getOwner() {
-        return owner;
+        return battle.getPlayer(store.owner(index));
     }
 
     public void setOwner(Player owner) {
-        this.owner = owner;
+        battle.setOwner(index, owner);
+    }
+
+    /** The type of tile this is. 0=flat, 1=north slope, 2=west slope, 3=south slope, 4=east slope. **/
+    public int getType() {
+        return store.type(index);
+    }
+
+    /** Depth of this tile. Base is 0. **/
+    public int getDepth() {
+        return store.depth(index);
+    }
+
+    /** Change this tile's depth and type. See Battle.setTerrain(). **/
+    public void setTerrain(int depth, int type) {
+        battle.setTerrain(row, col, depth, type);
     }
 
     public Unit getUnit() {
-        return unit;
+        int slot = store.unit(index);
+        return slot == 0 ? null : battle.getUnits().get(slot - 1);
     }
 
     public void setUnit(Unit unit) {
-        this.unit = unit;
-        unit.setTile(this);
+        removeUnit();
+        unit.attach(index);
+        store.setUnit(index, unit.slot + 1);
+        battle.getUnitIndex().add(unit.slot, row, col);
+        battle.getFlowFields().tileChanged(index);
+        if (unit.getData().isCastle()) battle.getConnectivity().castleChanged(index, store.owner(index), true);
         unit.resetCooldown();
+        unit.resumeEffects();
     }
 
     /** Remove the unit from this tile and return it. **/
     public Unit removeUnit() {
-        Unit tempUnit = unit;
-        unit = null;
+        Unit tempUnit = getUnit();
+        if (tempUnit != null) {
+            battle.getUnitIndex().remove(tempUnit.slot);
+            tempUnit.detach();
+            store.setUnit(index, 0);
+            battle.getFlowFields().tileChanged(index);
+            if (tempUnit.getData().isCastle()) battle.getConnectivity().castleChanged(index, store.owner(index), false);
+            tempUnit.cancelCooldown();
+        }
         return tempUnit;
     }
 
+    /** Packed corners of this tile's base. Same as getBase() without allocating; see Corners.pack(). **/
+    public long packedBase() {
+        return store.base(index);
+    }
+
+    /** Packed corners of the next lowest tiles around this tile. Same as getAround() without allocating. **/
+    public long packedAround() {
+        return store.around(index);
+    }
+
+    /** Packed corners of the lowest tiles around this tile. Same as getLowest() without allocating. **/
+    public long packedLowest() {
+        return store.lowest(index);
+    }
+
+    /** Corners of this tile's base (Not the corners surrounding it). Used for gameplay and drawing. **/
     public Corners getBase() {
-        return base;
+        return Corners.unpack(store.base(index));
     }
 
+    /** Corners of the next lowest tiles around this tile when connected to other tiles. **/
     public Corners getAround() {
-        return around;
+        return Corners.unpack(store.around(index));
     }
 
+    /** Corners of the lowest tiles around this tile when connected to other tiles. **/
     public Corners getLowest() {
-        return lowest;
+        return Corners.unpack(store.lowest(index));
     }
 
-    public Polygon getPolygon() {
-        return polygon;
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Tile)) return false;
+        Tile other = (Tile) o;
+        return battle == other.battle && index == other.index;
     }
 
-    public Polygon getLeftFace() {
-        return leftFace;
+    @Override
+    public int hashCode() {
+        return index;
     }
 
-    public Polygon getRightFace() {
-        return rightFace;
+    @Override
+    public String toString() {
+        return "Tile(" + row + ", " + col + ")";
     }
 }
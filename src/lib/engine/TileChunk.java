@@ -0,0 +1,84 @@
+package lib.engine;
+
+import java.nio.ByteBuffer;
+
+/** A square block of a TileStore's tiles, stored as parallel primitive arrays indexed by local position (r*SIZE + c).
+ * Chunks are generated when first accessed and can be paged out to disk and back as a whole. **/
+public class TileChunk {
+    /** Bits of a row or column within a chunk. **/
+    public static final int BITS = 5;
+    /** Width and height of a chunk in tiles. **/
+    public static final int SIZE = 1 << BITS;
+    /** Amount of tiles in a chunk. **/
+    public static final int TILES = SIZE * SIZE;
+    /** Bytes one chunk takes when paged out: a header followed by each array. **/
+    public static final int PAGE_BYTES = Long.BYTES + TILES * TileStore.bytesPerTile();
+
+    /** Index of this chunk in its store. **/
+    public final int id;
+    /** Row and col of this chunk's first tile. **/
+    public final int originRow, originCol;
+
+    final byte[] owner = new byte[TILES];
+    final byte[] type = new byte[TILES];
+    final short[] depth = new short[TILES];
+    final long[] around = new long[TILES];
+    final long[] lowest = new long[TILES];
+    final int[] unit = new int[TILES];
+    final int[] contest = new int[TILES];
+
+    /** If around and lowest have been calculated for this chunk's tiles. **/
+    boolean cornersReady;
+    /** Value of the store's access clock when this chunk was last used, for LRU eviction. **/
+    long lastUsed;
+
+    TileChunk(int id, int originRow, int originCol) {
+        this.id = id;
+        this.originRow = originRow;
+        this.originCol = originCol;
+    }
+
+    /** Local index of a row and column within a chunk. **/
+    public static int local(int r, int c) {
+        return r << BITS | c;
+    }
+
+    public void setType(int local, int type) { this.type[local] = (byte) type; }
+    public void setDepth(int local, int depth) { this.depth[local] = (short) depth; }
+
+    /** Write this chunk to a page at the buffer's current position. **/
+    void writeTo(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putLong(cornersReady ? 1 : 0);
+        buffer.put(owner);
+        buffer.put(type);
+        buffer.asShortBuffer().put(depth);
+        buffer.position(buffer.position() + TILES * Short.BYTES);
+        buffer.asLongBuffer().put(around);
+        buffer.position(buffer.position() + TILES * Long.BYTES);
+        buffer.asLongBuffer().put(lowest);
+        buffer.position(buffer.position() + TILES * Long.BYTES);
+        buffer.asIntBuffer().put(unit);
+        buffer.position(buffer.position() + TILES * Integer.BYTES);
+        buffer.asIntBuffer().put(contest);
+        buffer.position(start + PAGE_BYTES);
+    }
+
+    /** Read this chunk from a page at the buffer's current position. **/
+    void readFrom(ByteBuffer buffer) {
+        int start = buffer.position();
+        cornersReady = buffer.getLong() != 0;
+        buffer.get(owner);
+        buffer.get(type);
+        buffer.asShortBuffer().get(depth);
+        buffer.position(buffer.position() + TILES * Short.BYTES);
+        buffer.asLongBuffer().get(around);
+        buffer.position(buffer.position() + TILES * Long.BYTES);
+        buffer.asLongBuffer().get(lowest);
+        buffer.position(buffer.position() + TILES * Long.BYTES);
+        buffer.asIntBuffer().get(unit);
+        buffer.position(buffer.position() + TILES * Integer.BYTES);
+        buffer.asIntBuffer().get(contest);
+        buffer.position(start + PAGE_BYTES);
+    }
+}
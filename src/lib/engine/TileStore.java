@@ -0,0 +1,409 @@
+package lib.engine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Struct-of-arrays storage for every tile of a battle's map.
+ * Tiles are addressed by index; Tile objects are only lightweight views onto a position in this store.
+ * About 28 bytes are stored per tile, compared to hundreds for a tile kept as objects.
+ *
+ * The map is split into TileChunks, and indexes are chunk-major so a tile's chunk is found with a shift.
+ * Chunks are generated by the TerrainGenerator when first accessed. If paging is enabled, trim() writes the
+ * least recently used chunks out to a memory-mapped file while more are resident than the memory budget allows,
+ * and they are read back in when next accessed. **/
+public class TileStore {
+    /** Amount the corners of each tile type are raised by. (NW, SW, SE, NE) **/
+    static final int[][] TYPE_CORNERS = {
+            {0, 0, 0, 0},
+            {1, 0, 0, 1},
+            {1, 1, 0, 0},
+            {0, 1, 1, 0},
+            {0, 0, 1, 1}
+    };
+    /** out of bounds corners, all -1 **/
+    private static final long OOB = Corners.pack(-1, -1, -1, -1);
+    /** Bytes of the paging file mapped at once. **/
+    private static final long SEGMENT_BYTES = (long) TileChunk.PAGE_BYTES * 2048;
+
+    /** Size of the stored map. **/
+    public final int rows, cols;
+    /** Amount of chunks across and down the map. **/
+    private final int chunkRows, chunkCols;
+    /** Fills in the terrain of each chunk when first accessed. **/
+    private final TerrainGenerator generator;
+
+    /** Resident chunks by id. Null if not generated yet or paged out. **/
+    private final TileChunk[] chunks;
+    /** If each chunk has a page in the paging file. **/
+    private final boolean[] paged;
+    /** Amount of chunks currently resident. **/
+    private int resident;
+    /** Incremented on each chunk access, used to find the least recently used chunk. **/
+    private long clock;
+    /** The chunk accessed last, checked first since accesses are usually close together. **/
+    private TileChunk last;
+
+    /** Most chunks that stay resident after trim(). **/
+    private int maxResident = Integer.MAX_VALUE;
+    /** File chunks are paged out to, null if paging is disabled. **/
+    private FileChannel pageFile;
+    /** Mapped regions of the paging file, mapped as needed. **/
+    private MappedByteBuffer[] segments;
+
+    public TileStore(int rows, int cols, TerrainGenerator generator) {
+        this.rows = rows;
+        this.cols = cols;
+        this.generator = generator;
+        chunkRows = (rows + TileChunk.SIZE - 1) >> TileChunk.BITS;
+        chunkCols = (cols + TileChunk.SIZE - 1) >> TileChunk.BITS;
+        chunks = new TileChunk[chunkRows * chunkCols];
+        paged = new boolean[chunks.length];
+    }
+
+    /** Page chunks out to the given file when more than budget bytes of chunks are resident. **/
+    public void enablePaging(Path file, long budget) throws IOException {
+        pageFile = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments = new MappedByteBuffer[(int) (((long) chunks.length * TileChunk.PAGE_BYTES + SEGMENT_BYTES - 1) / SEGMENT_BYTES)];
+        maxResident = (int) Math.max(1, Math.min(Integer.MAX_VALUE, budget / TileChunk.PAGE_BYTES));
+        trim();
+    }
+
+    /** Page out least recently used chunks until no more than the budget is resident. Does nothing if paging is disabled.
+     * Only called between engine operations, so a chunk is never paged out while in use. **/
+    public void trim() {
+        while (resident > maxResident) {
+            TileChunk oldest = null;
+            for (TileChunk chunk : chunks) {
+                if (chunk != null && (oldest == null || chunk.lastUsed < oldest.lastUsed)) oldest = chunk;
+            }
+            pageOut(oldest);
+        }
+    }
+
+    private void pageOut(TileChunk chunk) {
+        chunk.writeTo(page(chunk.id));
+        paged[chunk.id] = true;
+        chunks[chunk.id] = null;
+        if (last == chunk) last = null;
+        resident--;
+    }
+
+    /** Buffer positioned at the start of a chunk's page in the paging file. **/
+    private ByteBuffer page(int id) {
+        long offset = (long) id * TileChunk.PAGE_BYTES;
+        int segment = (int) (offset / SEGMENT_BYTES);
+        if (segments[segment] == null) {
+            try {
+                long start = segment * SEGMENT_BYTES;
+                long length = Math.min(SEGMENT_BYTES, (long) chunks.length * TileChunk.PAGE_BYTES - start);
+                segments[segment] = pageFile.map(FileChannel.MapMode.READ_WRITE, start, length);
+                segments[segment].order(ByteOrder.nativeOrder());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not map tile paging file", e);
+            }
+        }
+        ByteBuffer buffer = segments[segment].duplicate().order(ByteOrder.nativeOrder());
+        buffer.position((int) (offset - segment * SEGMENT_BYTES));
+        return buffer;
+    }
+
+    /** The chunk a tile index is in, generating or paging it in if needed. Does not calculate corners. **/
+    private TileChunk chunk(int index) {
+        int id = index >>> (TileChunk.BITS * 2);
+        TileChunk chunk = last;
+        if (chunk == null || chunk.id != id) {
+            chunk = chunks[id];
+            if (chunk == null) chunk = load(id);
+            last = chunk;
+        }
+        chunk.lastUsed = ++clock;
+        return chunk;
+    }
+
+    /** The chunk a tile index is in, with its corners calculated. **/
+    private TileChunk cornerChunk(int index) {
+        TileChunk chunk = chunk(index);
+        if (!chunk.cornersReady) {
+            loadNeighbours(chunk.id);
+            fillCorners(chunk);
+        }
+        return chunk;
+    }
+
+    /** Make sure the chunk and the 8 chunks around it are resident, so base corners can be peeked around it. **/
+    private void loadNeighbours(int id) {
+        int chunkRow = id / chunkCols, chunkCol = id % chunkCols;
+        for (int r = Math.max(chunkRow-1, 0); r <= Math.min(chunkRow+1, chunkRows-1); r++) {
+            for (int c = Math.max(chunkCol-1, 0); c <= Math.min(chunkCol+1, chunkCols-1); c++) {
+                if (chunks[r * chunkCols + c] == null) load(r * chunkCols + c);
+            }
+        }
+    }
+
+    /** Calculate the corners of every tile in a chunk. The chunks around it must be resident. **/
+    private void fillCorners(TileChunk chunk) {
+        for (int r = 0; r < TileChunk.SIZE; r++) {
+            for (int c = 0; c < TileChunk.SIZE; c++) {
+                int row = chunk.originRow + r, col = chunk.originCol + c;
+                if (row < rows && col < cols) fillCorners(chunk, TileChunk.local(r, c), row, col);
+            }
+        }
+        chunk.cornersReady = true;
+    }
+
+    /** Generate every chunk that has not been generated yet, in parallel on the given pool, then calculate their corners.
+     * Only reads and writes chunk arrays directly, so nothing else may use this store until it returns.
+     * Chunks are paged out again by the next trim() if a budget is set. **/
+    public void generateAll(ForkJoinPool pool) {
+        pool.invoke(new ChunkTask(0, chunks.length, false));
+        resident = 0;
+        for (TileChunk chunk : chunks) {
+            if (chunk != null) resident++;
+        }
+        pool.invoke(new ChunkTask(0, chunks.length, true));
+    }
+
+    /** Fork/join task over a range of chunk ids that either generates terrain or calculates corners. **/
+    @SuppressWarnings("serial")
+    private class ChunkTask extends RecursiveAction {
+        /** Ranges of at most this many chunks are handled without splitting further. **/
+        private static final int THRESHOLD = 4;
+        private final int from, to;
+        private final boolean corners;
+
+        ChunkTask(int from, int to, boolean corners) {
+            this.from = from;
+            this.to = to;
+            this.corners = corners;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ChunkTask(from, mid, corners), new ChunkTask(mid, to, corners));
+                return;
+            }
+            for (int id = from; id < to; id++) {
+                if (corners) {
+                    if (chunks[id] != null && !chunks[id].cornersReady) fillCorners(chunks[id]);
+                } else if (chunks[id] == null) {
+                    chunks[id] = paged[id] ? readPage(id) : generate(id);
+                }
+            }
+        }
+    }
+
+    private TileChunk load(int id) {
+        TileChunk chunk = paged[id] ? readPage(id) : generate(id);
+        chunks[id] = chunk;
+        resident++;
+        return chunk;
+    }
+
+    private TileChunk generate(int id) {
+        TileChunk chunk = new TileChunk(id, (id / chunkCols) << TileChunk.BITS, (id % chunkCols) << TileChunk.BITS);
+        generator.generate(this, chunk);
+        return chunk;
+    }
+
+    private TileChunk readPage(int id) {
+        TileChunk chunk = new TileChunk(id, (id / chunkCols) << TileChunk.BITS, (id % chunkCols) << TileChunk.BITS);
+        chunk.readFrom(page(id));
+        return chunk;
+    }
+
+    /** Recalculate the around and lowest corners of a tile from its own and its 8 neighbours' base corners. **/
+    public void updateCorners(int row, int col) {
+        int index = index(row, col);
+        TileChunk chunk = chunk(index);
+        loadNeighbours(chunk.id);
+        fillCorners(chunk, local(index), row, col);
+    }
+
+    /** Calculate the corners of one tile. The chunks around it must be resident. **/
+    private void fillCorners(TileChunk chunk, int local, int row, int col) {
+        long base = peekBase(row, col),
+                north = peekBase(row, col-1),
+                northwest = peekBase(row-1, col-1),
+                west = peekBase(row-1, col),
+                southwest = peekBase(row-1, col+1),
+                south = peekBase(row, col+1),
+                southeast = peekBase(row+1, col+1),
+                east = peekBase(row+1, col),
+                northeast = peekBase(row+1, col-1);
+
+        chunk.around[local] = Corners.pack(
+                nextLowestCorner(nw(base), ne(north), se(northwest), sw(west)),
+                nextLowestCorner(ne(base), nw(east), sw(northeast), se(north)),
+                nextLowestCorner(se(base), ne(south), nw(southeast), sw(east)),
+                nextLowestCorner(sw(base), se(west), ne(southwest), nw(south))
+        );
+        chunk.lowest[local] = Corners.pack(
+                lowestCorner(nw(base), ne(north), se(northwest), sw(west)),
+                lowestCorner(ne(base), nw(east), sw(northeast), se(north)),
+                lowestCorner(se(base), ne(south), nw(southeast), sw(east)),
+                lowestCorner(sw(base), se(west), ne(southwest), nw(south))
+        );
+    }
+
+    /** Base corners of a tile read straight from its resident chunk, without touching the access clock. OOB outside the map. **/
+    private long peekBase(int row, int col) {
+        if (!withinBounds(row, col)) return OOB;
+        int index = index(row, col);
+        return base(chunks[index >>> (TileChunk.BITS * 2)], local(index));
+    }
+
+    // Corner accessors for packed corners, matching the accessors on Corners
+    private static int nw(long corners) { return Corners.lane(corners, 0); }
+    private static int ne(long corners) { return Corners.lane(corners, 1); }
+    private static int se(long corners) { return Corners.lane(corners, 2); }
+    private static int sw(long corners) { return Corners.lane(corners, 3); }
+
+    /** Return the next lowest connected corner from the base. (Highest number that is not above base) **/
+    private static int nextLowestCorner(int base, int... corners) {
+        int highest = -1;
+        for (int corner : corners) {
+            if (corner > highest && corner <= base) {
+                highest = corner;
+            }
+        }
+        return highest;
+    }
+
+    /** Return the lowest connected corner of the four. **/
+    private static int lowestCorner(int base, int c1, int c2, int c3) {
+        return Math.min(Math.min(base, c1), Math.min(c2, c3));
+    }
+
+    /** Return the lowest connected corner of the four. **/
+    private static int lowestUngroundedCorner(int base, int... corners) {
+        int lowest = base;
+        for (int corner : corners) {
+            if (corner < lowest && corner != -1) {
+                lowest = corner;
+            }
+        }
+        return lowest;
+    }
+
+    /** Index of a row and column in this store. **/
+    public int index(int row, int col) {
+        int id = (row >> TileChunk.BITS) * chunkCols + (col >> TileChunk.BITS);
+        return id << (TileChunk.BITS * 2) | TileChunk.local(row & (TileChunk.SIZE - 1), col & (TileChunk.SIZE - 1));
+    }
+
+    /** Position of an index within its chunk. **/
+    private static int local(int index) {
+        return index & (TileChunk.TILES - 1);
+    }
+
+    /** Row of a tile index. **/
+    public int row(int index) {
+        return ((index >>> (TileChunk.BITS * 2)) / chunkCols) << TileChunk.BITS | (local(index) >> TileChunk.BITS);
+    }
+
+    /** Column of a tile index. **/
+    public int col(int index) {
+        return ((index >>> (TileChunk.BITS * 2)) % chunkCols) << TileChunk.BITS | (local(index) & (TileChunk.SIZE - 1));
+    }
+
+    /** Returns true if the passed coordinate is within the bounds of the map. **/
+    public boolean withinBounds(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    /** One past the highest tile index. Includes padding in the chunks along the bottom and right edges. **/
+    public int capacity() {
+        return chunks.length * TileChunk.TILES;
+    }
+
+    /** Close the paging file, if there is one. **/
+    public void close() throws IOException {
+        if (pageFile != null) pageFile.close();
+    }
+
+    /** Set the owner of every tile set in a bitboard indexed by tile index, a chunk at a time. **/
+    public void loadOwners(long[] board, int owner) {
+        int words = TileChunk.TILES >>> 6;
+        for (int id = 0; id < chunks.length; id++) {
+            TileChunk chunk = null;
+            for (int word = 0; word < words; word++) {
+                long bits = board[id * words + word];
+                if (bits == 0) continue;
+                if (chunk == null) chunk = chunk(id << (TileChunk.BITS * 2));
+                for (; bits != 0; bits &= bits - 1) chunk.owner[word << 6 | Long.numberOfTrailingZeros(bits)] = (byte) owner;
+            }
+        }
+    }
+
+    /** Amount of chunks the map is split into. **/
+    public int chunkCount() {
+        return chunks.length;
+    }
+
+    /** If a chunk has been generated, whether it is resident or paged out. Chunks that have not are exactly as the generator makes them. **/
+    public boolean isGenerated(int id) {
+        return chunks[id] != null || paged[id];
+    }
+
+    /** Write a chunk's tile types, then depths, to the buffer as raw columns. Pages the chunk in if needed. **/
+    public void writeTerrain(int id, ByteBuffer buffer) {
+        TileChunk chunk = chunk(id << (TileChunk.BITS * 2));
+        buffer.put(chunk.type);
+        buffer.asShortBuffer().put(chunk.depth);
+        buffer.position(buffer.position() + TileChunk.TILES * Short.BYTES);
+    }
+
+    /** Amount of chunks currently resident in memory. **/
+    public int residentChunks() {
+        return resident;
+    }
+
+    /** Amount of bytes stored per tile. **/
+    public static int bytesPerTile() {
+        return Byte.BYTES * 2 + Short.BYTES + Long.BYTES * 2 + Integer.BYTES * 2;
+    }
+
+    /** Packed corners of a tile's base, derived from its depth and type. **/
+    public long base(int index) {
+        return base(chunk(index), local(index));
+    }
+
+    private static long base(TileChunk chunk, int local) {
+        int d = chunk.depth[local];
+        int[] tc = TYPE_CORNERS[chunk.type[local]];
+        return Corners.pack(d + tc[0], d + tc[1], d + tc[2], d + tc[3]);
+    }
+
+    // ======== ACCESSORS
+    public int owner(int index) { return chunk(index).owner[local(index)]; }
+    public void setOwner(int index, int owner) { chunk(index).owner[local(index)] = (byte) owner; }
+
+    public int type(int index) { return chunk(index).type[local(index)]; }
+    public void setType(int index, int type) { chunk(index).type[local(index)] = (byte) type; }
+
+    public int depth(int index) { return chunk(index).depth[local(index)]; }
+    public void setDepth(int index, int depth) { chunk(index).depth[local(index)] = (short) depth; }
+
+    public long around(int index) { return cornerChunk(index).around[local(index)]; }
+    public void setAround(int index, long around) { cornerChunk(index).around[local(index)] = around; }
+
+    public long lowest(int index) { return cornerChunk(index).lowest[local(index)]; }
+    public void setLowest(int index, long lowest) { cornerChunk(index).lowest[local(index)] = lowest; }
+
+    public int unit(int index) { return chunk(index).unit[local(index)]; }
+    public void setUnit(int index, int unit) { chunk(index).unit[local(index)] = unit; }
+
+    public int contest(int index) { return chunk(index).contest[local(index)]; }
+    public void setContest(int index, int contest) { chunk(index).contest[local(index)] = contest; }
+}
@@ -0,0 +1,148 @@
+package lib.engine;
+
+/** Hashed hierarchical timing wheel holding ScheduledTasks by the tick they fire on.
+ * Each level has SLOTS slots; a slot on level n covers SLOTS^n ticks. Tasks are linked directly into their slot through
+ * their own prev/next fields, so adding, removing and moving a task is O(1) and never allocates.
+ * When the lowest level wraps around, the next slot of the level above is cascaded down into it. **/
+public class TimingWheel {
+    /** Bits of the tick used to index a slot on each level. **/
+    private static final int SLOT_BITS = 6;
+    /** Amount of slots on each level. **/
+    public static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    /** Amount of levels. With 64 slots and 20ms ticks, 4 levels cover about 93 hours before tasks are clamped to the top level. **/
+    public static final int LEVELS = 4;
+    /** Furthest amount of ticks ahead that can be placed exactly. Tasks further out wait in the top level and are re-placed on cascade. **/
+    private static final long MAX_SPAN = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    /** First task in each slot, indexed by level*SLOTS + slot. **/
+    private final ScheduledTask[] heads;
+    /** Last task in each slot, indexed by level*SLOTS + slot. **/
+    private final ScheduledTask[] tails;
+    /** The current tick of this wheel. **/
+    private long now;
+    /** Amount of tasks in this wheel. **/
+    private int size;
+
+    public TimingWheel() {
+        heads = new ScheduledTask[LEVELS * SLOTS];
+        tails = new ScheduledTask[LEVELS * SLOTS];
+    }
+
+    /** Add a task to the wheel at its deadline. The deadline must be after the current tick, and the task must not already be in a wheel. **/
+    public void add(ScheduledTask task) {
+        link(task, slotFor(task.deadline));
+        size++;
+    }
+
+    /** Remove a task from the wheel. The task must currently be in this wheel. **/
+    public void remove(ScheduledTask task) {
+        unlink(task);
+        size--;
+    }
+
+    /** Advance the wheel by one tick, cascading higher levels when the lower level wraps.
+     * Call poll() afterwards to take the tasks due on the new tick one at a time.
+     * @return the new current tick **/
+    public long advance() {
+        now++;
+        // Cascade each level whose slot index wrapped around to zero, highest level first
+        int level = 0;
+        while (level < LEVELS - 1 && ((now >>> (SLOT_BITS * level)) & SLOT_MASK) == 0) {
+            level++;
+        }
+        for (int l = level; l > 0; l--) {
+            cascade(l);
+        }
+        return now;
+    }
+
+    /** Take the next task that is due on the current tick out of the wheel, or null if there are none left. **/
+    public ScheduledTask poll() {
+        int slot = (int) (now & SLOT_MASK);
+        ScheduledTask task = heads[slot];
+        if (task == null) return null;
+        unlink(task);
+        size--;
+        return task;
+    }
+
+    /** Re-place every task in the current slot of the given level, which moves them to lower levels. **/
+    private void cascade(int level) {
+        int slot = level * SLOTS + (int) ((now >>> (SLOT_BITS * level)) & SLOT_MASK);
+        ScheduledTask task = heads[slot];
+        heads[slot] = null;
+        tails[slot] = null;
+        while (task != null) {
+            ScheduledTask next = task.next;
+            task.prev = null;
+            task.next = null;
+            link(task, slotFor(task.deadline));
+            task = next;
+        }
+    }
+
+    /** Find the slot a deadline belongs in relative to the current tick. **/
+    private int slotFor(long deadline) {
+        long delta = deadline - now;
+        if (delta > MAX_SPAN) {
+            // Too far out to place exactly; park it in the top level at the furthest slot, it will be re-placed when that slot cascades
+            deadline = now + MAX_SPAN;
+            delta = MAX_SPAN;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        return level * SLOTS + (int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+    }
+
+    private void link(ScheduledTask task, int slot) {
+        task.slot = slot;
+        task.prev = tails[slot];
+        task.next = null;
+        if (tails[slot] == null) {
+            heads[slot] = task;
+        } else {
+            tails[slot].next = task;
+        }
+        tails[slot] = task;
+    }
+
+    private void unlink(ScheduledTask task) {
+        int slot = task.slot;
+        if (task.prev == null) heads[slot] = task.next; else task.prev.next = task.next;
+        if (task.next == null) tails[slot] = task.prev; else task.next.prev = task.prev;
+        task.prev = null;
+        task.next = null;
+    }
+
+    // ==== SNAPSHOTS
+    /** First task in a slot, indexed by level*SLOTS + slot. Follow ScheduledTask.next for the rest, in the order they were linked. **/
+    ScheduledTask head(int slot) {
+        return heads[slot];
+    }
+
+    /** Link a task to the end of a slot directly, to rebuild a wheel exactly as it was saved. **/
+    void restore(ScheduledTask task, int slot) {
+        link(task, slot);
+        size++;
+    }
+
+    /** Move an empty wheel to a tick. **/
+    void setNow(long now) {
+        if (size != 0) throw new IllegalStateException("Cannot move a wheel that has tasks in it");
+        this.now = now;
+    }
+
+    // ======== ACCESSORS
+    /** The current tick of this wheel. **/
+    public long getNow() {
+        return now;
+    }
+
+    /** Amount of tasks in this wheel. **/
+    public int size() {
+        return size;
+    }
+}
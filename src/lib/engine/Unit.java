@@ -1,79 +1,171 @@
 package lib.engine;
 
-import lib.Camera;
-import lib.Colors;
-import lib.DrawUtils;
-
-import javax.swing.*;
-import java.awt.*;
-
-/** A unit that can exist on top of a tile in a battle. **/
+import lib.data.Actions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/** A unit that can exist on top of a tile in a battle.
+ * While on the map, a unit is a handle onto its slot in the battle's UnitStore, which holds its state in columns;
+ * off the map it keeps that state itself until it is placed again. Handles stay the same object as a unit moves.
+ * Its hp, atk and speed are its own values changed by the effects on it. The changes from effects are only
+ * recomputed the first time a stat is read after the effects changed, so reading stats is free however many effects stack. **/
 public class Unit {
     /** The battle this unit is in. **/
     private final Battle battle;
-    /** The tile this unit is currently on. **/
-    private Tile tile;
+    /** The battle's unit columns, holding this unit's state while it is on the map. **/
+    private final UnitStore units;
     /** The type of unit this is. **/
     private final UnitData data;
     /** The player that owns and controls this unit (not the tile it is on). **/
     private final Player owner;
-
-    /** Timer before this unit can act again. **/
-    private final Timer actionTimer;
-    /** Time since this user last acted or began becoming ready. **/
-    private long actionStartTime;
-
-    /** Amount of damage this unit can take before destroyed. (No max) **/
-    private int hp;
-    /** Amount of damage this unit deals when attacking. **/
-    private int atk;
-    /** Amount this fighter's act speed is increased by. 1 is 100%. **/
-    private double speed = 1.0;
-
-    /** Whether this fighter is currently ready. **/
-    private boolean ready;
-
-    /** If this unit is currently auto acting. (Configurable by the player, if this unit type is not mustAutoAct) **/
-    private boolean autoAct;
-
-    /** The tile this unit is targeting for its action. If auto attacking this may be used.
-     * If manual, this is set before attacking by moving the cursor to attack a unit. **/
-    private Tile target;
+    /** Slot of this unit in the battle's UnitStore while it is on a tile, -1 otherwise. **/
+    int slot = -1;
+    /** State of this unit while it is off the map. Null if it was never taken off the map, leaving its type's defaults. **/
+    private Parked parked;
+
+    /** Task fired by the battle's scheduler when this unit becomes ready again. **/
+    private final ScheduledTask readyTask = new ScheduledTask() {
+        @Override
+        public void run() {
+            onReady();
+        }
+    };
+    /** Effects on this unit. Null until the first is added. **/
+    private List<AppliedEffect> effects;
+    /** Whether the effects changed since the stat changes below were last computed. **/
+    private boolean statsDirty;
+    /** Whether an hp bonus was removed since then, which must leave the unit with at least 1 hp. **/
+    private boolean hpBonusLost;
+    /** Stat changes from all effects on this unit, cached until the effects change. **/
+    private int hpBonus, atkBonus;
+    private double speedScale = 1.0;
 
     public Unit(UnitData data, Battle battle, Player owner) {
         this.data = data;
         this.battle = battle;
+        this.units = battle.getUnits();
         this.owner = owner;
+    }
+
+    // ==== STORAGE
+    /** This unit's state while off the map. **/
+    private static final class Parked {
+        /** Amount of damage this unit can take before destroyed, not counting effects. (No max) **/
+        int hp;
+        /** Amount of damage this unit deals when attacking, not counting effects. **/
+        int atk;
+        /** Amount this fighter's act speed is increased by, not counting effects. 1 is 100%. **/
+        double speed = 1.0;
+        /** Battle time (in milliseconds) this unit last acted or began becoming ready. **/
+        long actionStartTime;
+        /** UnitStore.READY, AUTO_ACT and WALKING bits. **/
+        int flags;
+        /** Index + 1 of the tile this unit is targeting, 0 for none. **/
+        int target;
+
+        Parked(UnitData data) {
+            hp = data.hp;
+            atk = data.atk;
+            flags = data.isDefaultAutoAct() ? UnitStore.AUTO_ACT : 0;
+        }
+    }
+
+    /** State kept while off the map, created with the type's defaults when first needed. **/
+    private Parked parked() {
+        if (parked == null) parked = new Parked(data);
+        return parked;
+    }
+
+    /** Move this unit's state into a slot of the unit columns, on the tile with the given index. Used by Tile.setUnit(). **/
+    void attach(int tileIndex) {
+        slot = units.add(this, tileIndex);
+        if (parked == null) {
+            units.setHp(slot, data.hp);
+            units.setAtk(slot, data.atk);
+            units.setSpeed(slot, 1.0);
+            units.setActionStart(slot, 0);
+            units.setFlags(slot, data.isDefaultAutoAct() ? UnitStore.AUTO_ACT : 0);
+            units.setTarget(slot, 0);
+        } else {
+            units.setHp(slot, parked.hp);
+            units.setAtk(slot, parked.atk);
+            units.setSpeed(slot, parked.speed);
+            units.setActionStart(slot, parked.actionStartTime);
+            units.setFlags(slot, parked.flags);
+            units.setTarget(slot, parked.target);
+            parked = null;
+        }
+    }
+
+    /** Move this unit's state out of its slot, and free the slot. Used by Tile.removeUnit(). **/
+    void detach() {
+        Parked state = parked();
+        state.hp = units.hp(slot);
+        state.atk = units.atk(slot);
+        state.speed = units.speed(slot);
+        state.actionStartTime = units.actionStart(slot);
+        state.flags = units.flags(slot);
+        state.target = units.target(slot);
+        units.remove(slot);
+        slot = -1;
+    }
 
-        hp = data.hp;
-        atk = data.atk;
+    private int flags() {
+        return slot != -1 ? units.flags(slot) : parked().flags;
+    }
 
-        autoAct = data.isDefaultAutoAct();
+    private void setFlag(int flag, boolean set) {
+        int flags = set ? flags() | flag : flags() & ~flag;
+        if (slot != -1) units.setFlags(slot, flags);
+        else parked().flags = flags;
+    }
 
-        int delay = getDelay();
-        actionTimer = new Timer(delay, e -> onReady());
-        actionTimer.setRepeats(data.isMustAutoAct());
+    private void setBaseHp(int hp) {
+        if (slot != -1) units.setHp(slot, hp);
+        else parked().hp = hp;
     }
 
-    /** Set this unit to ready when its action timer is done. Uses the first action if this is an auto-acting unit. **/
+    // ==== ACTIONS
+
+    /** Set this unit to ready when its cooldown is done. Uses the first action if this is an auto-acting unit. **/
     public void onReady(){
-        ready = true;
+        setReady(true);
+        if (isWalking()) {
+            // take the next step towards the target; if the way is blocked, stop and carry on as usual
+            if (getTile().act(owner, Actions.MOVE)) return;
+            setWalking(false);
+            setTarget(null);
+        }
         if (data.isMustAutoAct()){
             autoAct();
-            ready = false;
-            actionStartTime = System.currentTimeMillis();
-            // timer repeats if this unit is auto acting, so the timer has already repeated, so no need to restart timer
+            // acting already restarted the cooldown; if the action couldn't be used, wait another full delay
+            if (!readyTask.isScheduled()) resetCooldown();
+        } else if (isAutoAct() && data.hasAction()) {
+            // stay ready, and try again later (e.g. until an enemy comes in range)
+            if (!autoAct()) battle.getScheduler().schedule(readyTask, autoActRetry());
         }
     }
 
+    /** Time until an idle auto-acting unit tries to act again: as long as it has been idle, so the tries back off
+     * exponentially from one tick up to GameConstants.MAX_AUTO_ACT_RETRY. Worked out from the time it became ready
+     * rather than kept, so it carries over snapshots unchanged. **/
+    private long autoActRetry() {
+        long idle = battle.time() - getActionStartTime() - getDelay();
+        long retry = Math.min(Math.max(idle, GameConstants.TICK_TIME), GameConstants.MAX_AUTO_ACT_RETRY);
+        return retry - retry % GameConstants.TICK_TIME;
+    }
+
     /** Get the total time it takes for this unit to become ready after acting. **/
     public int getDelay() {
-        return (int)(data.delay / speed);
+        return (int)(data.delay / getSpeed());
     }
 
     /** Get the amount of milliseconds until this unit is ready. **/
     public int getCooldown() {
-        return Math.max((int) (actionStartTime + data.delay - System.currentTimeMillis()), 0);
+        return Math.max((int) (getActionStartTime() + getDelay() - battle.time()), 0);
     }
 
     /** The base amount of points this tile is worth. Increases when upgraded. **/
@@ -83,7 +175,7 @@ public class Unit {
 
     /** Points earned by selling this unit ((1/3 * value) * (HP% + 25%)). Rounded up. **/
     public int sellValue() {
-        return (int)Math.ceil((value() / 3.0) * (1.0 * hp / data.hp  + 0.25));
+        return (int)Math.ceil((value() / 3.0) * (1.0 * getHp() / data.hp  + 0.25));
     }
 
     /** Points earned by defeating this unit (1/2 value). **/
@@ -94,61 +186,230 @@ public class Unit {
     /** Effect to run when auto acting.
      * @return true if the action could be used and was used; false if not **/
     public boolean autoAct(){
-        return tile.act(owner, data.getAction());
+        return getTile().act(owner, data.getAction());
     }
 
     /** Use up this fighter's action, restarting their action timer cooldown. **/
     public void resetCooldown(){
-        ready = false;
-        actionStartTime = System.currentTimeMillis();
-        actionTimer.start();
+        setReady(false);
+        if (slot != -1) units.setActionStart(slot, battle.time());
+        else parked().actionStartTime = battle.time();
+        battle.getScheduler().schedule(readyTask, getDelay());
+    }
+
+    /** Stop this unit's cooldown, so it will not become ready or auto act, and pause the time left on its effects.
+     * Used when the unit leaves the map. **/
+    public void cancelCooldown(){
+        Scheduler scheduler = battle.getScheduler();
+        scheduler.cancel(readyTask);
+        if (effects == null) return;
+        for (AppliedEffect applied : effects) {
+            if (!applied.isScheduled()) continue;
+            applied.remaining = scheduler.remaining(applied);
+            scheduler.cancel(applied);
+        }
     }
 
     /** Get the percentage that this unit is ready. Used in displaying. **/
     public double readinessPercent(){
-        return Math.min((double)(System.currentTimeMillis() - actionStartTime) / data.delay, 1.0);
+        return Math.min((double)(battle.time() - getActionStartTime()) / getDelay(), 1.0);
     }
 
     /** Deal damage to another tile.
      * If there is a unit, it is attacked and becomes unclaimed if unit is defeated.
      * If not, destroy the tile. **/
     public void dealDamage(Tile target, int amount) {
-        target.takeDamage(tile, amount);
+        target.takeDamage(getTile(), amount);
     }
 
     /** Deal damage to the selected target. **/
     public void dealDamage(int amount) {
-        dealDamage(target, amount);
+        dealDamage(getTarget(), amount);
     }
 
-    /** Take damage from another unit. **/
+    /** Take damage from another unit. If defeated, this unit is removed, its tile becomes unclaimed,
+     * and the attacker's owner earns the defeat value. **/
     public void takeDamage(Tile attacker, int amount) {
+        refreshStats();
+        setBaseHp(getBaseHp() - amount);
+        if (getHp() <= 0) {
+            Player attackerOwner = attacker.getOwner();
+            if (attackerOwner != null) attackerOwner.addPoints(defeatValue());
+            Tile defeatedOn = getTile();
+            defeatedOn.removeUnit();
+            defeatedOn.setOwner(null);
+        }
+    }
 
+    // ==== EFFECTS
+    /** Add an effect to this unit. A timed effect is removed by the battle's scheduler once its duration is over;
+     * its time only runs while the unit is on the map. **/
+    public void addEffect(Effect effect) {
+        double oldSpeed = effect.speed != 1 ? getSpeed() : 0;
+        AppliedEffect applied = restoreEffect(effect);
+        if (effect.isTimed()) {
+            if (slot != -1) battle.getScheduler().schedule(applied, effect.duration);
+            else applied.remaining = effect.duration;
+        }
+        if (effect.speed != 1) speedChanged(oldSpeed);
+    }
+
+    /** Remove one instance of an effect from this unit. Returns false if it is not on this unit. **/
+    public boolean removeEffect(Effect effect) {
+        if (effects == null) return false;
+        for (AppliedEffect applied : effects) {
+            if (applied.effect == effect) {
+                remove(applied);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Remove every effect from the given source (compared with equals()), such as an aura whose unit left. Returns the amount removed. **/
+    public int removeEffectsFrom(Object source) {
+        if (effects == null) return 0;
+        int removed = 0;
+        for (int i = effects.size() - 1; i >= 0; i--) {
+            AppliedEffect applied = effects.get(i);
+            if (Objects.equals(applied.effect.source, source)) {
+                remove(applied);
+                removed++;
+            }
+        }
+        return removed;
     }
 
-    /** Draw this unit on the screen. **/
-    public void draw(Graphics g, Tile tile){
-        data.getMesh().draw(g, tile.getPolygon(), tile.getBase(), tile.getColor(), tile.getFaceColor(), Camera.zoom);
+    /** Remove an applied effect by moving the last effect into its place, so removing is O(1) however many effects stack. **/
+    private void remove(AppliedEffect applied) {
+        double oldSpeed = applied.effect.speed != 1 ? getSpeed() : 0;
+        AppliedEffect last = effects.remove(effects.size() - 1);
+        if (last != applied) {
+            effects.set(applied.position, last);
+            last.position = applied.position;
+        }
+        battle.getScheduler().cancel(applied);
+        statsDirty = true;
+        if (applied.effect.hp > 0) hpBonusLost = true;
+        if (applied.effect.speed != 1) speedChanged(oldSpeed);
     }
 
-    /** Draw UI elements associated with this unit. **/
-    public void drawUI(Graphics g, Tile tile) {
-        // Readiness bar
-        if (!ready){
-            DrawUtils.drawBar(g, tile.center.x, tile.center.y + Camera.zoom*0.25, readinessPercent(), Colors.READINESS_COLOR);
+    /** Rescale the time left on this unit's cooldown after its act speed changed. **/
+    private void speedChanged(double oldSpeed) {
+        double newSpeed = getSpeed();
+        Scheduler scheduler = battle.getScheduler();
+        if (newSpeed != oldSpeed && readyTask.isScheduled()) {
+            scheduler.schedule(readyTask, (long) (scheduler.remaining(readyTask) * oldSpeed / newSpeed));
         }
     }
 
+    /** Recompute the stat changes from this unit's effects if they changed since last time. **/
+    private void refreshStats() {
+        if (!statsDirty) return;
+        int hpBonus = 0, atkBonus = 0;
+        double speedScale = 1.0;
+        if (effects != null) {
+            for (AppliedEffect applied : effects) {
+                hpBonus += applied.effect.hp;
+                atkBonus += applied.effect.atk;
+                speedScale *= applied.effect.speed;
+            }
+        }
+        this.hpBonus = hpBonus;
+        this.atkBonus = atkBonus;
+        this.speedScale = speedScale;
+        if (hpBonusLost && getBaseHp() + hpBonus <= 0) setBaseHp(1 - hpBonus);
+        hpBonusLost = false;
+        statsDirty = false;
+    }
+
+    /** Start the paused time of this unit's effects again. Used when the unit is placed on the map. **/
+    void resumeEffects() {
+        if (effects == null) return;
+        for (AppliedEffect applied : effects) {
+            if (applied.remaining == 0) continue;
+            battle.getScheduler().schedule(applied, applied.remaining);
+            applied.remaining = 0;
+        }
+    }
+
+    /** An effect on this unit, and the task that removes it when its duration is over. **/
+    static final class AppliedEffect extends ScheduledTask {
+        final Unit unit;
+        final Effect effect;
+        /** Milliseconds left on the effect while the unit is off the map, otherwise 0. **/
+        long remaining;
+        /** Index of this in the unit's effects. **/
+        int position;
+
+        AppliedEffect(Unit unit, Effect effect) {
+            this.unit = unit;
+            this.effect = effect;
+        }
+
+        @Override
+        public void run() {
+            unit.remove(this);
+        }
+    }
+
+    /** Effects on this unit with their expiry tasks. Null if none were ever added. **/
+    List<AppliedEffect> getAppliedEffects() {
+        return effects;
+    }
+
+    /** Add an effect as it was when a snapshot was taken, without scheduling its end. See BattleState. **/
+    AppliedEffect restoreEffect(Effect effect) {
+        AppliedEffect applied = new AppliedEffect(this, effect);
+        if (effects == null) effects = new ArrayList<>();
+        applied.position = effects.size();
+        effects.add(applied);
+        statsDirty = true;
+        return applied;
+    }
+
+    /** Set this unit's state as it was when a snapshot was taken. Its cooldown is not rescheduled. See BattleState. **/
+    void restore(int hp, int atk, double speed, boolean ready, boolean autoAct, boolean walking, long actionStartTime, Tile target) {
+        units.setHp(slot, hp);
+        units.setAtk(slot, atk);
+        units.setSpeed(slot, speed);
+        units.setFlags(slot, (ready ? UnitStore.READY : 0) | (autoAct ? UnitStore.AUTO_ACT : 0) | (walking ? UnitStore.WALKING : 0));
+        units.setActionStart(slot, actionStartTime);
+        units.setTarget(slot, target == null ? 0 : target.index + 1);
+    }
+
+    /** Task fired when this unit becomes ready. **/
+    ScheduledTask getReadyTask() {
+        return readyTask;
+    }
+
     public boolean ownedBy(Player player) {
         return owner == player;
     }
 
+    public boolean isAutoAct() {
+        return (flags() & UnitStore.AUTO_ACT) != 0;
+    }
+
+    public void setAutoAct(boolean autoAct) {
+        setFlag(UnitStore.AUTO_ACT, autoAct || data.isMustAutoAct());
+    }
+
     public boolean isReady() {
-        return ready;
+        return (flags() & UnitStore.READY) != 0;
     }
 
     public void setReady(boolean ready) {
-        this.ready = ready;
+        setFlag(UnitStore.READY, ready);
+    }
+
+    /** If this unit is walking to its target, taking a step each time it becomes ready. See lib.data.actions.Move. **/
+    public boolean isWalking() {
+        return (flags() & UnitStore.WALKING) != 0;
+    }
+
+    public void setWalking(boolean walking) {
+        setFlag(UnitStore.WALKING, walking);
     }
 
     public UnitData getData() {
@@ -159,27 +420,75 @@ public class Unit {
         return owner;
     }
 
+    /** Battle time in milliseconds this unit last acted or began becoming ready. **/
+    public long getActionStartTime() {
+        return slot != -1 ? units.actionStart(slot) : parked().actionStartTime;
+    }
+
+    /** Hit points including the bonuses from effects. **/
     public int getHp() {
-        return hp;
+        refreshStats();
+        return getBaseHp() + hpBonus;
     }
 
+    /** Attack including the bonuses from effects. Never negative. **/
     public int getAtk() {
-        return atk;
+        refreshStats();
+        return Math.max(getBaseAtk() + atkBonus, 0);
     }
 
-    public Tile getTile() {
-        return tile;
+    /** Act speed including the multipliers from effects. **/
+    public double getSpeed() {
+        refreshStats();
+        return getBaseSpeed() * speedScale;
+    }
+
+    /** Hit points not counting effects. **/
+    public int getBaseHp() {
+        return slot != -1 ? units.hp(slot) : parked().hp;
+    }
+
+    /** Attack not counting effects. **/
+    public int getBaseAtk() {
+        return slot != -1 ? units.atk(slot) : parked().atk;
+    }
+
+    /** Act speed not counting effects. **/
+    public double getBaseSpeed() {
+        return slot != -1 ? units.speed(slot) : parked().speed;
+    }
+
+    /** Change this unit's own act speed. If it is cooling down, the time left is scaled to the new speed. **/
+    public void setSpeed(double speed) {
+        double oldSpeed = getSpeed();
+        if (slot != -1) units.setSpeed(slot, speed);
+        else parked().speed = speed;
+        speedChanged(oldSpeed);
     }
 
-    public void setTile(Tile tile) {
-        this.tile = tile;
+    /** Effects on this unit. **/
+    public List<Effect> getEffects() {
+        if (effects == null) return Collections.emptyList();
+        List<Effect> list = new ArrayList<>(effects.size());
+        for (AppliedEffect applied : effects) list.add(applied.effect);
+        return list;
     }
 
+    /** The tile this unit is on, or null if it is off the map. **/
+    public Tile getTile() {
+        return slot != -1 ? battle.getTile(units.tile(slot)) : null;
+    }
+
+    /** The tile this unit is targeting for its action. If auto attacking this may be used.
+     * If manual, this is set before attacking by moving the cursor to attack a unit. **/
     public Tile getTarget() {
-        return target;
+        int target = slot != -1 ? units.target(slot) : parked().target;
+        return target == 0 ? null : battle.getTile(target - 1);
     }
 
     public void setTarget(Tile target) {
-        this.target = target;
+        int value = target == null ? 0 : target.index + 1;
+        if (slot != -1) units.setTarget(slot, value);
+        else parked().target = value;
     }
 }
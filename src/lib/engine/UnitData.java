@@ -4,7 +4,6 @@ import lib.data.Actions;
 import lib.geometry.Mesh;
 import lib.geometry.Shape;
 
-import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -31,6 +30,8 @@ public abstract class UnitData implements Buyable {
     private boolean sellable = true;
     /** If this unit can move. **/
     private boolean movable = true;
+    /** If this unit is a castle, which its owner's land must stay connected to. **/
+    private boolean castle;
 
     /** The action this unit type uses when acting. Null for no action. **/
     private Action action;
@@ -112,4 +113,12 @@ public abstract class UnitData implements Buyable {
     public void setMovable(boolean movable) {
         this.movable = movable;
     }
+
+    public boolean isCastle() {
+        return castle;
+    }
+
+    public void setCastle(boolean castle) {
+        this.castle = castle;
+    }
 }
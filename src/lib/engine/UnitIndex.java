@@ -0,0 +1,208 @@
+package lib.engine;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** Spatial index of the units on a battle's map, bucketing units by 8x8 blocks of tiles.
+ * Kept up to date by Tile.setUnit() and Tile.removeUnit(), so range and nearest-unit queries only look at the buckets
+ * around a position instead of walking the whole map. Distances are straight-line distances in tiles.
+ * Queries can be filtered to units owned by a player (OWNED) or not owned by them (ENEMY).
+ * Units at the same distance are ordered by row, then column. **/
+public class UnitIndex {
+    /** Filters for queries: every unit, units owned by the given player, or units not owned by the given player. **/
+    public static final int ANY = 0, OWNED = 1, ENEMY = 2;
+
+    /** Bucket size is 1 << BITS tiles across. **/
+    static final int BITS = 3;
+    private static final int SIZE = 1 << BITS;
+
+    private final UnitStore units;
+    private final int bucketRows, bucketCols;
+    /** Unit slots in each bucket, row-major by bucket. Null until a unit is first put in the bucket. **/
+    private final int[][] buckets;
+    /** Amount of units in each bucket. **/
+    private final int[] counts;
+
+    /** Bucket, position within that bucket, and row and column of each unit slot. Bucket is -1 for slots not indexed. **/
+    private int[] bucketOf, posOf, rowOf, colOf;
+
+    public UnitIndex(UnitStore units, int rows, int cols) {
+        this.units = units;
+        bucketRows = (rows + SIZE - 1) >> BITS;
+        bucketCols = (cols + SIZE - 1) >> BITS;
+        buckets = new int[bucketRows * bucketCols][];
+        counts = new int[buckets.length];
+        bucketOf = new int[16];
+        Arrays.fill(bucketOf, -1);
+        posOf = new int[16];
+        rowOf = new int[16];
+        colOf = new int[16];
+    }
+
+    /** Index the unit in a slot of the battle's unit table at a position. **/
+    public void add(int slot, int row, int col) {
+        if (slot >= bucketOf.length) grow(slot);
+        if (bucketOf[slot] != -1) remove(slot);
+
+        int bucket = (row >> BITS) * bucketCols + (col >> BITS);
+        int[] items = buckets[bucket];
+        if (items == null) {
+            items = buckets[bucket] = new int[4];
+        } else if (counts[bucket] == items.length) {
+            items = buckets[bucket] = Arrays.copyOf(items, items.length * 2);
+        }
+        items[counts[bucket]] = slot;
+        bucketOf[slot] = bucket;
+        posOf[slot] = counts[bucket]++;
+        rowOf[slot] = row;
+        colOf[slot] = col;
+    }
+
+    /** Stop indexing the unit in a slot. **/
+    public void remove(int slot) {
+        if (slot >= bucketOf.length || bucketOf[slot] == -1) return;
+        int bucket = bucketOf[slot], pos = posOf[slot];
+        int[] items = buckets[bucket];
+
+        // Move the bucket's last unit into the gap
+        int last = items[--counts[bucket]];
+        items[pos] = last;
+        posOf[last] = pos;
+        bucketOf[slot] = -1;
+    }
+
+    /** Move an indexed unit to a new position. **/
+    public void move(int slot, int row, int col) {
+        add(slot, row, col);
+    }
+
+    /** The nearest unit to a position passing the filter, or null if there are none within maxDistance tiles. **/
+    public Unit nearest(int row, int col, double maxDistance, Player player, int filter) {
+        int best = -1;
+        long bestDist = Long.MAX_VALUE;
+        long maxDist = (long) Math.floor(maxDistance * maxDistance);
+        int br = row >> BITS, bc = col >> BITS;
+
+        for (int ring = 0; ring < Math.max(bucketRows, bucketCols); ring++) {
+            // Any tile in this ring of buckets or further out is at least this far away
+            long bound = ring == 0 ? 0 : (long) ((ring-1) * SIZE + 1) * ((ring-1) * SIZE + 1);
+            if (bound > Math.min(bestDist, maxDist)) break;
+
+            for (int r = br - ring; r <= br + ring; r++) {
+                if (r < 0 || r >= bucketRows) continue;
+                boolean edgeRow = r == br - ring || r == br + ring;
+                for (int c = bc - ring; c <= bc + ring; c += edgeRow ? 1 : 2 * ring) {
+                    if (c < 0 || c >= bucketCols) continue;
+                    int bucket = r * bucketCols + c;
+                    int[] items = buckets[bucket];
+                    for (int i = 0; i < counts[bucket]; i++) {
+                        int slot = items[i];
+                        long dist = distance(slot, row, col);
+                        if (dist <= maxDist && closer(slot, dist, best, bestDist) && passes(slot, player, filter)) {
+                            best = slot;
+                            bestDist = dist;
+                        }
+                    }
+                    if (ring == 0) break;
+                }
+            }
+        }
+        return best == -1 ? null : units.get(best);
+    }
+
+    /** Add the k nearest units to a position passing the filter to out, nearest first. Returns the amount added. **/
+    public int nearest(int row, int col, int k, Player player, int filter, List<Unit> out) {
+        if (k <= 0) return 0;
+        int[] best = new int[k];
+        long[] bestDist = new long[k];
+        int found = 0;
+        int br = row >> BITS, bc = col >> BITS;
+
+        for (int ring = 0; ring < Math.max(bucketRows, bucketCols); ring++) {
+            long bound = ring == 0 ? 0 : (long) ((ring-1) * SIZE + 1) * ((ring-1) * SIZE + 1);
+            if (found == k && bound > bestDist[k-1]) break;
+
+            for (int r = br - ring; r <= br + ring; r++) {
+                if (r < 0 || r >= bucketRows) continue;
+                boolean edgeRow = r == br - ring || r == br + ring;
+                for (int c = bc - ring; c <= bc + ring; c += edgeRow ? 1 : 2 * ring) {
+                    if (c < 0 || c >= bucketCols) continue;
+                    int bucket = r * bucketCols + c;
+                    int[] items = buckets[bucket];
+                    for (int i = 0; i < counts[bucket]; i++) {
+                        int slot = items[i];
+                        long dist = distance(slot, row, col);
+                        if (found == k && !closer(slot, dist, best[k-1], bestDist[k-1]) || !passes(slot, player, filter)) continue;
+
+                        // Insertion into the sorted best list
+                        int pos = found < k ? found++ : k-1;
+                        while (pos > 0 && closer(slot, dist, best[pos-1], bestDist[pos-1])) {
+                            best[pos] = best[pos-1];
+                            bestDist[pos] = bestDist[pos-1];
+                            pos--;
+                        }
+                        best[pos] = slot;
+                        bestDist[pos] = dist;
+                    }
+                    if (ring == 0) break;
+                }
+            }
+        }
+
+        for (int i = 0; i < found; i++) out.add(units.get(best[i]));
+        return found;
+    }
+
+    /** Add every unit within radius tiles of a position passing the filter to out, in no particular order. Returns the amount added. **/
+    public int withinRadius(int row, int col, double radius, Player player, int filter, List<Unit> out) {
+        long maxDist = (long) Math.floor(radius * radius);
+        int reach = (int) Math.floor(radius);
+        int added = 0;
+        int r0 = Math.max(row - reach, 0) >> BITS, r1 = Math.min((row + reach) >> BITS, bucketRows - 1),
+                c0 = Math.max(col - reach, 0) >> BITS, c1 = Math.min((col + reach) >> BITS, bucketCols - 1);
+
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int bucket = r * bucketCols + c;
+                int[] items = buckets[bucket];
+                for (int i = 0; i < counts[bucket]; i++) {
+                    int slot = items[i];
+                    if (distance(slot, row, col) <= maxDist && passes(slot, player, filter)) {
+                        out.add(units.get(slot));
+                        added++;
+                    }
+                }
+            }
+        }
+        return added;
+    }
+
+    /** Squared distance in tiles from a unit slot to a position. **/
+    private long distance(int slot, int row, int col) {
+        long dr = rowOf[slot] - row, dc = colOf[slot] - col;
+        return dr*dr + dc*dc;
+    }
+
+    /** If a unit at a squared distance is closer than another unit, or as close and first in row-major order.
+     * Breaking ties by position makes query results independent of the order units were indexed in,
+     * so a battle restored from a snapshot picks the same units as the original. **/
+    private boolean closer(int slot, long dist, int other, long otherDist) {
+        if (dist != otherDist || other == -1) return dist < otherDist;
+        return rowOf[slot] != rowOf[other] ? rowOf[slot] < rowOf[other] : colOf[slot] < colOf[other];
+    }
+
+    private boolean passes(int slot, Player player, int filter) {
+        if (filter == ANY) return true;
+        return (units.owner(slot) == units.playerId(player)) == (filter == OWNED);
+    }
+
+    private void grow(int slot) {
+        int length = Math.max(bucketOf.length * 2, slot + 1);
+        int old = bucketOf.length;
+        bucketOf = Arrays.copyOf(bucketOf, length);
+        Arrays.fill(bucketOf, old, length, -1);
+        posOf = Arrays.copyOf(posOf, length);
+        rowOf = Arrays.copyOf(rowOf, length);
+        colOf = Arrays.copyOf(colOf, length);
+    }
+}
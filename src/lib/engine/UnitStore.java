@@ -0,0 +1,227 @@
+package lib.engine;
+
+import java.util.Arrays;
+
+/** Struct-of-arrays storage for the units on a battle's map, addressed by slot.
+ * Each column is a primitive array indexed by slot, so passes over every unit (drawing snapshots, saving, scoring)
+ * sweep a few dense arrays instead of chasing an object per unit. Unit objects are only handles onto a slot;
+ * a unit off the map keeps its own state until it is placed again.
+ * Removed slots are kept on a free list and reused by later adds, and the slots in use are also kept packed
+ * in a dense list, so sweeps never visit free slots however many units came and went. **/
+public class UnitStore {
+    /** Flag bits of a unit. **/
+    static final int READY = 1, AUTO_ACT = 2, WALKING = 4;
+
+    /** Players of the battle, for storing owners by id. **/
+    private final Player[] players;
+
+    /** Handle of the unit in each slot, null for free slots. **/
+    private Unit[] handles;
+    /** Type of each unit. **/
+    private UnitData[] type;
+    /** TileStore index of the tile each unit is on. **/
+    private int[] tile;
+    /** Owner id of each unit. **/
+    private byte[] owner;
+    /** Hp and atk of each unit, not counting effects. **/
+    private int[] hp, atk;
+    /** Act speed of each unit, not counting effects. **/
+    private double[] speed;
+    /** Battle time in milliseconds each unit last acted or began becoming ready. **/
+    private long[] actionStart;
+    /** READY, AUTO_ACT and WALKING bits of each unit. **/
+    private byte[] flags;
+    /** TileStore index + 1 of each unit's target, 0 for none. **/
+    private int[] target;
+
+    /** Next free slot after each free slot, forming the free list. **/
+    private int[] nextFree;
+    /** First free slot, or -1 if there are none below end. **/
+    private int freeHead = -1;
+    /** One past the highest slot ever used. **/
+    private int end;
+
+    /** Slots in use, packed at the front, and the position of each slot in it. **/
+    private int[] live, livePosition;
+    /** Amount of slots in use. **/
+    private int size;
+
+    public UnitStore(Player[] players, int capacity) {
+        this.players = players;
+        capacity = Math.max(capacity, 4);
+        handles = new Unit[capacity];
+        type = new UnitData[capacity];
+        tile = new int[capacity];
+        owner = new byte[capacity];
+        hp = new int[capacity];
+        atk = new int[capacity];
+        speed = new double[capacity];
+        actionStart = new long[capacity];
+        flags = new byte[capacity];
+        target = new int[capacity];
+        nextFree = new int[capacity];
+        live = new int[capacity];
+        livePosition = new int[capacity];
+    }
+
+    public UnitStore(Player[] players) {
+        this(players, 16);
+    }
+
+    // ==== SLOTS
+    /** Give a unit a slot on a tile, reusing a free slot if there is one. Its state columns are left for the unit to fill. Returns the slot. **/
+    public int add(Unit unit, int tileIndex) {
+        int slot;
+        if (freeHead != -1) {
+            slot = freeHead;
+            freeHead = nextFree[slot];
+        } else {
+            if (end == handles.length) grow(end * 2);
+            slot = end++;
+        }
+        handles[slot] = unit;
+        type[slot] = unit.getData();
+        tile[slot] = tileIndex;
+        owner[slot] = (byte) playerId(unit.getOwner());
+
+        live[size] = slot;
+        livePosition[slot] = size++;
+        return slot;
+    }
+
+    /** Free a slot for reuse. **/
+    public void remove(int slot) {
+        if (handles[slot] == null) return;
+        handles[slot] = null;
+        type[slot] = null;
+        nextFree[slot] = freeHead;
+        freeHead = slot;
+
+        // Move the last live slot into the gap
+        int last = live[--size], position = livePosition[slot];
+        live[position] = last;
+        livePosition[last] = position;
+    }
+
+    /** The unit in a slot, or null if it is free. **/
+    public Unit get(int slot) {
+        return handles[slot];
+    }
+
+    /** The slot at a position from 0 to size() - 1 in the dense list of slots in use, for sweeping every unit. **/
+    public int live(int position) {
+        return live[position];
+    }
+
+    /** Amount of slots in use. **/
+    public int size() {
+        return size;
+    }
+
+    /** One past the highest slot ever used. **/
+    public int end() {
+        return end;
+    }
+
+    /** The id units store for a player: its index in the battle's players + 1, or 0 for no player. **/
+    int playerId(Player player) {
+        if (player == null) return 0;
+        for (int i = 0; i < players.length; i++) {
+            if (players[i] == player) return i + 1;
+        }
+        throw new IllegalArgumentException("Player is not in this battle");
+    }
+
+    private void grow(int capacity) {
+        handles = Arrays.copyOf(handles, capacity);
+        type = Arrays.copyOf(type, capacity);
+        tile = Arrays.copyOf(tile, capacity);
+        owner = Arrays.copyOf(owner, capacity);
+        hp = Arrays.copyOf(hp, capacity);
+        atk = Arrays.copyOf(atk, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        actionStart = Arrays.copyOf(actionStart, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        target = Arrays.copyOf(target, capacity);
+        nextFree = Arrays.copyOf(nextFree, capacity);
+        live = Arrays.copyOf(live, capacity);
+        livePosition = Arrays.copyOf(livePosition, capacity);
+    }
+
+    // ==== COLUMNS
+    public UnitData type(int slot) {
+        return type[slot];
+    }
+
+    public int tile(int slot) {
+        return tile[slot];
+    }
+
+    public int owner(int slot) {
+        return owner[slot];
+    }
+
+    public int hp(int slot) {
+        return hp[slot];
+    }
+
+    public int atk(int slot) {
+        return atk[slot];
+    }
+
+    public double speed(int slot) {
+        return speed[slot];
+    }
+
+    public long actionStart(int slot) {
+        return actionStart[slot];
+    }
+
+    public boolean ready(int slot) {
+        return (flags[slot] & READY) != 0;
+    }
+
+    public boolean autoAct(int slot) {
+        return (flags[slot] & AUTO_ACT) != 0;
+    }
+
+    /** TileStore index + 1 of the unit's target, 0 for none. **/
+    public int target(int slot) {
+        return target[slot];
+    }
+
+    void setHp(int slot, int value) {
+        hp[slot] = value;
+    }
+
+    void setAtk(int slot, int value) {
+        atk[slot] = value;
+    }
+
+    void setSpeed(int slot, double value) {
+        speed[slot] = value;
+    }
+
+    void setActionStart(int slot, long value) {
+        actionStart[slot] = value;
+    }
+
+    void setFlags(int slot, int value) {
+        flags[slot] = (byte) value;
+    }
+
+    int flags(int slot) {
+        return flags[slot];
+    }
+
+    void setTarget(int slot, int value) {
+        target[slot] = value;
+    }
+
+    /** Amount of bytes stored per unit slot. **/
+    public static int bytesPerUnit() {
+        // handle and type references (assuming compressed oops), tile, owner, hp, atk, speed, action start, flags, target,
+        // and the free and live lists
+        return 4 + 4 + 4 + 1 + 4 + 4 + 8 + 8 + 1 + 4 + 4 + 4 + 4;
+    }
+}
@@ -0,0 +1,237 @@
+package lib.engine.log;
+
+import lib.engine.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Records everything that happens in a battle into a compact, append-only binary log. See LogFormat.
+ * Records are gathered in a buffer and written to the channel in large blocks, so recording costs little per tick.
+ * Start recording right after creating the battle, before setting it up, so the log holds everything Replay needs to rebuild it.
+ * Points given to players outside of the battle's ticks (such as starting points) are noticed at the start of the next tick. **/
+public class ActionLog implements BattleRecorder, Closeable {
+    /** Size of the write buffer in bytes. **/
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    /** The battle being recorded. **/
+    private final Battle battle;
+    /** Where records are written. **/
+    private final WritableByteChannel channel;
+    /** Records waiting to be written. **/
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    /** Tick the last record was stamped with. **/
+    private long tick;
+    /** Each player's points as of the end of the last tick, by player index. **/
+    private final long[] points;
+    /** Amount of bytes written to the channel so far. **/
+    private long written;
+
+    /** Where keyframes are written, or null if not taking keyframes. **/
+    private Keyframes keyframes;
+    /** Amount of ticks between keyframes. **/
+    private int keyframeInterval;
+    /** Tick the next keyframe is due on. **/
+    private long nextKeyframe;
+
+    /** Write the header for the battle, and start recording it. **/
+    public ActionLog(Battle battle, WritableByteChannel channel) {
+        this.battle = battle;
+        this.channel = channel;
+        Player[] players = battle.getPlayers();
+        points = new long[players.length];
+        tick = battle.getScheduler().getTick();
+
+        buffer.putInt(LogFormat.MAGIC);
+        putVarint(LogFormat.VERSION);
+        putVarint(battle.numRows());
+        putVarint(battle.numCols());
+        if (battle.getTerrain() instanceof SlopeTerrain) {
+            buffer.put((byte) 1);
+            buffer.putLong(((SlopeTerrain) battle.getTerrain()).getSeed());
+        } else {
+            buffer.put((byte) 0);
+        }
+        putVarint(players.length);
+        for (Player player : players) putVarint(player.rgb & 0xFFFFFFFFL);
+
+        stepStarted();
+        battle.setRecorder(this);
+    }
+
+    /** Start recording a battle into a new file, replacing it if it exists. **/
+    public static ActionLog record(Battle battle, Path file) throws IOException {
+        return new ActionLog(battle, FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /** Also take a keyframe of the whole battle at the end of the first tick every interval ticks, for Replay.seek().
+     * The keyframes are closed along with this log. **/
+    public void recordKeyframes(Keyframes keyframes, int interval) {
+        if (interval <= 0) throw new IllegalArgumentException("Keyframe interval must be positive: " + interval);
+        this.keyframes = keyframes;
+        keyframeInterval = interval;
+        nextKeyframe = battle.getScheduler().getTick() + interval;
+    }
+
+    // ==== INPUTS
+    @Override
+    public void claimed(int row, int col, Player player) {
+        begin(LogFormat.CLAIM);
+        putVarint(row);
+        putVarint(col);
+        putVarint(battle.playerId(player));
+    }
+
+    @Override
+    public void unitPlaced(int row, int col, Player player, UnitData unitType) {
+        begin(LogFormat.PLACE);
+        putVarint(row);
+        putVarint(col);
+        putVarint(battle.playerId(player));
+        putVarint(LogFormat.unitId(unitType));
+    }
+
+    @Override
+    public void terrainSet(int row, int col, int depth, int type) {
+        begin(LogFormat.TERRAIN);
+        putVarint(row);
+        putVarint(col);
+        putVarint(depth);
+        putVarint(type);
+    }
+
+    @Override
+    public void commandApplied(Command command) {
+        if (command instanceof Command.ContestTile) {
+            begin(LogFormat.CONTEST);
+        } else if (command instanceof Command.Buy) {
+            begin(LogFormat.BUY);
+        } else if (command instanceof Command.Act) {
+            begin(LogFormat.ACT);
+        } else if (command instanceof Command.Move) {
+            begin(LogFormat.MOVE);
+        } else {
+            throw new IllegalArgumentException("Command cannot be logged: " + command.getClass().getName());
+        }
+        putVarint(battle.playerId(command.player));
+        putVarint(command.row);
+        putVarint(command.col);
+
+        if (command instanceof Command.Buy) {
+            Buyable item = ((Command.Buy) command).item;
+            if (!(item instanceof UnitData)) throw new IllegalArgumentException("Item cannot be logged: " + item);
+            putVarint(LogFormat.unitId((UnitData) item));
+        } else if (command instanceof Command.Act) {
+            putVarint(LogFormat.actionId(((Command.Act) command).action, battle.getTile(command.row, command.col)));
+        } else if (command instanceof Command.Move) {
+            putVarint(((Command.Move) command).targetRow);
+            putVarint(((Command.Move) command).targetCol);
+        }
+    }
+
+    /** Record points that changed since the end of the last tick, since they were not changed by anything the log saw. **/
+    @Override
+    public void stepStarted() {
+        Player[] players = battle.getPlayers();
+        for (int i = 0; i < players.length; i++) {
+            long balance = players[i].getLedger().balance();
+            if (balance == points[i]) continue;
+            begin(LogFormat.POINTS);
+            putVarint(i + 1);
+            putVarint(LogFormat.zigzag(balance));
+            points[i] = balance;
+        }
+    }
+
+    @Override
+    public void stepFinished() {
+        Player[] players = battle.getPlayers();
+        for (int i = 0; i < players.length; i++) points[i] = players[i].getLedger().balance();
+
+        long now = battle.getScheduler().getTick();
+        if (keyframes != null && now >= nextKeyframe) {
+            try {
+                keyframes.write(battle, size(), tick);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write keyframe", e);
+            }
+            nextKeyframe = now + keyframeInterval;
+        }
+    }
+
+    // ==== EVENTS
+    @Override
+    public void acted(Player player, Action action, Tile tile) {
+        begin(LogFormat.ACTED);
+        putVarint(battle.playerId(player));
+        putVarint(tile.row);
+        putVarint(tile.col);
+        putVarint(LogFormat.actionId(action, tile));
+    }
+
+    @Override
+    public void captured(Tile tile, Player player) {
+        begin(LogFormat.CAPTURED);
+        putVarint(tile.row);
+        putVarint(tile.col);
+        putVarint(battle.playerId(player));
+    }
+
+    // ==== WRITING
+    /** Write all buffered records to the channel. **/
+    public void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) written += channel.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write battle log", e);
+        }
+        buffer.clear();
+    }
+
+    /** Stop recording, stamp the current tick so a replay ends on the same tick, and write everything out. **/
+    @Override
+    public void close() throws IOException {
+        if (battle.getRecorder() == this) battle.setRecorder(null);
+        stamp();
+        flush();
+        channel.close();
+        if (keyframes != null) keyframes.close();
+    }
+
+    /** Amount of bytes logged so far, including those still buffered. **/
+    public long size() {
+        return written + buffer.position();
+    }
+
+    /** Make room for a record of the given type and write its type, after a TICK record if time has passed. **/
+    private void begin(int type) {
+        stamp();
+        if (buffer.remaining() < LogFormat.MAX_RECORD) flush();
+        buffer.put((byte) type);
+    }
+
+    /** Write a TICK record if the battle has ticked since the last record. **/
+    private void stamp() {
+        long now = battle.getScheduler().getTick();
+        if (now == tick) return;
+        if (buffer.remaining() < LogFormat.MAX_RECORD) flush();
+        buffer.put((byte) LogFormat.TICK);
+        putVarint(now - tick);
+        tick = now;
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
@@ -0,0 +1,156 @@
+package lib.engine.log;
+
+import lib.engine.Battle;
+import lib.engine.BattleState;
+import lib.engine.TerrainGenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/** Full battle snapshots taken every so many ticks while recording, kept in a file beside the battle log,
+ * so a Replay can seek to any tick by restoring the nearest keyframe before it and replaying only the log after it.
+ * The file is a magic int followed by keyframes, each a header of its tick, the log offset and log tick it was taken at,
+ * and its length, followed by a BattleState snapshot. Opening a file only reads the headers. **/
+public class Keyframes implements Closeable {
+    /** First bytes of every keyframe file, "BPK" and a format byte. **/
+    public static final int MAGIC = 0x42504B01;
+    /** Default amount of ticks between keyframes, 30 seconds of battle time. **/
+    public static final int DEFAULT_INTERVAL = 1500;
+    /** Bytes in a keyframe's header. **/
+    private static final int HEADER_BYTES = 3 * Long.BYTES + Integer.BYTES;
+
+    private final FileChannel channel;
+    /** Amount of keyframes. **/
+    private int size;
+    /** Tick each keyframe was taken on, ascending. **/
+    private long[] ticks = new long[16];
+    /** Offset in the battle log to resume replaying from, for each keyframe. **/
+    private long[] logOffsets = new long[16];
+    /** Tick of the last record before each keyframe's log offset. **/
+    private long[] logTicks = new long[16];
+    /** Where each keyframe's snapshot starts in the file. **/
+    private long[] positions = new long[16];
+    /** Length of each keyframe's snapshot. **/
+    private int[] lengths = new int[16];
+
+    private Keyframes(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /** Create a new keyframe file to record into, replacing it if it exists. **/
+    public static Keyframes create(Path file) throws IOException {
+        Keyframes keyframes = new Keyframes(FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC);
+        magic.flip();
+        keyframes.channel.write(magic);
+        return keyframes;
+    }
+
+    /** Open a keyframe file to seek with, reading its headers. **/
+    public static Keyframes open(Path file) throws IOException {
+        Keyframes keyframes = new Keyframes(FileChannel.open(file, StandardOpenOption.READ));
+        FileChannel channel = keyframes.channel;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.limit(Integer.BYTES);
+        if (channel.read(header, 0) < Integer.BYTES || header.getInt(0) != MAGIC) throw new IOException("Not a keyframe file");
+
+        long position = Integer.BYTES;
+        while (position + HEADER_BYTES <= channel.size()) {
+            header.clear();
+            while (header.hasRemaining()) {
+                if (channel.read(header, position + header.position()) < 0) throw new IOException("Keyframe file is truncated");
+            }
+            header.flip();
+            long tick = header.getLong(), logOffset = header.getLong(), logTick = header.getLong();
+            int length = header.getInt();
+            // A keyframe cut short by a crash while recording is left out
+            if (position + HEADER_BYTES + length > channel.size()) break;
+            keyframes.add(tick, logOffset, logTick, position + HEADER_BYTES, length);
+            position += HEADER_BYTES + length;
+        }
+        return keyframes;
+    }
+
+    /** Add a keyframe of a battle's current state to the end of the file.
+     * @param logOffset offset in the battle log to resume replaying from
+     * @param logTick tick of the last record written to the log before logOffset **/
+    public void write(Battle battle, long logOffset, long logTick) throws IOException {
+        long tick = battle.getScheduler().getTick();
+        if (size > 0 && tick <= ticks[size - 1]) throw new IllegalStateException("Keyframes must be written in tick order");
+        ByteBuffer snapshot = BattleState.write(battle);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putLong(tick).putLong(logOffset).putLong(logTick).putInt(snapshot.remaining());
+        header.flip();
+        long position = channel.size();
+        int length = snapshot.remaining();
+        ByteBuffer[] buffers = {header, snapshot};
+        while (snapshot.hasRemaining()) channel.write(buffers);
+        add(tick, logOffset, logTick, position + HEADER_BYTES, length);
+    }
+
+    /** Index of the last keyframe taken on or before a tick, or -1 if there are none. **/
+    public int find(long tick) {
+        int found = Arrays.binarySearch(ticks, 0, size, tick);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    /** Restore the battle a keyframe was taken of.
+     * @param terrain generator of the battle's terrain, only used if the battle was not generated from a seed **/
+    public Battle restore(int keyframe, TerrainGenerator terrain) throws IOException {
+        ByteBuffer snapshot = ByteBuffer.allocate(lengths[keyframe]);
+        while (snapshot.hasRemaining()) {
+            if (channel.read(snapshot, positions[keyframe] + snapshot.position()) < 0) throw new IOException("Keyframe file is truncated");
+        }
+        snapshot.flip();
+        return BattleState.read(snapshot, terrain);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void add(long tick, long logOffset, long logTick, long position, int length) {
+        if (size == ticks.length) {
+            int capacity = size * 2;
+            ticks = Arrays.copyOf(ticks, capacity);
+            logOffsets = Arrays.copyOf(logOffsets, capacity);
+            logTicks = Arrays.copyOf(logTicks, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        ticks[size] = tick;
+        logOffsets[size] = logOffset;
+        logTicks[size] = logTick;
+        positions[size] = position;
+        lengths[size] = length;
+        size++;
+    }
+
+    // ======== ACCESSORS
+    /** Amount of keyframes. **/
+    public int size() {
+        return size;
+    }
+
+    /** Tick a keyframe was taken on. **/
+    public long getTick(int keyframe) {
+        return ticks[keyframe];
+    }
+
+    /** Offset in the battle log to resume replaying from after restoring a keyframe. **/
+    public long getLogOffset(int keyframe) {
+        return logOffsets[keyframe];
+    }
+
+    /** Tick of the last log record before a keyframe's log offset, which the log's next TICK record counts from. **/
+    public long getLogTick(int keyframe) {
+        return logTicks[keyframe];
+    }
+}
@@ -0,0 +1,95 @@
+package lib.engine.log;
+
+import lib.data.Actions;
+import lib.data.Units;
+import lib.engine.Action;
+import lib.engine.Tile;
+import lib.engine.UnitData;
+
+/** Layout of a battle log, shared by ActionLog, which writes it, and Replay, which reads it.
+ * A log is a header followed by records. Each record is a one byte type followed by its fields as unsigned LEB128 varints,
+ * with signed values zigzag encoded first, so most records take 4 to 6 bytes.
+ * Records are stamped with the scheduler tick they happened on by TICK records holding the amount of ticks passed since the last one.
+ * Players are stored as their id in the battle (0 for none), unit types and actions by their index in Units.ALL and Actions.ALL.
+ * The same unit and action ids are used by the network protocol, see lib.net.Protocol. **/
+public final class LogFormat {
+    /** First bytes of every log, "BPL" and a format byte. **/
+    public static final int MAGIC = 0x42504C01;
+    public static final int VERSION = 1;
+
+    // ==== HEADER
+    // magic (4 bytes), version, rows, cols, seeded (1 byte), seed (8 bytes if seeded), player count, then each player's rgb
+
+    // ==== RECORDS
+    /** Ticks passed since the last record: ticks **/
+    public static final int TICK = 1;
+    /** Battle.claim(): row, col, player **/
+    public static final int CLAIM = 2;
+    /** Battle.placeUnit(): row, col, player, unit type **/
+    public static final int PLACE = 3;
+    /** Battle.setTerrain(): row, col, depth, type **/
+    public static final int TERRAIN = 4;
+    /** A player's points changed outside of the battle's ticks: player, zigzag points **/
+    public static final int POINTS = 5;
+    /** Command.ContestTile applied: player, row, col **/
+    public static final int CONTEST = 6;
+    /** Command.Buy applied: player, row, col, unit type **/
+    public static final int BUY = 7;
+    /** Command.Act applied: player, row, col, action **/
+    public static final int ACT = 8;
+    /** Command.Move applied: player, row, col, target row, target col **/
+    public static final int MOVE = 9;
+    /** A player used an action, by command or by auto acting: player, row, col, action **/
+    public static final int ACTED = 10;
+    /** A contest finished: row, col, player **/
+    public static final int CAPTURED = 11;
+
+    /** Most bytes any record can take: a type byte and five 10 byte varints. **/
+    static final int MAX_RECORD = 1 + 5*10;
+
+    /** Action id used for the action of the unit on the acting tile, such as a farmer's GeneratePoint or a soldier's Attack. **/
+    static final int UNIT_ACTION = 0;
+
+    private LogFormat() {}
+
+    /** Id of a unit type. **/
+    public static int unitId(UnitData unitType) {
+        for (int i = 0; i < Units.ALL.length; i++) {
+            if (Units.ALL[i] == unitType) return i;
+        }
+        throw new IllegalArgumentException("Unit type has no log id: " + unitType);
+    }
+
+    /** Unit type with an id. **/
+    public static UnitData unitType(int id) {
+        if (id < 0 || id >= Units.ALL.length) throw new IllegalArgumentException("Unknown unit type id: " + id);
+        return Units.ALL[id];
+    }
+
+    /** Id of an action used on a tile. **/
+    public static int actionId(Action action, Tile tile) {
+        for (int i = 0; i < Actions.ALL.length; i++) {
+            if (Actions.ALL[i] == action) return i + 1;
+        }
+        if (tile.hasUnit() && tile.getUnit().getData().getAction() == action) return UNIT_ACTION;
+        throw new IllegalArgumentException("Action has no log id: " + action);
+    }
+
+    /** Action with an id, used on a tile. **/
+    public static Action action(int id, Tile tile) {
+        if (id == UNIT_ACTION) {
+            if (!tile.hasUnit()) throw new IllegalStateException("No unit to act with on " + tile);
+            return tile.getUnit().getData().getAction();
+        }
+        if (id < 0 || id > Actions.ALL.length) throw new IllegalArgumentException("Unknown action id: " + id);
+        return Actions.ALL[id - 1];
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
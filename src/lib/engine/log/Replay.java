@@ -0,0 +1,280 @@
+package lib.engine.log;
+
+import lib.engine.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Drives a fresh battle from a log written by ActionLog, as fast as the simulation can tick.
+ * Only the log's inputs (setup, points and commands) are applied; everything else, including the logged events,
+ * follows from them because the battle is deterministic. verify() checks that it really does.
+ * Usage: create with open(), then call run() or step() through the log, and inspect getBattle().
+ * With Keyframes, seek() jumps to any tick by restoring the nearest keyframe and replaying only the log after it.
+ * Seeking replaces the battle, so get it again afterwards. **/
+public class Replay implements Closeable {
+    /** Where records are read from. **/
+    private final ReadableByteChannel channel;
+    /** Records read from the channel but not applied yet. **/
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(ActionLog.BUFFER_SIZE);
+    /** If the channel has no more bytes to read. **/
+    private boolean end;
+    /** Offset in the log of the end of the bytes read from the channel. **/
+    private long read;
+    /** The battle being replayed. **/
+    private Battle battle;
+    /** Amount of records applied so far. **/
+    private long records;
+    /** Tick the log has reached. The battle is ticked up to it before the next record is applied. **/
+    private long stamped;
+
+    /** Terrain generator used when the log's battle was not seeded. **/
+    private TerrainGenerator terrain;
+    /** Header fields needed to create the battle again when seeking back before the first keyframe. **/
+    private final int rows, cols;
+    private final int[] colors;
+    /** Offset in the log of the first record. **/
+    private final long headerEnd;
+    /** Keyframes to seek with, or null. **/
+    private Keyframes keyframes;
+
+    /** Read a log's header and create the battle it recorded.
+     * @param terrain generator of the battle's terrain, only used if the log's battle was not generated from a seed **/
+    public Replay(ReadableByteChannel channel, TerrainGenerator terrain) throws IOException {
+        this.channel = channel;
+        buffer.flip();
+        fill();
+        if (buffer.remaining() < 4 || buffer.getInt() != LogFormat.MAGIC) throw new IOException("Not a battle log");
+        int version = (int) getVarint();
+        if (version != LogFormat.VERSION) throw new IOException("Unsupported battle log version: " + version);
+        rows = (int) getVarint();
+        cols = (int) getVarint();
+        if (buffer.get() != 0) {
+            terrain = new SlopeTerrain(buffer.getLong());
+        } else if (terrain == null) {
+            throw new IllegalArgumentException("Log's battle was not seeded, so its terrain generator must be given");
+        }
+        this.terrain = terrain;
+        colors = new int[(int) getVarint()];
+        for (int i = 0; i < colors.length; i++) colors[i] = (int) getVarint();
+        headerEnd = position();
+        battle = createBattle();
+    }
+
+    /** A new battle as it was when the log started. **/
+    private Battle createBattle() {
+        Player[] players = new Player[colors.length];
+        for (int i = 0; i < players.length; i++) players[i] = new Player(colors[i]);
+        return new Battle(rows, cols, terrain, players);
+    }
+
+    /** Open a log file to replay. **/
+    public static Replay open(Path file) throws IOException {
+        return new Replay(FileChannel.open(file), null);
+    }
+
+    /** Apply the next record of the log.
+     * @return false if the log has ended **/
+    public boolean step() throws IOException {
+        fill();
+        if (!buffer.hasRemaining()) {
+            catchUp(stamped);
+            return false;
+        }
+        int type = buffer.get();
+        if (type != LogFormat.TICK) catchUp(stamped);
+        switch (type) {
+            case LogFormat.TICK: {
+                stamped += getVarint();
+                break;
+            }
+            case LogFormat.CLAIM: {
+                int row = (int) getVarint(), col = (int) getVarint();
+                battle.claim(player(), row, col);
+                break;
+            }
+            case LogFormat.PLACE: {
+                int row = (int) getVarint(), col = (int) getVarint();
+                Player player = player();
+                battle.placeUnit(player, LogFormat.unitType((int) getVarint()), row, col);
+                break;
+            }
+            case LogFormat.TERRAIN: {
+                int row = (int) getVarint(), col = (int) getVarint(), depth = (int) getVarint();
+                battle.setTerrain(row, col, depth, (int) getVarint());
+                break;
+            }
+            case LogFormat.POINTS: {
+                Player player = player();
+                player.getLedger().set(LogFormat.unzigzag(getVarint()));
+                break;
+            }
+            case LogFormat.CONTEST: {
+                Player player = player();
+                int row = (int) getVarint(), col = (int) getVarint();
+                battle.submit(new Command.ContestTile(player, row, col));
+                break;
+            }
+            case LogFormat.BUY: {
+                Player player = player();
+                int row = (int) getVarint(), col = (int) getVarint();
+                battle.submit(new Command.Buy(player, LogFormat.unitType((int) getVarint()), row, col));
+                break;
+            }
+            case LogFormat.ACT: {
+                Player player = player();
+                int row = (int) getVarint(), col = (int) getVarint();
+                Action action = LogFormat.action((int) getVarint(), battle.getTile(row, col));
+                battle.submit(new Command.Act(player, action, row, col));
+                break;
+            }
+            case LogFormat.MOVE: {
+                Player player = player();
+                int row = (int) getVarint(), col = (int) getVarint();
+                int targetRow = (int) getVarint(), targetCol = (int) getVarint();
+                battle.submit(new Command.Move(player, row, col, targetRow, targetCol));
+                break;
+            }
+            // Events follow from the inputs, so they are only read past
+            case LogFormat.ACTED: {
+                for (int i = 0; i < 4; i++) getVarint();
+                break;
+            }
+            case LogFormat.CAPTURED: {
+                for (int i = 0; i < 3; i++) getVarint();
+                break;
+            }
+            default:
+                throw new IOException("Unknown battle log record type " + type + " after " + records + " records");
+        }
+        records++;
+        return true;
+    }
+
+    /** Apply the rest of the log.
+     * @return the amount of ticks the battle ran for **/
+    public long run() throws IOException {
+        while (step());
+        return battle.getScheduler().getTick();
+    }
+
+    /** Bring the battle to a tick, forwards or backwards, or to the end of the log if it ends first.
+     * Restores the last keyframe before the tick if that is closer than the current tick, so only the log after it is replayed.
+     * Without keyframes, seeking backwards replays the log from the start. **/
+    public void seek(long tick) throws IOException {
+        long now = battle.getScheduler().getTick();
+        int keyframe = keyframes == null ? -1 : keyframes.find(tick);
+        if (keyframe != -1 && (keyframes.getTick(keyframe) > now || tick < now)) {
+            battle = keyframes.restore(keyframe, terrain);
+            rewind(keyframes.getLogOffset(keyframe), keyframes.getLogTick(keyframe));
+        } else if (tick < now) {
+            battle = createBattle();
+            rewind(headerEnd, 0);
+        }
+
+        while (battle.getScheduler().getTick() < tick) {
+            if (stamped > battle.getScheduler().getTick()) {
+                catchUp(Math.min(stamped, tick));
+            } else if (!step()) {
+                break;
+            }
+        }
+    }
+
+    /** Tick the battle until it reaches a tick. **/
+    private void catchUp(long tick) {
+        while (battle.getScheduler().getTick() < tick) battle.tick();
+    }
+
+    /** Continue reading the log from an offset, whose last record before it was stamped with a tick. **/
+    private void rewind(long offset, long tick) throws IOException {
+        if (!(channel instanceof SeekableByteChannel)) throw new IllegalStateException("Log cannot be rewound, so it cannot be seeked back");
+        ((SeekableByteChannel) channel).position(offset);
+        read = offset;
+        buffer.clear().flip();
+        end = false;
+        stamped = tick;
+    }
+
+    /** Seek with keyframes recorded beside this log. **/
+    public void setKeyframes(Keyframes keyframes) {
+        this.keyframes = keyframes;
+    }
+    /** Replay a log while recording the replay, and compare the two logs byte for byte.
+     * Since events are logged as well as inputs, a replay that drifts from the original battle in any way shows up here.
+     * @return -1 if the replay matched the original, or the offset of the first byte that differs **/
+    public static long verify(Path file) throws IOException {
+        byte[] original = Files.readAllBytes(file);
+        ByteArrayOutputStream copy = new ByteArrayOutputStream(original.length);
+        try (Replay replay = open(file)) {
+            ActionLog log = new ActionLog(replay.getBattle(), Channels.newChannel(copy));
+            replay.run();
+            log.close();
+        }
+        byte[] replayed = copy.toByteArray();
+        for (int i = 0; i < Math.min(original.length, replayed.length); i++) {
+            if (original[i] != replayed[i]) return i;
+        }
+        return original.length == replayed.length ? -1 : Math.min(original.length, replayed.length);
+    }
+
+    /** Stops replaying. Also closes the keyframes, if any. **/
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        if (keyframes != null) keyframes.close();
+    }
+
+    // ======== ACCESSORS
+    public Battle getBattle() {
+        return battle;
+    }
+
+    /** Amount of records applied so far. **/
+    public long getRecords() {
+        return records;
+    }
+
+    /** Offset in the log of the next record. **/
+    public long position() {
+        return read - buffer.remaining();
+    }
+
+    // ==== READING
+    /** Read more of the channel if less than a whole record is buffered. **/
+    private void fill() throws IOException {
+        if (end || buffer.remaining() >= LogFormat.MAX_RECORD) return;
+        buffer.compact();
+        while (buffer.hasRemaining()) {
+            int bytes = channel.read(buffer);
+            if (bytes < 0) {
+                end = true;
+                break;
+            }
+            read += bytes;
+        }
+        buffer.flip();
+    }
+
+    private Player player() throws IOException {
+        return battle.getPlayer((int) getVarint());
+    }
+
+    private long getVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!buffer.hasRemaining()) throw new IOException("Battle log ends in the middle of a record");
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed varint in battle log");
+    }
+}
@@ -0,0 +1,54 @@
+package lib.engine.path;
+
+import lib.engine.TileChunk;
+
+import java.util.Arrays;
+
+/** Cached abstract graph of one cluster (one TileChunk) for one player, in two stages.
+ * The first is which way a unit can step from each of its tiles, and which connected area inside the cluster each tile is in.
+ * The second is its entrances, the tiles just over the border each one leads to, and the walking distance between entrances
+ * that can reach each other inside the cluster. The second stage also depends on the first stage of the neighbouring clusters. **/
+class ClusterGraph {
+    /** Most entrances a cluster can have: at most one per crossing tile along each of its 4 sides. **/
+    static final int MAX_ENTRANCES = 4 * TileChunk.SIZE;
+
+    /** If the moves and areas match the current terrain and ownership. **/
+    boolean movesValid;
+    /** If the entrances and edges match the current terrain and ownership, here and in the neighbouring clusters. **/
+    boolean valid;
+    /** Incremented on each rebuild, so cached references to this cluster's entrances can tell they are stale. **/
+    int version;
+
+    /** Directions a unit can step from each tile by local position, one bit per Pathfinder direction. **/
+    final byte[] moves = new byte[TileChunk.TILES];
+    /** Connected area inside the cluster of each tile by local position, -1 for tiles the player can't stand on. **/
+    final short[] area = new short[TileChunk.TILES];
+
+    /** Amount of entrances. **/
+    int size;
+    /** Tile index of each entrance, inside this cluster. **/
+    final int[] tile = new int[MAX_ENTRANCES];
+    /** Row and column of each entrance's tile. **/
+    final int[] row = new int[MAX_ENTRANCES], col = new int[MAX_ENTRANCES];
+    /** Tile index each entrance crosses into, in the neighbouring cluster. **/
+    final int[] partner = new int[MAX_ENTRANCES];
+    /** The entrance of the neighbouring cluster on the partner tile, valid while that cluster's version is partnerVersion. **/
+    final int[] partnerEntrance = new int[MAX_ENTRANCES], partnerVersion = new int[MAX_ENTRANCES];
+
+    /** Edges between entrances of this cluster: those from entrance e are at [edgeStart[e], edgeStart[e+1]). **/
+    final int[] edgeStart = new int[MAX_ENTRANCES + 1];
+    int[] edgeTo = new int[16], edgeCost = new int[16];
+
+    ClusterGraph() {
+        // Never matches a fresh partner version until resolved
+        Arrays.fill(partnerVersion, -1);
+    }
+
+    /** The entrance on a tile leading to a partner tile, or -1. **/
+    int find(int tile, int partner) {
+        for (int e = 0; e < size; e++) {
+            if (this.tile[e] == tile && this.partner[e] == partner) return e;
+        }
+        return -1;
+    }
+}
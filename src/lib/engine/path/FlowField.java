@@ -0,0 +1,226 @@
+package lib.engine.path;
+
+import lib.engine.IntSet;
+import lib.engine.Territory;
+import lib.engine.TileStore;
+
+import java.util.Arrays;
+
+/** Distance from every tile to the nearest of a set of goal tiles for one player's units, and the step to take from each tile
+ * to get closer, so any number of units heading to the same goals only need one lookup per step.
+ * Units walk as in Pathfinder, over their owner's land, and tiles with a unit on them can be stepped off but not through.
+ * Goal tiles don't need to be walkable: units path to stand next to them, such as next to an enemy castle or an unclaimed tile.
+ *
+ * Changed tiles are queued by the FlowFieldCache and repaired on the next lookup: only tiles whose route ran through a changed
+ * tile are recomputed, and shorter routes a change opened up are spread from there. **/
+public class FlowField {
+    /** Distance of tiles that cannot reach a goal. **/
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final int[] DIR_ROW = {-1, 1, 0, 0}, DIR_COL = {0, 0, -1, 1};
+
+    private final TileStore store;
+    private final Territory territory;
+    private final Pathfinder pathfinder;
+    private final int playerId;
+    private final int[] goals;
+    private final IntSet goalSet;
+
+    /** Steps to the nearest goal by tile index. **/
+    private final int[] dist;
+    /** Direction of the next step toward a goal by tile index (an index into DIR_ROW/DIR_COL), -1 if none. **/
+    private final byte[] dir;
+    /** If the field has been fully computed at least once since it was created or given up on. **/
+    private boolean computed;
+    /** Tiles changed since the last repair. **/
+    private final IntSet pending = new IntSet();
+
+    private long[] heap = new long[64];
+    private int heapSize;
+
+    FlowField(TileStore store, Territory territory, Pathfinder pathfinder, int playerId, int[] goals) {
+        this.store = store;
+        this.territory = territory;
+        this.pathfinder = pathfinder;
+        this.playerId = playerId;
+        this.goals = goals;
+        goalSet = new IntSet(goals.length);
+        for (int goal : goals) goalSet.add(goal);
+        dist = new int[store.capacity()];
+        dir = new byte[store.capacity()];
+    }
+
+    // ======== LOOKUPS
+    /** Steps from the tile at index to stand on or next to the nearest goal, or -1 if no goal can be reached. **/
+    public int distance(int index) {
+        repair();
+        return dist[index] == UNREACHABLE ? -1 : dist[index];
+    }
+
+    /** Index of the tile to step to from the tile at index to get closer to a goal, or -1 if there is none. **/
+    public int next(int index) {
+        repair();
+        int d = dir[index];
+        return d == -1 ? -1 : store.index(store.row(index) + DIR_ROW[d], store.col(index) + DIR_COL[d]);
+    }
+
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    /** Goal tile indexes, sorted. Do not modify. **/
+    public int[] getGoals() {
+        return goals;
+    }
+
+    // ======== UPDATES
+    /** Queue a tile whose ownership, terrain or unit changed, to be repaired on the next lookup. **/
+    void tileChanged(int index) {
+        if (!computed) return;
+        // Past a point, one full recompute is cheaper than repairing each change
+        if (pending.size() > dist.length >>> 6) {
+            computed = false;
+            pending.clear();
+        } else {
+            pending.add(index);
+        }
+    }
+
+    private void repair() {
+        if (!computed) {
+            compute();
+        } else if (!pending.isEmpty()) {
+            repairPending();
+        }
+    }
+
+    /** Breadth-first search out from every goal at once. **/
+    private void compute() {
+        Arrays.fill(dist, UNREACHABLE);
+        Arrays.fill(dir, (byte) -1);
+        int[] queue = new int[Math.max(goals.length, 16)];
+        int head = 0, tail = 0;
+        for (int goal : goals) {
+            dist[goal] = 0;
+            queue[tail++] = goal;
+        }
+        while (head < tail) {
+            int tile = queue[head++];
+            if (!expandable(tile)) continue;
+            int row = store.row(tile), col = store.col(tile);
+            for (int d = 0; d < 4; d++) {
+                int next = enter(row, col, d);
+                if (next == -1 || dist[next] != UNREACHABLE) continue;
+                dist[next] = dist[tile] + 1;
+                dir[next] = (byte) (d ^ 1);
+                if (tail == queue.length) queue = Arrays.copyOf(queue, tail * 2);
+                queue[tail++] = next;
+            }
+        }
+        computed = true;
+        pending.clear();
+    }
+
+    /** Recompute the tiles whose route to a goal ran through a changed tile, then spread any shorter routes from them. **/
+    private void repairPending() {
+        // Every tile whose chain of next steps passes through a changed tile
+        IntSet affected = new IntSet(pending.size() * 4);
+        int[] stack = pending.toArray();
+        int top = stack.length;
+        while (top > 0) {
+            int tile = stack[--top];
+            if (!affected.add(tile)) continue;
+            int row = store.row(tile), col = store.col(tile);
+            for (int d = 0; d < 4; d++) {
+                int r = row + DIR_ROW[d], c = col + DIR_COL[d];
+                if (!store.withinBounds(r, c)) continue;
+                int neighbour = store.index(r, c);
+                if (dir[neighbour] != (d ^ 1)) continue;
+                if (top == stack.length) stack = Arrays.copyOf(stack, Math.max(top * 2, 16));
+                stack[top++] = neighbour;
+            }
+        }
+        pending.clear();
+
+        int[] tiles = affected.toArray();
+        for (int tile : tiles) {
+            dist[tile] = UNREACHABLE;
+            dir[tile] = -1;
+        }
+
+        // Reseed each affected tile from its unaffected neighbours
+        heapSize = 0;
+        for (int tile : tiles) {
+            if (goalSet.contains(tile)) {
+                dist[tile] = 0;
+            } else {
+                int row = store.row(tile), col = store.col(tile);
+                for (int d = 0; d < 4; d++) {
+                    int r = row + DIR_ROW[d], c = col + DIR_COL[d];
+                    if (!store.withinBounds(r, c)) continue;
+                    int from = store.index(r, c);
+                    if (affected.contains(from) || dist[from] == UNREACHABLE || !expandable(from)) continue;
+                    if (enter(r, c, d ^ 1) != tile || dist[from] + 1 >= dist[tile]) continue;
+                    dist[tile] = dist[from] + 1;
+                    dir[tile] = (byte) d;
+                }
+            }
+            if (dist[tile] != UNREACHABLE) push((long) dist[tile] << 32 | tile);
+        }
+
+        // Dijkstra from the reseeded tiles, lowering any distance a shorter route reaches
+        while (heapSize > 0) {
+            long entry = pop();
+            int tile = (int) entry, d0 = (int) (entry >>> 32);
+            if (d0 != dist[tile] || !expandable(tile)) continue;
+            int row = store.row(tile), col = store.col(tile);
+            for (int d = 0; d < 4; d++) {
+                int next = enter(row, col, d);
+                if (next == -1 || d0 + 1 >= dist[next]) continue;
+                dist[next] = d0 + 1;
+                dir[next] = (byte) (d ^ 1);
+                push((long) (d0 + 1) << 32 | next);
+            }
+        }
+    }
+
+    /** If routes continue on from a tile: goals, and tiles of the player without a unit on them. **/
+    private boolean expandable(int tile) {
+        return goalSet.contains(tile) || territory.owns(playerId, tile) && store.unit(tile) == 0;
+    }
+
+    /** The tile a unit could step onto from the tile at row, col in direction d, or -1 if it can't. **/
+    private int enter(int row, int col, int d) {
+        int r = row + DIR_ROW[d], c = col + DIR_COL[d];
+        if (!store.withinBounds(r, c)) return -1;
+        int tile = store.index(r, c);
+        if (!territory.owns(playerId, tile) || !pathfinder.canClimb(row, col, DIR_ROW[d], DIR_COL[d])) return -1;
+        return tile;
+    }
+
+    private void push(long entry) {
+        if (heapSize == heap.length) heap = Arrays.copyOf(heap, heapSize * 2);
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= entry) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = entry;
+    }
+
+    private long pop() {
+        long top = heap[0], last = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2*i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) child++;
+            if (heap[child] >= last) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+}
@@ -0,0 +1,83 @@
+package lib.engine.path;
+
+import lib.engine.Territory;
+import lib.engine.TileStore;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Flow fields of a battle keyed by player and goal set, keeping the most recently used ones and evicting the rest.
+ * Cached fields are told about every changed tile so they stay correct. Look fields up again each tick rather than
+ * holding on to them, since an evicted field is no longer updated. **/
+public class FlowFieldCache {
+    private final TileStore store;
+    private final Territory territory;
+    private final Pathfinder pathfinder;
+    private final LinkedHashMap<Key, FlowField> fields;
+
+    public FlowFieldCache(TileStore store, Territory territory, Pathfinder pathfinder, int capacity) {
+        this.store = store;
+        this.territory = territory;
+        this.pathfinder = pathfinder;
+        fields = new LinkedHashMap<Key, FlowField>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, FlowField> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** The flow field leading the player's units toward the given goal tile indexes, creating it if it isn't cached. **/
+    public FlowField get(int playerId, int... goals) {
+        int[] sorted = goals.clone();
+        Arrays.sort(sorted);
+        Key key = new Key(playerId, sorted);
+        FlowField field = fields.get(key);
+        if (field == null) {
+            field = new FlowField(store, territory, pathfinder, playerId, sorted);
+            fields.put(key, field);
+        }
+        return field;
+    }
+
+    /** Update fields after the tile at index changed from owner oldId to newId. Only those players' fields can change. **/
+    public void ownerChanged(int index, int oldId, int newId) {
+        for (FlowField field : fields.values()) {
+            if (field.getPlayerId() == oldId || field.getPlayerId() == newId) field.tileChanged(index);
+        }
+    }
+
+    /** Update fields after the terrain of the tile at index changed, or a unit was placed on or removed from it. **/
+    public void tileChanged(int index) {
+        for (FlowField field : fields.values()) field.tileChanged(index);
+    }
+
+    public int size() {
+        return fields.size();
+    }
+
+    private static class Key {
+        private final int playerId;
+        private final int[] goals;
+        private final int hash;
+
+        private Key(int playerId, int[] goals) {
+            this.playerId = playerId;
+            this.goals = goals;
+            hash = 31 * playerId + Arrays.hashCode(goals);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return playerId == other.playerId && Arrays.equals(goals, other.goals);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
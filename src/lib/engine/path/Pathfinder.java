@@ -0,0 +1,478 @@
+package lib.engine.path;
+
+import lib.engine.Corners;
+import lib.engine.GameConstants;
+import lib.engine.Territory;
+import lib.engine.TileChunk;
+import lib.engine.TileStore;
+
+import java.util.Arrays;
+
+/** Hierarchical pathfinding (HPA*) over a battle's map.
+ * A unit can step onto an orthogonally adjacent tile if its owner has claimed it and the two corners on the shared edge
+ * of both tiles' bases differ by at most GameConstants.MAX_CLIMB.
+ *
+ * The map is split into clusters, one per TileChunk. For each player, each cluster caches which way a unit can step from each
+ * of its tiles, the connected areas inside it, its entrances (one crossing per pair of areas that meet along each border)
+ * and the distances between them, forming a small abstract graph. A query searches the abstract graph with A*,
+ * then fills in the tile-level path one cluster at a time with a local A*.
+ * Cached clusters are only rebuilt after ownership or terrain changes in that cluster or next to it. **/
+public class Pathfinder {
+    /** Distance used for tiles or entrances that cannot be reached. **/
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /** Step directions, as bits in ClusterGraph.moves: up a row, down a row, left a column, right a column. **/
+    private static final int[] DIR_ROW = {-1, 1, 0, 0}, DIR_COL = {0, 0, -1, 1};
+
+    private static final int SIZE = TileChunk.SIZE, TILES = TileChunk.TILES, SHIFT = TileChunk.BITS * 2;
+    /** Abstract nodes are keyed by chunk id << ENTRANCE_BITS | entrance. **/
+    private static final int ENTRANCE_BITS = 7;
+    /** Heap entries pack the estimated total cost, then the inverted cost so far as a tie-breaker, then the node.
+     * The tie-breaker saturates past G_MASK, which only costs some extra expansions on very long paths. **/
+    private static final int G_SHIFT = 24, F_SHIFT = 36;
+    private static final long NODE_MASK = (1L << G_SHIFT) - 1, G_MASK = (1L << (F_SHIFT - G_SHIFT)) - 1;
+
+    private final TileStore store;
+    private final Territory territory;
+    private final int chunkRows, chunkCols;
+    /** Abstract graph of each cluster by player id, then chunk id. Null until first needed. **/
+    private final ClusterGraph[][] graphs;
+
+    // Search state, reused between queries
+    private final int[] g, from, stamp;
+    private final int goalNode;
+    private int search;
+    private int goalRow, goalCol;
+    private long[] heap = new long[64];
+    private int heapSize;
+    private final int[] startDist = new int[TILES], goalDist = new int[TILES], localDist = new int[TILES],
+            localFrom = new int[TILES], queue = new int[TILES];
+    /** Queue length after the last bfs(), so the queue holds every tile it reached. **/
+    private int tail;
+    /** Positions and area pairs of the crossings along one border, used while adding entrances. **/
+    private final int[] crossing = new int[SIZE], crossingPair = new int[SIZE];
+    private int[] path = new int[64];
+    private int pathLength;
+
+    /** @throws IllegalArgumentException if the map has too many chunks or tiles to fit in a heap entry,
+     * which allows maps up to 8192 tiles across **/
+    public Pathfinder(TileStore store, Territory territory, int players) {
+        this.store = store;
+        this.territory = territory;
+        chunkRows = (store.rows + SIZE - 1) >> TileChunk.BITS;
+        chunkCols = (store.cols + SIZE - 1) >> TileChunk.BITS;
+        // The goal node is the largest node, and no path costs more than every tile plus the heuristic's largest value
+        if (((long) chunkRows * chunkCols << ENTRANCE_BITS) > NODE_MASK
+                || (long) store.rows * store.cols + store.rows + store.cols >= 1L << (63 - F_SHIFT)) {
+            throw new IllegalArgumentException("Map too large to find paths on: " + store.rows + "x" + store.cols);
+        }
+        graphs = new ClusterGraph[players + 1][];
+        goalNode = chunkRows * chunkCols << ENTRANCE_BITS;
+        g = new int[goalNode + 1];
+        from = new int[goalNode + 1];
+        stamp = new int[goalNode + 1];
+    }
+
+    // ======== INVALIDATION
+    /** Forget cached graphs affected by the tile at index changing from owner oldId to newId. **/
+    public void ownerChanged(int index, int oldId, int newId) {
+        invalidate(index, oldId);
+        invalidate(index, newId);
+    }
+
+    /** Forget cached graphs affected by the terrain of the tile at index changing. **/
+    public void terrainChanged(int index) {
+        for (int id = 1; id < graphs.length; id++) invalidate(index, id);
+    }
+
+    /** Invalidate the tile's cluster. The neighbouring clusters' entrances depend on its areas, so they are invalidated too,
+     * along with their moves if the tile is on their border. **/
+    private void invalidate(int index, int id) {
+        if (id == 0 || graphs[id] == null) return;
+        ClusterGraph[] clusters = graphs[id];
+        int chunk = index >>> SHIFT, r = store.row(index) & (SIZE-1), c = store.col(index) & (SIZE-1);
+        int cr = chunk / chunkCols, cc = chunk % chunkCols;
+        invalidate(clusters, chunk, true);
+        if (cr > 0) invalidate(clusters, chunk - chunkCols, r == 0);
+        if (cr < chunkRows-1) invalidate(clusters, chunk + chunkCols, r == SIZE-1);
+        if (cc > 0) invalidate(clusters, chunk - 1, c == 0);
+        if (cc < chunkCols-1) invalidate(clusters, chunk + 1, c == SIZE-1);
+    }
+
+    private static void invalidate(ClusterGraph[] clusters, int chunk, boolean moves) {
+        ClusterGraph cluster = clusters[chunk];
+        if (cluster == null) return;
+        cluster.valid = false;
+        if (moves) cluster.movesValid = false;
+    }
+
+    // ======== QUERIES
+    /** Path found for the player from one tile to another, as tile indexes including both ends, or null if there is none.
+     * Paths within one cluster are the shortest; longer paths may be slightly longer than the shortest. **/
+    public int[] findPath(int playerId, int start, int goal) {
+        if (!territory.owns(playerId, start) || !territory.owns(playerId, goal)) return null;
+        pathLength = 0;
+        append(start);
+        if (start == goal) return Arrays.copyOf(path, pathLength);
+
+        int startChunk = start >>> SHIFT;
+        if (startChunk == goal >>> SHIFT) {
+            localSearch(cluster(playerId, startChunk), start & (TILES-1), goal & (TILES-1));
+            if (localDist[goal & (TILES-1)] != UNREACHABLE) {
+                appendLocal(goal);
+                return Arrays.copyOf(path, pathLength);
+            }
+        }
+        if (abstractSearch(playerId, start, goal) == UNREACHABLE) return null;
+
+        // Walk the abstract path back to front, then fill in each leg
+        int legs = 0;
+        for (int node = from[goalNode]; node != -1; node = from[node]) legs++;
+        int[] nodes = new int[legs];
+        for (int node = from[goalNode], i = legs-1; node != -1; node = from[node], i--) nodes[i] = node;
+
+        int at = start;
+        for (int i = 0; i < legs; i++) {
+            ClusterGraph cluster = graphs[playerId][nodes[i] >>> ENTRANCE_BITS];
+            int e = nodes[i] & (ClusterGraph.MAX_ENTRANCES-1);
+            int tile = cluster.tile[e];
+            if (tile != at) localPath(playerId, at, tile);
+            // Consecutive entrances in different clusters are the two sides of one crossing
+            if (i+1 < legs && (nodes[i+1] >>> ENTRANCE_BITS) != (nodes[i] >>> ENTRANCE_BITS)) {
+                append(cluster.partner[e]);
+                at = cluster.partner[e];
+                i++;
+            } else {
+                at = tile;
+            }
+        }
+        if (at != goal) localPath(playerId, at, goal);
+        return Arrays.copyOf(path, pathLength);
+    }
+
+    /** Length of the path findPath() would return, without building it, or -1 if there is none. **/
+    public int distance(int playerId, int start, int goal) {
+        if (!territory.owns(playerId, start) || !territory.owns(playerId, goal)) return -1;
+        if (start == goal) return 0;
+        if (start >>> SHIFT == goal >>> SHIFT) {
+            localSearch(cluster(playerId, start >>> SHIFT), start & (TILES-1), goal & (TILES-1));
+            if (localDist[goal & (TILES-1)] != UNREACHABLE) return localDist[goal & (TILES-1)];
+        }
+        int cost = abstractSearch(playerId, start, goal);
+        return cost == UNREACHABLE ? -1 : cost;
+    }
+
+    /** A* over the abstract graph from the start's entrances to the goal. Returns the cost to reach the goal, or UNREACHABLE. **/
+    private int abstractSearch(int playerId, int start, int goal) {
+        int startChunk = start >>> SHIFT, goalChunk = goal >>> SHIFT;
+        ClusterGraph startCluster = cluster(playerId, startChunk), goalCluster = cluster(playerId, goalChunk);
+        bfs(startCluster, start & (TILES-1), startDist);
+        bfs(goalCluster, goal & (TILES-1), goalDist);
+
+        search++;
+        heapSize = 0;
+        goalRow = store.row(goal);
+        goalCol = store.col(goal);
+        for (int e = 0; e < startCluster.size; e++) {
+            int d = startDist[startCluster.tile[e] & (TILES-1)];
+            if (d != UNREACHABLE) relax(startChunk << ENTRANCE_BITS | e, d, -1, startCluster.row[e], startCluster.col[e]);
+        }
+
+        while (heapSize > 0) {
+            long top = pop();
+            int node = (int) (top & NODE_MASK);
+            if (node == goalNode) return g[goalNode];
+            int chunk = node >>> ENTRANCE_BITS, e = node & (ClusterGraph.MAX_ENTRANCES-1);
+            ClusterGraph cluster = graphs[playerId][chunk];
+            // Skip entries superseded by a shorter path since they were pushed
+            if ((int) (top >>> F_SHIFT) != g[node] + heuristic(cluster.row[e], cluster.col[e])) continue;
+            int cost = g[node];
+
+            if (chunk == goalChunk) {
+                int d = goalDist[cluster.tile[e] & (TILES-1)];
+                if (d != UNREACHABLE) relax(goalNode, cost + d, node, goalRow, goalCol);
+            }
+            int base = chunk << ENTRANCE_BITS;
+            for (int i = cluster.edgeStart[e]; i < cluster.edgeStart[e+1]; i++) {
+                int e2 = cluster.edgeTo[i];
+                relax(base | e2, cost + cluster.edgeCost[i], node, cluster.row[e2], cluster.col[e2]);
+            }
+
+            int partnerChunk = cluster.partner[e] >>> SHIFT;
+            ClusterGraph other = cluster(playerId, partnerChunk);
+            if (cluster.partnerVersion[e] != other.version) {
+                cluster.partnerEntrance[e] = other.find(cluster.partner[e], cluster.tile[e]);
+                cluster.partnerVersion[e] = other.version;
+            }
+            int e2 = cluster.partnerEntrance[e];
+            if (e2 != -1) relax(partnerChunk << ENTRANCE_BITS | e2, cost + 1, node, other.row[e2], other.col[e2]);
+        }
+        return UNREACHABLE;
+    }
+
+    private void relax(int node, int cost, int parent, int row, int col) {
+        if (stamp[node] == search && g[node] <= cost) return;
+        stamp[node] = search;
+        g[node] = cost;
+        from[node] = parent;
+        // Among equal estimates, expand the node furthest along first, which avoids expanding every tied node on open ground
+        push((long) (cost + heuristic(row, col)) << F_SHIFT | (G_MASK - Math.min(cost, G_MASK)) << G_SHIFT | node);
+    }
+
+    private int heuristic(int row, int col) {
+        return Math.abs(row - goalRow) + Math.abs(col - goalCol);
+    }
+
+    /** Append the tile path from one tile to another in the same cluster, excluding the first tile. **/
+    private void localPath(int playerId, int fromTile, int toTile) {
+        localSearch(cluster(playerId, fromTile >>> SHIFT), fromTile & (TILES-1), toTile & (TILES-1));
+        appendLocal(toTile);
+    }
+
+    /** A* between two local positions within a cluster, filling localDist and localFrom. **/
+    private void localSearch(ClusterGraph cluster, int start, int target) {
+        Arrays.fill(localDist, UNREACHABLE);
+        int targetRow = target >> TileChunk.BITS, targetCol = target & (SIZE-1);
+        heapSize = 0;
+        localDist[start] = 0;
+        push((long) localHeuristic(start, targetRow, targetCol) << F_SHIFT | G_MASK << G_SHIFT | start);
+
+        while (heapSize > 0) {
+            long top = pop();
+            int local = (int) (top & NODE_MASK);
+            if (local == target) return;
+            int cost = localDist[local];
+            if ((int) (top >>> F_SHIFT) != cost + localHeuristic(local, targetRow, targetCol)) continue;
+
+            for (int dir = 0, moves = insideMoves(cluster, local); dir < 4; dir++) {
+                if ((moves & 1 << dir) == 0) continue;
+                int next = local + (DIR_ROW[dir] << TileChunk.BITS) + DIR_COL[dir];
+                if (localDist[next] <= cost + 1) continue;
+                localDist[next] = cost + 1;
+                localFrom[next] = local;
+                push((long) (cost + 1 + localHeuristic(next, targetRow, targetCol)) << F_SHIFT | (G_MASK - cost - 1) << G_SHIFT | next);
+            }
+        }
+    }
+
+    private static int localHeuristic(int local, int targetRow, int targetCol) {
+        return Math.abs((local >> TileChunk.BITS) - targetRow) + Math.abs((local & (SIZE-1)) - targetCol);
+    }
+
+    /** Directions a unit can step from a local position without leaving the cluster. **/
+    private static int insideMoves(ClusterGraph cluster, int local) {
+        int moves = cluster.moves[local], r = local >> TileChunk.BITS, c = local & (SIZE-1);
+        if (r == 0) moves &= ~1;
+        if (r == SIZE-1) moves &= ~2;
+        if (c == 0) moves &= ~4;
+        if (c == SIZE-1) moves &= ~8;
+        return moves;
+    }
+
+    /** Append the path found by the last localSearch() into localFrom, up to the given tile, excluding the tile the search started on. **/
+    private void appendLocal(int toTile) {
+        int steps = localDist[toTile & (TILES-1)];
+        if (pathLength + steps > path.length) path = Arrays.copyOf(path, Math.max(path.length * 2, pathLength + steps));
+        int base = toTile & ~(TILES-1);
+        for (int local = toTile & (TILES-1), i = pathLength + steps - 1; i >= pathLength; local = localFrom[local], i--) {
+            path[i] = base | local;
+        }
+        pathLength += steps;
+    }
+
+    private void append(int tile) {
+        if (pathLength == path.length) path = Arrays.copyOf(path, path.length * 2);
+        path[pathLength++] = tile;
+    }
+
+    // ======== CLUSTERS
+    /** The abstract graph of a cluster for a player, rebuilding it if invalidated. **/
+    private ClusterGraph cluster(int playerId, int chunk) {
+        ClusterGraph cluster = areas(playerId, chunk);
+        if (!cluster.valid) build(playerId, chunk, cluster);
+        return cluster;
+    }
+
+    /** A cluster with at least its moves and areas up to date. **/
+    private ClusterGraph areas(int playerId, int chunk) {
+        if (graphs[playerId] == null) graphs[playerId] = new ClusterGraph[chunkRows * chunkCols];
+        ClusterGraph cluster = graphs[playerId][chunk];
+        if (cluster == null) cluster = graphs[playerId][chunk] = new ClusterGraph();
+        if (!cluster.movesValid) buildAreas(playerId, chunk, cluster);
+        return cluster;
+    }
+
+    private void buildAreas(int playerId, int chunk, ClusterGraph cluster) {
+        int originRow = (chunk / chunkCols) << TileChunk.BITS, originCol = (chunk % chunkCols) << TileChunk.BITS;
+        for (int r = 0; r < SIZE; r++) {
+            for (int c = 0; c < SIZE; c++) {
+                int moves = 0;
+                for (int dir = 0; dir < 4; dir++) {
+                    if (canStep(playerId, originRow + r, originCol + c, DIR_ROW[dir], DIR_COL[dir])) moves |= 1 << dir;
+                }
+                cluster.moves[TileChunk.local(r, c)] = (byte) moves;
+            }
+        }
+
+        // Label each connected area by flood filling from every tile not yet labelled
+        Arrays.fill(cluster.area, (short) -1);
+        short areas = 0;
+        for (int local = 0; local < TILES; local++) {
+            if (cluster.area[local] != -1) continue;
+            int r = local >> TileChunk.BITS, c = local & (SIZE-1);
+            if (!store.withinBounds(originRow + r, originCol + c) || !territory.owns(playerId, store.index(originRow + r, originCol + c))) continue;
+            bfs(cluster, local, localDist);
+            for (int i = 0; i < tail; i++) cluster.area[queue[i]] = areas;
+            areas++;
+        }
+        cluster.movesValid = true;
+        cluster.valid = false;
+    }
+
+    private void build(int playerId, int chunk, ClusterGraph cluster) {
+        cluster.version++;
+        cluster.size = 0;
+        int originRow = (chunk / chunkCols) << TileChunk.BITS, originCol = (chunk % chunkCols) << TileChunk.BITS;
+        int lastRow = Math.min(originRow + SIZE, store.rows) - 1, lastCol = Math.min(originCol + SIZE, store.cols) - 1;
+
+        // Both clusters on a border walk it in the same order, so they agree on where its entrances are
+        if (originRow > 0) addEntrances(playerId, cluster, chunk - chunkCols, originRow, originCol, 3, lastCol - originCol + 1, 0);
+        if (lastRow < store.rows-1) addEntrances(playerId, cluster, chunk + chunkCols, lastRow, originCol, 3, lastCol - originCol + 1, 1);
+        if (originCol > 0) addEntrances(playerId, cluster, chunk - 1, originRow, originCol, 1, lastRow - originRow + 1, 2);
+        if (lastCol < store.cols-1) addEntrances(playerId, cluster, chunk + 1, originRow, lastCol, 1, lastRow - originRow + 1, 3);
+
+        int edges = 0;
+        for (int e = 0; e < cluster.size; e++) {
+            cluster.edgeStart[e] = edges;
+            cluster.partnerVersion[e] = -1;
+            bfs(cluster, cluster.tile[e] & (TILES-1), localDist);
+            for (int e2 = 0; e2 < cluster.size; e2++) {
+                int d = localDist[cluster.tile[e2] & (TILES-1)];
+                if (e2 == e || d == UNREACHABLE) continue;
+                if (edges == cluster.edgeTo.length) {
+                    cluster.edgeTo = Arrays.copyOf(cluster.edgeTo, edges * 2);
+                    cluster.edgeCost = Arrays.copyOf(cluster.edgeCost, edges * 2);
+                }
+                cluster.edgeTo[edges] = e2;
+                cluster.edgeCost[edges] = d;
+                edges++;
+            }
+        }
+        cluster.edgeStart[cluster.size] = edges;
+        cluster.valid = true;
+    }
+
+    /** Walk length tiles in direction along from a tile on one side of a cluster, and add one entrance for each pair of areas,
+     * one on each side, that meet across the border in direction out: the middle one of the crossings between them.
+     * Any crossing could be swapped for that one without losing a route, since the areas are connected inside. **/
+    private void addEntrances(int playerId, ClusterGraph cluster, int neighbour, int row, int col, int along, int length, int out) {
+        ClusterGraph other = areas(playerId, neighbour);
+        int dRow = DIR_ROW[along], dCol = DIR_COL[along], outRow = DIR_ROW[out], outCol = DIR_COL[out];
+
+        int crossings = 0;
+        for (int i = 0; i < length; i++) {
+            int r = row + i*dRow, c = col + i*dCol;
+            if ((cluster.moves[local(r, c)] & 1 << out) == 0) continue;
+            crossing[crossings] = i;
+            crossingPair[crossings] = cluster.area[local(r, c)] << 16 | other.area[local(r + outRow, c + outCol)];
+            crossings++;
+        }
+
+        for (int i = 0; i < crossings; i++) {
+            int pair = crossingPair[i];
+            if (pair == -1) continue;
+            int count = 0;
+            for (int j = i; j < crossings; j++) {
+                if (crossingPair[j] == pair) count++;
+            }
+            for (int j = i, seen = 0; j < crossings; j++) {
+                if (crossingPair[j] != pair) continue;
+                crossingPair[j] = -1;
+                if (seen++ != count / 2) continue;
+                int mr = row + crossing[j]*dRow, mc = col + crossing[j]*dCol;
+                cluster.tile[cluster.size] = store.index(mr, mc);
+                cluster.row[cluster.size] = mr;
+                cluster.col[cluster.size] = mc;
+                cluster.partner[cluster.size] = store.index(mr + outRow, mc + outCol);
+                cluster.size++;
+            }
+        }
+    }
+
+    private static int local(int row, int col) {
+        return TileChunk.local(row & (SIZE-1), col & (SIZE-1));
+    }
+
+    /** Breadth-first search from a local position within a cluster, filling dist by local position. **/
+    private void bfs(ClusterGraph cluster, int start, int[] dist) {
+        Arrays.fill(dist, UNREACHABLE);
+        int head = 0;
+        tail = 0;
+        dist[start] = 0;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int local = queue[head++];
+            int moves = insideMoves(cluster, local);
+            for (int dir = 0; dir < 4; dir++) {
+                if ((moves & 1 << dir) == 0) continue;
+                int next = local + (DIR_ROW[dir] << TileChunk.BITS) + DIR_COL[dir];
+                if (dist[next] != UNREACHABLE) continue;
+                dist[next] = dist[local] + 1;
+                queue[tail++] = next;
+            }
+        }
+    }
+
+    // ======== TRAVERSAL
+    /** If a unit of the player can step from a tile to the orthogonally adjacent tile offset by dRow, dCol. **/
+    public boolean canStep(int playerId, int row, int col, int dRow, int dCol) {
+        int toRow = row + dRow, toCol = col + dCol;
+        if (!store.withinBounds(row, col) || !store.withinBounds(toRow, toCol)) return false;
+        if (!territory.owns(playerId, store.index(row, col)) || !territory.owns(playerId, store.index(toRow, toCol))) return false;
+        return canClimb(row, col, dRow, dCol);
+    }
+
+    /** If the terrain lets a unit step between two orthogonally adjacent tiles, regardless of who owns them. Both must be on the map. **/
+    public boolean canClimb(int row, int col, int dRow, int dCol) {
+        long ca = store.base(store.index(row, col)), cb = store.base(store.index(row + dRow, col + dCol));
+        // Pairs of corner lanes that meet on the shared edge. As TileView draws them, lanes 0-3 sit at
+        // (row, col), (row+1, col), (row+1, col+1) and (row, col+1) of the tile's grid square.
+        if (dRow == -1) return climbable(ca, 0, cb, 1) && climbable(ca, 3, cb, 2);
+        if (dRow == 1) return climbable(ca, 1, cb, 0) && climbable(ca, 2, cb, 3);
+        if (dCol == -1) return climbable(ca, 0, cb, 3) && climbable(ca, 1, cb, 2);
+        return climbable(ca, 3, cb, 0) && climbable(ca, 2, cb, 1);
+    }
+
+    private static boolean climbable(long a, int laneA, long b, int laneB) {
+        return Math.abs(Corners.lane(a, laneA) - Corners.lane(b, laneB)) <= GameConstants.MAX_CLIMB;
+    }
+
+    // ======== HEAP
+    private void push(long entry) {
+        if (heapSize == heap.length) heap = Arrays.copyOf(heap, heapSize * 2);
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= entry) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = entry;
+    }
+
+    private long pop() {
+        long top = heap[0], last = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2*i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) child++;
+            if (heap[child] >= last) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+}
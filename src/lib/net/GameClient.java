@@ -0,0 +1,173 @@
+package lib.net;
+
+import lib.engine.Battle;
+import lib.engine.BattleState;
+import lib.engine.Command;
+import lib.engine.CommandSink;
+import lib.engine.Player;
+import lib.timing.VirtualClock;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/** A client of a GameServer, mirroring the battle of the room it joined. See Protocol.
+ * Commands submitted to the mirrored battle are sent to the server instead of applied. Steps from the server are read on a
+ * background thread and applied by sync() on the battle's own thread, so the mirror can be shown by a GamePanel in place of update().
+ * The mirror never ticks on its own: its clock is a VirtualClock, so only the server's steps move it forward. **/
+public class GameClient implements CommandSink, AutoCloseable {
+    private final SocketChannel channel;
+    /** The room joined, and the seat played in it (0 when spectating). **/
+    private final int room, seat;
+    /** Mirror of the room's battle. **/
+    private final Battle battle;
+    /** STEP frames read and not yet applied, positioned at their type. **/
+    private final ConcurrentLinkedQueue<ByteBuffer> steps = new ConcurrentLinkedQueue<>();
+    /** Reused for the commands of each step. **/
+    private final List<Command> applied = new ArrayList<>();
+    private final Thread reader;
+
+    /** Why the connection ended, or null while it is open. **/
+    private volatile String closedReason;
+    /** Nanoseconds between the server sending the last step and this client reading it. Only meaningful when both run on one machine. **/
+    private volatile long lastLatency;
+
+    private GameClient(SocketChannel channel, int room, int seat, Battle battle) {
+        this.channel = channel;
+        this.room = room;
+        this.seat = seat;
+        this.battle = battle;
+        battle.setClock(new VirtualClock());
+        battle.setCommandSink(this);
+        reader = new Thread(this::readSteps, "game-client-" + room + "-" + seat);
+        reader.setDaemon(true);
+    }
+
+    /** Connect to a server and join a room, playing as the player with the given id, or spectating with 0.
+     * Blocks until the room's battle is received. **/
+    public static GameClient connect(InetSocketAddress address, int room, int seat) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Protocol.write(channel, Protocol.join(room, seat));
+            ByteBuffer frame = Protocol.read(channel, Protocol.MAX_FRAME);
+            int type = frame.get();
+            if (type == Protocol.ERROR) throw new IOException("Refused by server: " + StandardCharsets.UTF_8.decode(frame));
+            if (type != Protocol.JOINED) throw new IOException("Expected to join, got frame type " + type);
+            frame.getInt();
+            frame.get();
+            GameClient client = new GameClient(channel, room, seat, BattleState.read(frame, null));
+            client.reader.start();
+            return client;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // ==== COMMANDS
+    /** Send a command to the server. It is applied once the server's step holding it is synced. **/
+    @Override
+    public void submit(Command command) {
+        if (seat == 0 || closedReason != null) return;
+        ByteBuffer frame = Protocol.command(command, battle);
+        try {
+            synchronized (channel) {
+                Protocol.write(channel, frame);
+            }
+        } catch (IOException e) {
+            closed("Send failed: " + e.getMessage());
+        }
+    }
+
+    // ==== STEPS
+    private void readSteps() {
+        try {
+            while (true) {
+                ByteBuffer frame = Protocol.read(channel, Protocol.MAX_FRAME);
+                int type = frame.get(0);
+                if (type == Protocol.STEP) {
+                    lastLatency = System.nanoTime() - frame.getLong(Protocol.STEP_SENT);
+                    steps.add(frame);
+                } else if (type == Protocol.ERROR) {
+                    frame.position(1);
+                    closed(StandardCharsets.UTF_8.decode(frame).toString());
+                    return;
+                } else {
+                    closed("Unexpected frame type " + type);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            closed(e.getMessage());
+        }
+    }
+
+    /** Apply every step read from the server to the mirrored battle. Only call from the battle's thread.
+     * @return the amount of ticks run **/
+    public int sync() {
+        int ran = 0;
+        ByteBuffer frame;
+        while ((frame = steps.poll()) != null) {
+            long time = frame.getLong(Protocol.STEP_TIME);
+            frame.position(Protocol.STEP_COMMANDS);
+            for (int count = frame.getShort(Protocol.STEP_COUNT) & 0xFFFF; count > 0; count--) {
+                Player player = battle.getPlayer(frame.get());
+                applied.add(Protocol.getCommand(frame, battle, player));
+            }
+            battle.tick(applied);
+            applied.clear();
+            ran++;
+            if (battle.time() != time) {
+                throw new IllegalStateException("Mirror fell out of step with the server: at " + battle.time() + " ms, server at " + time + " ms");
+            }
+        }
+        return ran;
+    }
+
+    private void closed(String reason) {
+        if (closedReason == null) closedReason = reason == null ? "Closed" : reason;
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+
+    /** Disconnect. The mirror stops where it is, and commands submitted to it are dropped. **/
+    @Override
+    public void close() {
+        closed("Closed by client");
+    }
+
+    // ======== ACCESSORS
+    public Battle getBattle() {
+        return battle;
+    }
+
+    /** The player this client plays as, or null when spectating. **/
+    public Player getPlayer() {
+        return battle.getPlayer(seat);
+    }
+
+    public int getRoom() {
+        return room;
+    }
+
+    public boolean isConnected() {
+        return closedReason == null;
+    }
+
+    /** Why the connection ended, or null while it is open. **/
+    public String getClosedReason() {
+        return closedReason;
+    }
+
+    public long getLastLatency() {
+        return lastLatency;
+    }
+}
@@ -0,0 +1,338 @@
+package lib.net;
+
+import lib.data.Openings;
+import lib.engine.Battle;
+import lib.engine.Command;
+import lib.engine.GameConstants;
+import lib.timing.GameClock;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/** Runs battles for clients connecting over TCP, many rooms of one battle each in one process. See Protocol.
+ * The server is authoritative: clients only send commands, which it applies on its own ticks and passes on to everyone in the room.
+ * Everything runs on one thread in a non-blocking selector loop, which also ticks every room every GameConstants.TICK_TIME
+ * of its clock, so battles have a single writer and need no locking. Rooms are made when first joined and dropped once empty. **/
+public class GameServer implements Runnable, AutoCloseable {
+    /** Frames waiting to be sent to a client before it is dropped as too slow to keep up. About 20 seconds of steps. **/
+    public static final int MAX_QUEUED = 1024;
+    /** Most frames sent to a client in one write. **/
+    private static final int WRITE_BATCH = 64;
+
+    private final Selector selector;
+    private final ServerSocketChannel acceptor;
+    /** Makes the battle of a room by its id. **/
+    private final IntFunction<Battle> battles;
+    /** Players in the battle of every room. **/
+    private final int seats;
+    /** Clock rooms are ticked by. **/
+    private final GameClock clock;
+    /** Rooms by id. **/
+    private final Map<Integer, Room> rooms = new HashMap<>();
+    /** Reused for writing frames to clients. **/
+    private final ByteBuffer[] batch = new ByteBuffer[WRITE_BATCH];
+
+    private volatile boolean running = true;
+    /** Amount of commands applied, clients connected, and ticks run by each room since starting. Written by the server's thread only. **/
+    private volatile long commands, clients, ticks;
+
+    /** @param seats players in each battle made, so joins can be checked before a room's battle is made **/
+    public GameServer(InetSocketAddress address, IntFunction<Battle> battles, int seats, GameClock clock) throws IOException {
+        this.battles = battles;
+        this.seats = seats;
+        this.clock = clock;
+        selector = Selector.open();
+        acceptor = ServerSocketChannel.open();
+        acceptor.bind(address, 1024);
+        acceptor.configureBlocking(false);
+        acceptor.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /** Serve the standard opening (see Openings) in every room, seeded by the room id, in real time. **/
+    public GameServer(InetSocketAddress address) throws IOException {
+        this(address, Openings::standard, 2, GameClock.SYSTEM);
+    }
+
+    /** Usage: GameServer [port] **/
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7340;
+        GameServer server = new GameServer(new InetSocketAddress(port));
+        System.out.println("Serving on " + server.getAddress());
+        server.run();
+    }
+
+    // ==== LOOP
+    /** Serve until closed. **/
+    @Override
+    public void run() {
+        long tickNanos = GameConstants.TICK_TIME * 1_000_000L;
+        long nextTick = clock.nanos() + tickNanos;
+        try {
+            while (running) {
+                // Wait for traffic until the next tick is due, in real time
+                long wait = (long) ((nextTick - clock.nanos()) / Math.max(clock.rate(), 1e-9));
+                if (wait >= 1_000_000) selector.select(wait / 1_000_000);
+                else selector.selectNow();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+
+                for (int ran = 0; clock.nanos() >= nextTick && ran < GameConstants.MAX_CATCH_UP_TICKS; ran++) {
+                    tickRooms();
+                    nextTick += tickNanos;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Server failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) closeQuietly(key);
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /** Tick every room, dropping the ones everyone left. **/
+    private void tickRooms() {
+        long applied = 0;
+        for (Iterator<Room> it = rooms.values().iterator(); it.hasNext(); ) {
+            Room room = it.next();
+            if (room.size() == 0) it.remove();
+            else applied += room.tick();
+        }
+        commands += applied;
+        ticks++;
+    }
+
+    private void handle(SelectionKey key) throws IOException {
+        if (!key.isValid()) return;
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) connection.read();
+            if (key.isValid() && key.isWritable()) connection.flush();
+        } catch (IOException e) {
+            connection.close();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = acceptor.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            clients++;
+        }
+    }
+
+    /** Stop serving, closing every connection. **/
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {}
+    }
+
+    // ==== CONNECTIONS
+    /** A connected client: the frames it has sent that are not read yet, and the frames waiting to be sent to it. **/
+    final class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        /** Bytes read from the client and not handled yet. **/
+        private final ByteBuffer in = ByteBuffer.allocate(4096);
+        /** Frames waiting to be sent, the first possibly partly sent. **/
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        /** The room joined, or null before joining. **/
+        private Room room;
+        /** The player id this client plays as, or 0 if spectating. **/
+        int seat;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /** Read what the client has sent, and handle every whole frame. **/
+        void read() throws IOException {
+            int read;
+            while ((read = channel.read(in)) > 0) {
+                in.flip();
+                while (in.remaining() >= 4) {
+                    int length = in.getInt(in.position());
+                    if (length < 1 || length > Protocol.MAX_CLIENT_FRAME) {
+                        refuse("Bad frame length: " + length);
+                        return;
+                    }
+                    if (in.remaining() < 4 + length) break;
+                    int end = in.position() + 4 + length;
+                    in.position(in.position() + 4);
+                    try {
+                        handle(in.slice().limit(length));
+                    } catch (RuntimeException e) {
+                        refuse("Malformed frame");
+                    }
+                    if (!channel.isOpen()) return;
+                    in.position(end);
+                }
+                in.compact();
+            }
+            if (read < 0) close();
+        }
+
+        private void handle(ByteBuffer frame) {
+            int type = frame.get();
+            if (type == Protocol.JOIN) {
+                int version = frame.get(), id = frame.getInt(), seat = frame.get();
+                if (version != Protocol.VERSION) {
+                    refuse("Unsupported protocol version: " + version);
+                } else if (room != null) {
+                    refuse("Already in room " + room.id);
+                } else if (seat < 0 || seat > seats) {
+                    // Checked before making the room, so bad joins never cost a battle
+                    refuse("No seat " + seat + " in room " + id);
+                } else {
+                    Room joining = rooms.computeIfAbsent(id, made -> new Room(made, battles.apply(made)));
+                    // A room left empty by this is dropped on the next tick
+                    if (seat > joining.getBattle().getPlayers().length) {
+                        refuse("No seat " + seat + " in room " + id);
+                        return;
+                    }
+                    if (joining.seatTaken(seat)) {
+                        refuse("Seat " + seat + " in room " + id + " is taken");
+                        return;
+                    }
+                    this.seat = seat;
+                    room = joining;
+                    room.join(this);
+                }
+            } else if (type == Protocol.COMMAND) {
+                // Spectators can't command, and commands that can't be read are dropped like ones that can't be applied.
+                // The rest are checked again when applied, so a seat can only use its own player's units
+                if (room == null || seat == 0) return;
+                Command command;
+                try {
+                    command = Protocol.getCommand(frame, room.getBattle(), room.getBattle().getPlayer(seat));
+                } catch (IllegalArgumentException e) {
+                    return;
+                }
+                room.submit(command);
+            } else {
+                refuse("Unknown frame type: " + type);
+            }
+        }
+
+        /** Queue a frame, and send as much as the socket takes now. Drops the client if too much is already waiting. **/
+        void send(ByteBuffer frame) {
+            if (!channel.isOpen()) return;
+            if (out.size() >= MAX_QUEUED) {
+                close();
+                return;
+            }
+            out.add(frame);
+            if (out.size() == 1) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    close();
+                }
+            }
+        }
+
+        /** Write waiting frames until the socket is full, and only wait for it to be writable while some are left. **/
+        void flush() throws IOException {
+            while (!out.isEmpty()) {
+                int count = 0;
+                for (ByteBuffer frame : out) {
+                    batch[count++] = frame;
+                    if (count == WRITE_BATCH) break;
+                }
+                channel.write(batch, 0, count);
+                Arrays.fill(batch, 0, count, null);
+                int sent = 0;
+                while (!out.isEmpty() && !out.peekFirst().hasRemaining()) {
+                    out.pollFirst();
+                    sent++;
+                }
+                // The socket is full; carry on once it is writable
+                if (sent < count) break;
+            }
+            int ops = out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+            if (key.isValid() && key.interestOps() != ops) key.interestOps(ops);
+        }
+
+        /** Tell the client why it is being dropped, then drop it. If a frame is partly sent the reason can't follow it,
+         * so the client is only dropped. **/
+        private void refuse(String message) {
+            ByteBuffer first = out.peekFirst();
+            if (first == null || first.position() == 0) {
+                try {
+                    channel.write(Protocol.error(message));
+                } catch (IOException ignored) {}
+            }
+            close();
+        }
+
+        void close() {
+            // Empty rooms are dropped on the next tick, as this can be called while rooms are ticking
+            if (room != null) {
+                room.leave(this);
+                room = null;
+            }
+            out.clear();
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    // ======== ACCESSORS
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) acceptor.getLocalAddress();
+    }
+
+    /** Amount of commands applied in every room since starting. **/
+    public long getCommands() {
+        return commands;
+    }
+
+    /** Amount of clients that connected since starting. **/
+    public long getClients() {
+        return clients;
+    }
+
+    /** Amount of times every room was ticked since starting. **/
+    public long getTicks() {
+        return ticks;
+    }
+
+    /** Amount of rooms with clients in them. Only exact on the server's thread. **/
+    public int getRoomCount() {
+        return rooms.size();
+    }
+}
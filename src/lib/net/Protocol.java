@@ -0,0 +1,173 @@
+package lib.net;
+
+import lib.engine.Battle;
+import lib.engine.Command;
+import lib.engine.Player;
+import lib.engine.Tile;
+import lib.engine.UnitData;
+import lib.engine.log.LogFormat;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/** Layout of the messages between a GameServer and its clients.
+ * Every message is a frame: its length in bytes after the length (4 bytes), a one byte type, then its fields, big endian.
+ * A client joins one room of the server, then sends commands; the server applies every command it got on its next tick of the room,
+ * and sends everyone in the room a STEP per tick holding those commands. Battles are deterministic, so clients that start from
+ * the snapshot sent when they joined and apply each step's commands on the same tick stay in exactly the server's state.
+ * Unit types and actions are sent by their LogFormat ids. **/
+public final class Protocol {
+    /** Version of the protocol, checked when joining. **/
+    public static final int VERSION = 1;
+    /** Most bytes a frame sent by a server can take after its length. **/
+    public static final int MAX_FRAME = 1 << 24;
+    /** Most bytes a frame sent by a client can take after its length. **/
+    public static final int MAX_CLIENT_FRAME = 64;
+
+    // ==== CLIENT FRAMES
+    /** Join a room: version (1 byte), room, seat (1 byte; a player id, or 0 to spectate) **/
+    public static final int JOIN = 1;
+    /** Submit a command as the client's seat: a command without its player **/
+    public static final int COMMAND = 2;
+
+    // ==== SERVER FRAMES
+    /** The client joined: room, seat (1 byte), then a BattleState snapshot of the room's battle for the rest of the frame **/
+    public static final int JOINED = 3;
+    /** A tick ran: battle time after the tick (8 bytes), server System.nanoTime() when sent (8 bytes), command count (2 bytes),
+     * then the commands applied before the tick, each with its player id (1 byte) first **/
+    public static final int STEP = 4;
+    /** The request was refused, and the server closes the connection: UTF-8 message for the rest of the frame **/
+    public static final int ERROR = 5;
+
+    // ==== COMMANDS
+    // kind (1 byte), row, col, then two arguments: unit type id for BUY, action id for ACT, target row and col for MOVE
+    public static final int CONTEST = 1, BUY = 2, ACT = 3, MOVE = 4;
+    /** Bytes of an encoded command. **/
+    public static final int COMMAND_BYTES = 1 + 4*4;
+
+    /** Offsets of a STEP frame's fields from its type byte, as read by read(). **/
+    public static final int STEP_TIME = 1, STEP_SENT = 9, STEP_COUNT = 17, STEP_COMMANDS = 19;
+
+    private Protocol() {}
+
+    // ==== FRAMES
+    /** A new frame of the given type with room for a payload, positioned after the type. **/
+    public static ByteBuffer frame(int type, int payload) {
+        ByteBuffer frame = ByteBuffer.allocate(5 + payload);
+        frame.putInt(1 + payload);
+        frame.put((byte) type);
+        return frame;
+    }
+
+    public static ByteBuffer join(int room, int seat) {
+        ByteBuffer frame = frame(JOIN, 6);
+        frame.put((byte) VERSION).putInt(room).put((byte) seat);
+        return frame.flip();
+    }
+
+    public static ByteBuffer joined(int room, int seat, ByteBuffer snapshot) {
+        ByteBuffer frame = frame(JOINED, 5 + snapshot.remaining());
+        frame.putInt(room).put((byte) seat).put(snapshot.duplicate());
+        return frame.flip();
+    }
+
+    public static ByteBuffer error(String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = frame(ERROR, bytes.length);
+        frame.put(bytes);
+        return frame.flip();
+    }
+
+    public static ByteBuffer command(Command command, Battle battle) {
+        ByteBuffer frame = frame(COMMAND, COMMAND_BYTES);
+        putCommand(frame, command, battle);
+        return frame.flip();
+    }
+
+    /** A STEP frame of the commands about to be applied on a battle's next tick. Encode it before the tick,
+     * since actions are encoded against the tiles they are used on. The time and send time are filled in by stamp(). **/
+    public static ByteBuffer step(List<Command> commands, Battle battle) {
+        if (commands.size() > 0xFFFF) throw new IllegalArgumentException("Too many commands in one tick: " + commands.size());
+        ByteBuffer frame = frame(STEP, 18 + commands.size() * (1 + COMMAND_BYTES));
+        frame.position(4 + STEP_COUNT);
+        frame.putShort((short) commands.size());
+        for (Command command : commands) {
+            frame.put((byte) battle.playerId(command.player));
+            putCommand(frame, command, battle);
+        }
+        return frame.flip();
+    }
+
+    /** Fill in a STEP frame's battle time and send time. **/
+    public static void stamp(ByteBuffer step, long time, long sent) {
+        step.putLong(4 + STEP_TIME, time);
+        step.putLong(4 + STEP_SENT, sent);
+    }
+
+    /** Write a whole frame to a blocking channel. **/
+    public static void write(WritableByteChannel channel, ByteBuffer frame) throws IOException {
+        while (frame.hasRemaining()) channel.write(frame);
+    }
+
+    /** Read a whole frame from a blocking channel, positioned at its type. **/
+    public static ByteBuffer read(ReadableByteChannel channel, int maxFrame) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        fill(channel, header);
+        int length = header.getInt(0);
+        if (length < 1 || length > maxFrame) throw new IOException("Bad frame length: " + length);
+        ByteBuffer frame = ByteBuffer.allocate(length);
+        fill(channel, frame);
+        return frame.flip();
+    }
+
+    private static void fill(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new EOFException("Connection closed");
+        }
+    }
+
+    // ==== COMMANDS
+    public static void putCommand(ByteBuffer out, Command command, Battle battle) {
+        int kind, first = 0, second = 0;
+        if (command instanceof Command.ContestTile) {
+            kind = CONTEST;
+        } else if (command instanceof Command.Buy) {
+            if (!(((Command.Buy) command).item instanceof UnitData)) throw new IllegalArgumentException("Only units can be bought over the network");
+            kind = BUY;
+            first = LogFormat.unitId((UnitData) ((Command.Buy) command).item);
+        } else if (command instanceof Command.Act) {
+            kind = ACT;
+            first = LogFormat.actionId(((Command.Act) command).action, battle.getTile(command.row, command.col));
+        } else if (command instanceof Command.Move) {
+            kind = MOVE;
+            first = ((Command.Move) command).targetRow;
+            second = ((Command.Move) command).targetCol;
+        } else {
+            throw new IllegalArgumentException("Command cannot be sent: " + command.getClass().getName());
+        }
+        out.put((byte) kind).putInt(command.row).putInt(command.col).putInt(first).putInt(second);
+    }
+
+    /** Read a command made by a player. Actions are read against the battle's current tiles.
+     * @throws IllegalArgumentException if the command is malformed, or not usable on the battle as it is **/
+    public static Command getCommand(ByteBuffer in, Battle battle, Player player) {
+        int kind = in.get(), row = in.getInt(), col = in.getInt(), first = in.getInt(), second = in.getInt();
+        if (!battle.withinBounds(row, col)) throw new IllegalArgumentException("Command out of bounds: " + row + ", " + col);
+        switch (kind) {
+            case CONTEST: return new Command.ContestTile(player, row, col);
+            case BUY: return new Command.Buy(player, LogFormat.unitType(first), row, col);
+            case ACT:
+                Tile tile = battle.getTile(row, col);
+                // Action id 0 is the action of the tile's own unit
+                if (first == 0 && !tile.hasUnit()) throw new IllegalArgumentException("No unit to act with on " + tile);
+                return new Command.Act(player, LogFormat.action(first, tile), row, col);
+            case MOVE: return new Command.Move(player, row, col, first, second);
+            default: throw new IllegalArgumentException("Unknown command kind: " + kind);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package lib.net;
+
+import lib.engine.Battle;
+import lib.engine.BattleState;
+import lib.engine.Command;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/** One battle run by a GameServer, and the clients connected to it.
+ * Each player's seat can be held by one client at a time, while any amount of clients can spectate.
+ * Commands from the room's clients wait until the room's next tick, which applies them all and then sends
+ * every client one STEP frame holding them. The frame is encoded once and shared by every client. **/
+public class Room {
+    /** Id clients join this room by. **/
+    public final int id;
+    /** The battle run in this room. Only used on the server's thread. **/
+    private final Battle battle;
+    /** Clients in this room. **/
+    final List<GameServer.Connection> members = new ArrayList<>();
+    /** Client playing each seat by player id, or null while the seat is free. **/
+    private final GameServer.Connection[] seated;
+    /** Commands to apply on the next tick, in the order they arrived. **/
+    private final List<Command> pending = new ArrayList<>();
+
+    public Room(int id, Battle battle) {
+        this.id = id;
+        this.battle = battle;
+        seated = new GameServer.Connection[battle.getPlayers().length + 1];
+    }
+
+    /** If another client already plays a seat. Spectating, seat 0, is never taken. **/
+    boolean seatTaken(int seat) {
+        return seat != 0 && seated[seat] != null;
+    }
+
+    /** Add a client, sending it the battle as it is now. Every STEP it gets from then on follows on from that snapshot.
+     * Its seat must not be taken. **/
+    void join(GameServer.Connection connection) {
+        members.add(connection);
+        if (connection.seat != 0) seated[connection.seat] = connection;
+        connection.send(Protocol.joined(id, connection.seat, BattleState.write(battle)));
+    }
+
+    void leave(GameServer.Connection connection) {
+        members.remove(connection);
+        if (seated[connection.seat] == connection) seated[connection.seat] = null;
+    }
+
+    /** Queue a command for the next tick. **/
+    void submit(Command command) {
+        pending.add(command);
+    }
+
+    /** Apply the queued commands and run one tick of the battle, then send the step to every client.
+     * @return the amount of commands applied **/
+    int tick() {
+        ByteBuffer step = Protocol.step(pending, battle);
+        int applied = pending.size();
+        battle.tick(pending);
+        pending.clear();
+        Protocol.stamp(step, battle.time(), System.nanoTime());
+        // Backwards, since a client too slow to keep up leaves the room when sent to
+        for (int i = members.size() - 1; i >= 0; i--) members.get(i).send(step.duplicate());
+        return applied;
+    }
+
+    // ======== ACCESSORS
+    public Battle getBattle() {
+        return battle;
+    }
+
+    public int size() {
+        return members.size();
+    }
+}
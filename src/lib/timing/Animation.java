@@ -1,19 +1,28 @@
 package lib.timing;
 
+/** Progress of a timing function over a duration, measured on a clock. **/
 public class Animation {
     private final TimingFunction function;
     private final long duration;
+    /** The clock this animation runs on. **/
+    private final GameClock clock;
 
     private boolean finished;
     private long startTime, endTime;
 
-    public Animation(TimingFunction function, long duration){
+    public Animation(TimingFunction function, long duration, GameClock clock){
         this.function = function;
         this.duration = duration*1000000;
-        startTime = System.nanoTime();
+        this.clock = clock;
+        startTime = clock.nanos();
         endTime = startTime + this.duration;
     }
 
+    /** Animate on the time of the frame being drawn. See FrameClock.UI. **/
+    public Animation(TimingFunction function, long duration){
+        this(function, duration, FrameClock.UI);
+    }
+
     public Animation(long duration) {
         this(TimingFunction.EASE, duration);
     }
@@ -21,9 +30,10 @@ public class Animation {
     public double getValue() {
         if (finished) return function.endsAtOne() ? 1.0 : 0.0;
 
-        long time = System.nanoTime();
+        long time = clock.nanos();
 
-        if (time > endTime) {
+        // A frame clock can read the same time an animation started at, so a zero-length animation must end right away
+        if (time >= endTime) {
             finished = true;
             return function.endsAtOne() ? 1.0 : 0.0;
         }
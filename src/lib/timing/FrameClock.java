@@ -0,0 +1,28 @@
+package lib.timing;
+
+/** A clock that holds the time its source had when last sampled, so everything drawn in one frame sees the same time
+ * and the source is only read once per frame. **/
+public class FrameClock implements GameClock {
+    /** Time of the frame being drawn, sampled by the game panel before each frame. Used by animations and animated drawing. **/
+    public static final FrameClock UI = new FrameClock(GameClock.SYSTEM);
+
+    /** The clock this samples. **/
+    private final GameClock source;
+    /** The source's time when last sampled. **/
+    private volatile long time;
+
+    public FrameClock(GameClock source) {
+        this.source = source;
+        time = source.nanos();
+    }
+
+    /** Read the source's time, and hold it until the next sample. Returns the time. **/
+    public long sample() {
+        return time = source.nanos();
+    }
+
+    @Override
+    public long nanos() {
+        return time;
+    }
+}
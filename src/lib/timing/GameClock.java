@@ -0,0 +1,21 @@
+package lib.timing;
+
+/** A source of time in nanoseconds, so battles and animations can run on something other than the wall clock.
+ * Only differences between times are meaningful; the origin is up to each clock. **/
+public interface GameClock {
+    /** Current time in nanoseconds. **/
+    long nanos();
+
+    /** Current time in milliseconds. **/
+    default long millis() {
+        return nanos() / 1_000_000;
+    }
+
+    /** How fast this clock normally runs compared to real time. **/
+    default double rate() {
+        return 1.0;
+    }
+
+    /** Real time, from System.nanoTime(). **/
+    GameClock SYSTEM = System::nanoTime;
+}
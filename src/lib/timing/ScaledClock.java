@@ -0,0 +1,73 @@
+package lib.timing;
+
+/** A clock running at a multiple of another clock's speed, which can be paused.
+ * Starts at time 0, and never jumps when its scale changes or it is paused and resumed. **/
+public class ScaledClock implements GameClock {
+    /** The clock this one follows. **/
+    private final GameClock source;
+    /** Nanoseconds of this clock per nanosecond of the source. **/
+    private double scale = 1.0;
+    private boolean paused;
+
+    /** Time of this clock and of the source when the scale or pause last changed. **/
+    private long baseTime, sourceBase;
+
+    public ScaledClock(GameClock source) {
+        this.source = source;
+        sourceBase = source.nanos();
+    }
+
+    public ScaledClock(GameClock source, double scale) {
+        this(source);
+        setScale(scale);
+    }
+
+    @Override
+    public synchronized long nanos() {
+        if (paused) return baseTime;
+        return baseTime + (long) ((source.nanos() - sourceBase) * scale);
+    }
+
+    @Override
+    public synchronized double rate() {
+        return scale * source.rate();
+    }
+
+    /** Carry on from the current time, measuring the source from now on. **/
+    private void rebase() {
+        long now = source.nanos();
+        if (!paused) baseTime += (long) ((now - sourceBase) * scale);
+        sourceBase = now;
+    }
+
+    /** Change how fast this clock runs, such as 100 to fast-forward a simulation at 100x. **/
+    public synchronized void setScale(double scale) {
+        if (!(scale > 0)) throw new IllegalArgumentException("Clock scale must be positive: " + scale);
+        rebase();
+        this.scale = scale;
+    }
+
+    public synchronized void pause() {
+        rebase();
+        paused = true;
+    }
+
+    public synchronized void resume() {
+        rebase();
+        paused = false;
+    }
+
+    public synchronized void setPaused(boolean paused) {
+        if (paused) pause();
+        else resume();
+    }
+
+    // ======== ACCESSORS
+    public synchronized double getScale() {
+        return scale;
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+}
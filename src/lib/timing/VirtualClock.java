@@ -0,0 +1,20 @@
+package lib.timing;
+
+/** A clock that only moves when told to, for deterministic tests and headless runs. Starts at time 0. **/
+public class VirtualClock implements GameClock {
+    private long time;
+
+    @Override
+    public synchronized long nanos() {
+        return time;
+    }
+
+    public synchronized void advance(long nanos) {
+        if (nanos < 0) throw new IllegalArgumentException("Clocks cannot go back: " + nanos);
+        time += nanos;
+    }
+
+    public void advanceMillis(long millis) {
+        advance(millis * 1_000_000);
+    }
+}
@@ -0,0 +1,97 @@
+package lib.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import lib.data.Openings;
+import lib.data.Units;
+
+/** Checks that a battle saved and loaded back is the same battle: the same snapshot, the same tiles, and the same
+ * snapshot again after both run on for a while. Also checks that a damaged save is refused. **/
+public class BattleSaveTest {
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("battle", ".save");
+        try {
+            loadedBattleMatchesTheSavedOne(file);
+            damagedSaveIsRefused(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println("BattleSaveTest passed");
+    }
+
+    /** Play a battle with claims, units and terrain edits partway, save and load it, and compare the two battles. **/
+    static void loadedBattleMatchesTheSavedOne(Path file) throws IOException {
+        SplittableRandom random = new SplittableRandom(11);
+        Battle battle = Openings.standard(3);
+        Player[] players = battle.getPlayers();
+        TileStore store = battle.getStore();
+        for (int tick = 0; tick < 300; tick++) {
+            if (tick % 10 == 0) {
+                int row = random.nextInt(store.rows), col = random.nextInt(store.cols);
+                Tile tile = battle.getTile(row, col);
+                Player player = players[random.nextInt(players.length)];
+                switch (random.nextInt(3)) {
+                    case 0:
+                        if (!tile.hasUnit()) battle.claim(player, row, col);
+                        break;
+                    case 1:
+                        if (!tile.hasUnit()) battle.claimAndPlaceUnit(player, random.nextBoolean() ? Units.FARMER : Units.SOLDIER, row, col);
+                        break;
+                    default:
+                        battle.setTerrain(row, col, random.nextInt(3), random.nextInt(5));
+                }
+            }
+            battle.tick();
+        }
+
+        BattleSave.save(battle, file);
+        Battle loaded = BattleSave.load(file);
+
+        check(BattleState.write(loaded).equals(BattleState.write(battle)), "loaded battle has the same snapshot");
+        TileStore other = loaded.getStore();
+        check(other.rows == store.rows && other.cols == store.cols, "loaded battle has the same size");
+        for (int row = 0; row < store.rows; row++) {
+            for (int col = 0; col < store.cols; col++) {
+                int a = store.index(row, col), b = other.index(row, col);
+                String at = " at (" + row + "," + col + ")";
+                check(other.owner(b) == store.owner(a), "same owner" + at);
+                check(other.type(b) == store.type(a) && other.depth(b) == store.depth(a), "same terrain" + at);
+                check(other.base(b) == store.base(a), "same corners" + at);
+                Unit unit = battle.getTile(row, col).getUnit(), copy = loaded.getTile(row, col).getUnit();
+                check((unit == null) == (copy == null), "same unit presence" + at);
+                if (unit != null) check(unit.getData() == copy.getData() && unit.getHp() == copy.getHp() && unit.getCooldown() == copy.getCooldown(), "same unit" + at);
+            }
+        }
+        for (int i = 0; i < players.length; i++) {
+            check(loaded.getPlayers()[i].getPoints() == players[i].getPoints(), "player " + i + " has the same points");
+        }
+
+        // Cooldowns and other scheduled work must carry over too, or the battles drift apart
+        for (int tick = 0; tick < 300; tick++) {
+            battle.tick();
+            loaded.tick();
+        }
+        check(BattleState.write(loaded).equals(BattleState.write(battle)), "both battles run on the same");
+    }
+
+    /** A save with a flipped byte fails its checksum instead of loading. **/
+    static void damagedSaveIsRefused(Path file) throws IOException {
+        BattleSave.save(Openings.standard(4), file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        try {
+            BattleSave.load(file);
+            check(false, "damaged save is refused");
+        } catch (IOException expected) {
+            check(expected.getMessage().contains("corrupted"), "damaged save is reported as corrupted");
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,55 @@
+package lib.engine;
+
+import lib.data.Actions;
+import lib.data.Units;
+
+/** Checks that commands are checked again when applied. **/
+public class CommandTest {
+    public static void main(String[] args) {
+        actionsOnEnemyUnitsAreIgnored();
+        onlySellableOwnUnitsCanBeSold();
+        System.out.println("CommandTest passed");
+    }
+
+    /** Selling an enemy's castle, or using an enemy soldier's attack, changes nothing. **/
+    static void actionsOnEnemyUnitsAreIgnored() {
+        Player first = new Player(0x4884EA), second = new Player(0xE74B51);
+        Battle battle = new Battle(8, 8, 1, first, second);
+        battle.claimAndPlaceUnit(first, Units.CASTLE, 7, 0);
+        battle.claimAndPlaceUnit(first, Units.SOLDIER, 6, 1);
+        battle.claimAndPlaceUnit(second, Units.SOLDIER, 6, 3);
+        Unit soldier = battle.getTile(6, 1).getUnit();
+        soldier.setAutoAct(false);
+        second.addPoints(5);
+        while (!soldier.isReady()) battle.tick();
+
+        battle.submit(new Command.Act(second, Actions.SELL, 7, 0));
+        battle.submit(new Command.Act(second, Units.SOLDIER.getAction(), 6, 1));
+        battle.tick();
+
+        check(battle.getTile(7, 0).hasUnit(), "enemy castle is still there");
+        check(second.getPoints() == 5, "selling an enemy's unit earns nothing");
+        check(soldier.isReady(), "enemy soldier didn't attack");
+        check(battle.getTile(6, 3).getUnit().getHp() == Units.SOLDIER.hp, "own soldier wasn't attacked");
+    }
+
+    /** A player can sell their own farmer, but not their own castle. **/
+    static void onlySellableOwnUnitsCanBeSold() {
+        Player first = new Player(0x4884EA), second = new Player(0xE74B51);
+        Battle battle = new Battle(8, 8, 1, first, second);
+        battle.claimAndPlaceUnit(first, Units.CASTLE, 7, 0);
+        battle.claimAndPlaceUnit(first, Units.FARMER, 6, 0);
+
+        battle.submit(new Command.Act(first, Actions.SELL, 7, 0));
+        battle.submit(new Command.Act(first, Actions.SELL, 6, 0));
+        battle.tick();
+
+        check(battle.getTile(7, 0).hasUnit(), "castle can't be sold");
+        check(!battle.getTile(6, 0).hasUnit(), "farmer was sold");
+        check(first.getPoints() > 0, "selling the farmer earned points");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,89 @@
+package lib.engine;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import lib.data.Units;
+
+/** Checks Connectivity against a breadth-first search of the map after random claims, unclaims and castle changes.
+ * The map spans several chunks so components cross chunk borders, and queries come at random points so both the
+ * incremental joins and the dirty rebuilds are compared. Castles only sit on claimed tiles, as in play. **/
+public class ConnectivityTest {
+    public static void main(String[] args) {
+        SplittableRandom random = new SplittableRandom(5);
+        Player first = new Player(0x4884EA), second = new Player(0xE74B51);
+        Player[] owners = {null, first, second};
+        Battle battle = new Battle(40, 40, 1, first, second);
+        Connectivity connectivity = battle.getConnectivity();
+
+        for (int op = 0; op < 20_000; op++) {
+            Tile tile = battle.getTile(random.nextInt(40), random.nextInt(40));
+            if (tile.hasUnit()) {
+                tile.removeUnit();
+            } else if (tile.getOwner() != null && random.nextInt(8) == 0) {
+                battle.placeUnit(tile.getOwner(), Units.CASTLE, tile.row, tile.col);
+            } else {
+                // Unclaiming is less likely than claiming so that large components build up and split
+                tile.setOwner(owners[random.nextInt(10) < 2 ? 0 : 1 + random.nextInt(2)]);
+            }
+            if (random.nextInt(40) == 0) compare(battle, connectivity);
+        }
+        compare(battle, connectivity);
+        System.out.println("ConnectivityTest passed");
+    }
+
+    /** Label every tile by a search over same-owner neighbours and check each query against the labels. **/
+    private static void compare(Battle battle, Connectivity connectivity) {
+        int rows = 40, cols = 40;
+        int[] label = new int[rows * cols], labelSize = new int[rows * cols + 1];
+        boolean[] labelCastle = new boolean[rows * cols + 1];
+        int[] count = new int[3];
+        int labels = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int start = 0; start < rows * cols; start++) {
+            Player owner = battle.getTile(start / cols, start % cols).getOwner();
+            if (owner == null || label[start] != 0) continue;
+            label[start] = ++labels;
+            count[battle.playerId(owner)]++;
+            queue.add(start);
+            while (!queue.isEmpty()) {
+                int cell = queue.poll(), row = cell / cols, col = cell % cols;
+                Tile tile = battle.getTile(row, col);
+                labelSize[labels]++;
+                if (tile.hasUnit() && tile.getUnit().getData().isCastle()) labelCastle[labels] = true;
+                int[][] steps = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+                for (int[] step : steps) {
+                    int r = row + step[0], c = col + step[1];
+                    if (r < 0 || r >= rows || c < 0 || c >= cols) continue;
+                    int next = r * cols + c;
+                    if (label[next] == 0 && battle.getTile(r, c).getOwner() == owner) {
+                        label[next] = labels;
+                        queue.add(next);
+                    }
+                }
+            }
+        }
+
+        for (int id = 1; id <= 2; id++) {
+            check(connectivity.componentCount(id) == count[id], "player " + id + " has " + count[id] + " components");
+        }
+        Map<Integer, Integer> roots = new HashMap<>();
+        Map<Integer, Integer> labelOfRoot = new HashMap<>();
+        for (int cell = 0; cell < rows * cols; cell++) {
+            Tile tile = battle.getTile(cell / cols, cell % cols);
+            String at = "(" + tile.row + "," + tile.col + ")";
+            int l = label[cell];
+            check(connectivity.componentSize(tile.index) == (l == 0 ? 0 : labelSize[l]), "component size at " + at);
+            check(connectivity.connectedToCastle(tile.index) == (l != 0 && labelCastle[l]), "castle connection at " + at);
+            if (l == 0) continue;
+            int root = connectivity.component(tile.index);
+            check(roots.computeIfAbsent(l, k -> root) == root, "one root for the component at " + at);
+            check(labelOfRoot.computeIfAbsent(root, k -> l) == l, "separate components have separate roots at " + at);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
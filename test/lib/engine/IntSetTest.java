@@ -0,0 +1,49 @@
+package lib.engine;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/** Checks IntSet against a HashSet under random adds and removes. Values are drawn from small ranges so that probe chains
+ * collide and wrap around the table, which is where backward-shift deletion can go wrong. **/
+public class IntSetTest {
+    public static void main(String[] args) {
+        SplittableRandom random = new SplittableRandom(3);
+        for (int round = 0; round < 200; round++) {
+            IntSet set = new IntSet(1 + random.nextInt(16));
+            Set<Integer> reference = new HashSet<>();
+            int range = 1 + random.nextInt(round < 100 ? 64 : 100_000);
+            for (int op = 0; op < 5000; op++) {
+                int value = random.nextInt(range);
+                int kind = random.nextInt(10);
+                if (kind < 5) {
+                    check(set.add(value) == reference.add(value), "add(" + value + ") reports the same");
+                } else if (kind < 9) {
+                    check(set.remove(value) == reference.remove(value), "remove(" + value + ") reports the same");
+                } else if (random.nextInt(100) == 0) {
+                    set.clear();
+                    reference.clear();
+                }
+                check(set.contains(value) == reference.contains(value), "contains(" + value + ") matches");
+                check(set.size() == reference.size(), "size matches");
+            }
+            // Every value is still reachable from its home slot
+            for (int value = 0; value < Math.min(range, 1000); value++) {
+                check(set.contains(value) == reference.contains(value), "contains(" + value + ") matches at the end");
+            }
+            int[] values = set.toArray();
+            Arrays.sort(values);
+            check(Arrays.equals(values, reference.stream().mapToInt(Integer::intValue).sorted().toArray()), "toArray matches");
+            Set<Integer> visited = new HashSet<>();
+            set.forEach(value -> check(visited.add(value), "forEach visits " + value + " once"));
+            check(visited.equals(reference), "forEach visits every value");
+            check(set.isEmpty() == reference.isEmpty(), "isEmpty matches");
+        }
+        System.out.println("IntSetTest passed");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
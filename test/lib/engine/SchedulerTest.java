@@ -0,0 +1,81 @@
+package lib.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+/** Checks the Scheduler's TimingWheel against a sorted set of deadlines, with tasks spread over every level of the wheel
+ * and past its span, moved and cancelled at random, and scheduled again on the tick they fire. **/
+public class SchedulerTest {
+    private static final int TASKS = 2000;
+    /** Ticks run. Past the wheel's span, so the top level cascades and far tasks are re-placed. **/
+    private static final long TICKS = (1L << 24) + (1L << 20);
+
+    public static void main(String[] args) {
+        SplittableRandom random = new SplittableRandom(7);
+        Scheduler scheduler = new Scheduler();
+        // Deadline << 16 | task id of every scheduled task, in the order they should fire
+        TreeSet<Long> reference = new TreeSet<>();
+        List<Integer> fired = new ArrayList<>(), expected = new ArrayList<>();
+        Task[] tasks = new Task[TASKS];
+        for (int id = 0; id < TASKS; id++) tasks[id] = new Task(id, fired);
+
+        for (Task task : tasks) schedule(scheduler, reference, task, random);
+        long firings = 0;
+        for (long tick = 1; tick <= TICKS; tick++) {
+            // Now and then move or cancel a random task
+            if (random.nextInt(1000) == 0) {
+                Task task = tasks[random.nextInt(TASKS)];
+                if (task.isScheduled()) reference.remove(task.getDeadline() << 16 | task.id);
+                if (random.nextInt(4) == 0) scheduler.cancel(task);
+                else schedule(scheduler, reference, task, random);
+            }
+
+            scheduler.tick();
+            check(scheduler.getTick() == tick, "scheduler is on tick " + tick);
+            expected.clear();
+            while (!reference.isEmpty() && reference.first() >>> 16 == tick) expected.add((int) (reference.pollFirst() & 0xFFFF));
+            check(reference.isEmpty() || reference.first() >>> 16 > tick, "no task was left behind on tick " + tick);
+            Collections.sort(fired);
+            check(fired.equals(expected), "tick " + tick + " fired " + fired + ", expected " + expected);
+            firings += fired.size();
+
+            // Some tasks are scheduled again on the tick they fired
+            for (int id : fired) {
+                if (random.nextInt(2) == 0) schedule(scheduler, reference, tasks[id], random);
+            }
+            fired.clear();
+            check(scheduler.pending() == reference.size(), "pending count matches on tick " + tick);
+        }
+        check(firings > TASKS, "tasks fired");
+        System.out.println("SchedulerTest passed: " + firings + " firings over " + TICKS + " ticks");
+    }
+
+    /** Schedule a task at a random distance: mostly within the first levels, sometimes far out or past the wheel's span. **/
+    private static void schedule(Scheduler scheduler, TreeSet<Long> reference, Task task, SplittableRandom random) {
+        long ticks = 1 + random.nextLong(1L << random.nextInt(26));
+        scheduler.scheduleAt(task, scheduler.getTick() + ticks);
+        reference.add(task.getDeadline() << 16 | task.id);
+    }
+
+    private static final class Task extends ScheduledTask {
+        final int id;
+        private final List<Integer> fired;
+
+        Task(int id, List<Integer> fired) {
+            this.id = id;
+            this.fired = fired;
+        }
+
+        @Override
+        public void run() {
+            fired.add(id);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,39 @@
+package lib.engine;
+
+import lib.data.Units;
+
+/** Checks on Tile. **/
+public class TileTest {
+    public static void main(String[] args) {
+        destroyingAnEmptyTileUnclaimsIt();
+        System.out.println("TileTest passed");
+    }
+
+    /** An attack on an empty claimed tile unclaims it, taking it out of its owner's bitboard and putting it in both frontiers. **/
+    static void destroyingAnEmptyTileUnclaimsIt() {
+        Player first = new Player(0x4884EA), second = new Player(0xE74B51);
+        Battle battle = new Battle(4, 4, 1, first, second);
+        battle.claimAndPlaceUnit(first, Units.SOLDIER, 0, 0);
+        battle.claim(first, 0, 1);
+        battle.claimAndPlaceUnit(second, Units.SOLDIER, 0, 2);
+        Territory territory = battle.getTerritory();
+        Tile target = battle.getTile(0, 1);
+        int firstId = battle.playerId(first), secondId = battle.playerId(second);
+        check(territory.owns(firstId, target.index), "tile starts claimed by the first player");
+        check(!territory.frontier(secondId).contains(target.index), "claimed tile starts outside the second player's frontier");
+        int points = second.getPoints();
+
+        target.takeDamage(battle.getTile(0, 2), 1);
+
+        check(target.getOwner() == null, "tile is unclaimed");
+        check(!territory.owns(firstId, target.index), "tile left the first player's bitboard");
+        check(territory.count(firstId) == 1, "first player has one claimed tile left");
+        check(territory.frontier(firstId).contains(target.index), "tile joined the first player's frontier");
+        check(territory.frontier(secondId).contains(target.index), "tile joined the second player's frontier");
+        check(second.getPoints() == points, "destroying an empty tile earns no points");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,78 @@
+package lib.engine.path;
+
+import java.util.SplittableRandom;
+import lib.data.Units;
+import lib.engine.Battle;
+import lib.engine.Player;
+import lib.engine.Tile;
+import lib.engine.TileStore;
+
+/** Checks that cached flow fields, repaired after random changes of owner, terrain and units, agree with fields built
+ * from scratch. Changes come a few at a time between lookups so the incremental repair is used rather than a full recompute.
+ * Ties between equally short routes may be broken differently, so steps are only checked to lead one tile closer. **/
+public class FlowFieldTest {
+    private static final int SIZE = 40;
+
+    public static void main(String[] args) {
+        SplittableRandom random = new SplittableRandom(7);
+        Player first = new Player(0x4884EA), second = new Player(0xE74B51);
+        Battle battle = new Battle(SIZE, SIZE, 1, first, second);
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                if (random.nextInt(10) < 7) battle.claim(first, row, col);
+                else if (random.nextInt(3) == 0) battle.claim(second, row, col);
+            }
+        }
+        Tile[][] goals = {
+                {battle.getTile(0, 0)},
+                {battle.getTile(SIZE/2, SIZE/2), battle.getTile(SIZE-1, 3)},
+                {battle.getTile(5, SIZE-1), battle.getTile(SIZE-1, SIZE-1), battle.getTile(12, 20)}
+        };
+
+        for (int round = 0; round < 600; round++) {
+            int changes = 1 + random.nextInt(4);
+            for (int i = 0; i < changes; i++) change(battle, random, first, second);
+            for (Tile[] goal : goals) {
+                Player player = round % 3 == 0 ? second : first;
+                compare(battle, battle.flowField(player, goal), "round " + round);
+            }
+        }
+        System.out.println("FlowFieldTest passed");
+    }
+
+    private static void change(Battle battle, SplittableRandom random, Player first, Player second) {
+        Tile tile = battle.getTile(random.nextInt(SIZE), random.nextInt(SIZE));
+        switch (random.nextInt(3)) {
+            case 0:
+                tile.setOwner(random.nextInt(4) == 0 ? null : random.nextInt(4) == 0 ? second : first);
+                break;
+            case 1:
+                battle.setTerrain(tile.row, tile.col, random.nextInt(3), random.nextInt(5));
+                break;
+            default:
+                if (tile.hasUnit()) tile.removeUnit();
+                else if (tile.getOwner() != null) battle.placeUnit(tile.getOwner(), Units.SOLDIER, tile.row, tile.col);
+        }
+    }
+
+    private static void compare(Battle battle, FlowField repaired, String when) {
+        TileStore store = battle.getStore();
+        FlowField fresh = new FlowField(store, battle.getTerritory(), battle.getPathfinder(), repaired.getPlayerId(), repaired.getGoals());
+        for (int index = 0; index < store.capacity(); index++) {
+            if (!store.withinBounds(store.row(index), store.col(index))) continue;
+            String at = " at (" + store.row(index) + "," + store.col(index) + ") in " + when;
+            int distance = repaired.distance(index);
+            check(distance == fresh.distance(index), "distance" + at);
+            int next = repaired.next(index);
+            check((next == -1) == (fresh.next(index) == -1), "a next step exists" + at);
+            if (next == -1) continue;
+            int steps = Math.abs(store.row(next) - store.row(index)) + Math.abs(store.col(next) - store.col(index));
+            check(steps == 1, "next step is a neighbour" + at);
+            check(repaired.distance(next) == distance - 1, "next step is one closer" + at);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
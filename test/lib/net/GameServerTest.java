@@ -0,0 +1,82 @@
+package lib.net;
+
+import lib.data.Actions;
+import lib.data.Openings;
+import lib.engine.Battle;
+import lib.engine.Command;
+import lib.timing.GameClock;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/** Checks a GameServer over loopback: commands on other players' units are ignored, and seats can't be shared. **/
+public class GameServerTest {
+    public static void main(String[] args) throws Exception {
+        GameServer server = new GameServer(new InetSocketAddress("127.0.0.1", 0), Openings::standard, 2, GameClock.SYSTEM);
+        Thread thread = new Thread(server, "game-server");
+        thread.start();
+        try {
+            actionsOnEnemyUnitsAreIgnored(server.getAddress());
+            seatsCantBeShared(server.getAddress());
+        } finally {
+            server.close();
+            thread.join();
+        }
+        System.out.println("GameServerTest passed");
+    }
+
+    /** The second player tries to sell the first player's castle, while the first sells their own farmer.
+     * Only the farmer is sold, on both players' mirrors. **/
+    static void actionsOnEnemyUnitsAreIgnored(InetSocketAddress address) throws Exception {
+        try (GameClient first = GameClient.connect(address, 1, 1); GameClient second = GameClient.connect(address, 1, 2)) {
+            Battle firstBattle = first.getBattle(), secondBattle = second.getBattle();
+            secondBattle.submit(new Command.Act(second.getPlayer(), Actions.SELL, 7, 0));
+            firstBattle.submit(new Command.Act(first.getPlayer(), Actions.SELL, 6, 0));
+
+            // Both commands are sent before the farmer's sale shows up, so the castle's would have been applied by then
+            long deadline = System.currentTimeMillis() + 5000;
+            while (firstBattle.getTile(6, 0).hasUnit() || secondBattle.time() < firstBattle.time()) {
+                if (System.currentTimeMillis() > deadline) throw new AssertionError("farmer was never sold");
+                Thread.sleep(5);
+                first.sync();
+                second.sync();
+            }
+            for (Battle battle : new Battle[] {firstBattle, secondBattle}) {
+                check(battle.getTile(7, 0).hasUnit(), "first player's castle is still there");
+                check(battle.getPlayer(2).getPoints() == Openings.STARTING_POINTS, "second player earned nothing");
+                check(!battle.getTile(6, 0).hasUnit(), "first player's farmer was sold");
+            }
+        }
+    }
+
+    /** A seat someone plays can't be joined until they leave, but spectating is open to everyone. **/
+    static void seatsCantBeShared(InetSocketAddress address) throws Exception {
+        GameClient player = GameClient.connect(address, 2, 1);
+        try (GameClient spectator = GameClient.connect(address, 2, 0);
+             GameClient another = GameClient.connect(address, 2, 0)) {
+            check(spectator.isConnected() && another.isConnected(), "two spectators joined");
+            try {
+                GameClient.connect(address, 2, 1).close();
+                throw new AssertionError("joined a taken seat");
+            } catch (IOException e) {
+                check(e.getMessage().contains("taken"), "refused because the seat is taken: " + e.getMessage());
+            }
+            player.close();
+            // The server frees the seat once it reads the connection closing
+            long deadline = System.currentTimeMillis() + 5000;
+            while (true) {
+                try {
+                    GameClient.connect(address, 2, 1).close();
+                    break;
+                } catch (IOException e) {
+                    if (System.currentTimeMillis() > deadline) throw new AssertionError("seat was never freed", e);
+                    Thread.sleep(5);
+                }
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}